@@ -0,0 +1,16 @@
+podTemplate(label: 'mypod', containers: [
+        containerTemplate(name: 'gradle', image: 'gradle:alpine', ttyEnabled: true, command: 'cat'),
+]) {
+    node('mypod') {
+        stage('Build') {
+            // restore the caches saved by a previous stage, if any
+            if (fileExists('gradle-caches')) {
+                containerCopy name: 'gradle', containerPath: '/home/gradle/.gradle/caches', workspacePath: 'gradle-caches', toContainer: true
+            }
+            container('gradle') {
+                sh 'gradle --version'
+            }
+            containerCopy name: 'gradle', containerPath: '/home/gradle/.gradle/caches', workspacePath: 'gradle-caches', compress: true
+        }
+    }
+}
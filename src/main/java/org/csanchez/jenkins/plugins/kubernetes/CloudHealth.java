@@ -0,0 +1,134 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+import javax.net.ssl.SSLException;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+
+/**
+ * Recent provisioning latency and error rate of a {@link KubernetesCloud}, with a circuit breaker that marks the
+ * cloud unhealthy for a while after consecutive failures so a {@link KubernetesCloudGroup} fails over to the
+ * other clouds.
+ *
+ * @since 0.13
+ */
+public class CloudHealth {
+
+    private static final Logger LOGGER = Logger.getLogger(CloudHealth.class.getName());
+
+    /** Consecutive failures that trip the circuit breaker */
+    private static final int FAILURE_THRESHOLD = 3;
+
+    /** Time a cloud is skipped after tripping the circuit breaker */
+    private static final long OPEN_TIME = TimeUnit.MINUTES.toMillis(1);
+
+    /** Weight of the last result in the moving averages */
+    private static final double ALPHA = 0.2;
+
+    /** Health by cloud name */
+    private static final ConcurrentMap<String, CloudHealth> HEALTHS = new ConcurrentHashMap<>();
+
+    private final String cloudName;
+    private double latency = -1;
+    private double errorRate;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    private CloudHealth(String cloudName) {
+        this.cloudName = cloudName;
+    }
+
+    @Nonnull
+    static CloudHealth get(@Nonnull String cloudName) {
+        return HEALTHS.computeIfAbsent(cloudName, CloudHealth::new);
+    }
+
+    /**
+     * Records a successful provisioning.
+     *
+     * @param millis time from provisioning to the agent being online
+     */
+    synchronized void recordSuccess(long millis) {
+        latency = latency < 0 ? millis : ALPHA * millis + (1 - ALPHA) * latency;
+        errorRate = (1 - ALPHA) * errorRate;
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    /**
+     * Records a failure to talk to the cluster, see {@link #isClusterFailure(Throwable)}.
+     */
+    synchronized void recordFailure() {
+        errorRate = ALPHA + (1 - ALPHA) * errorRate;
+        if (++consecutiveFailures >= FAILURE_THRESHOLD && !isOpen()) {
+            LOGGER.log(Level.WARNING, "Cloud {0} failed {1} times in a row, skipping it for {2} seconds",
+                    new Object[] { cloudName, consecutiveFailures, TimeUnit.MILLISECONDS.toSeconds(OPEN_TIME) });
+            openUntil = System.currentTimeMillis() + OPEN_TIME;
+        }
+    }
+
+    /**
+     * Tells the failures of the cluster or of the connection to it from the ones caused by the template, such as an
+     * invalid pod or an image that can not be pulled, which the other clouds of a group would fail on too.
+     *
+     * @return whether the API server could not be reached, or answered with a server error or throttling
+     */
+    static boolean isClusterFailure(@Nonnull Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof KubernetesClientException) {
+                int code = ((KubernetesClientException) cause).getCode();
+                if (code >= 500 || code == 429) {
+                    return true;
+                }
+                if (code > 0) {
+                    return false;
+                }
+            }
+            if (cause instanceof ConnectException || cause instanceof SocketTimeoutException
+                    || cause instanceof UnknownHostException || cause instanceof SSLException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+
+    /**
+     * @return false while the circuit breaker is open
+     */
+    synchronized boolean isHealthy() {
+        return !isOpen();
+    }
+
+    /**
+     * @return moving average of the provisioning latency in milliseconds, 0 if unknown
+     */
+    synchronized double getLatency() {
+        return Math.max(latency, 0);
+    }
+
+    /**
+     * @return moving average of the provisioning error rate, from 0 to 1
+     */
+    synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s, %.0f seconds to provision, %.0f%% errors", isOpen() ? "unhealthy" : "healthy",
+                getLatency() / 1000, errorRate * 100);
+    }
+}
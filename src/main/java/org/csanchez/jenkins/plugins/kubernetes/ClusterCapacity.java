@@ -0,0 +1,522 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.ResourceQuantities.*;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Label;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.Cloud;
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ContainerImage;
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.NodeCondition;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import jenkins.model.Jenkins;
+
+/**
+ * Cached model of the capacity of the cluster behind a {@link KubernetesCloud}.
+ * <p>
+ * Nodes and pods are listed once and then kept up to date with watches, so
+ * {@link KubernetesCloud#provision(Label, int)} can check whether a template fits anywhere without any API call.
+ * The free capacity of a node is its allocatable resources minus the requests of the non terminated pods
+ * scheduled on it. Agent pods not scheduled yet are counted against the whole cluster, so the pods created by a
+ * burst of provisioning rounds are not all given the same room.
+ * <p>
+ * Pods are only tracked when the cloud is {@link KubernetesCloud#isCapacityAware() capacity aware}. For
+ * {@link ImageLocality} alone only the nodes, and the images they report, are listed and watched.
+ *
+ * @since 0.13
+ */
+public class ClusterCapacity {
+
+    private static final Logger LOGGER = Logger.getLogger(ClusterCapacity.class.getName());
+
+    /** Capacity models by cloud name */
+    private static final ConcurrentMap<String, ClusterCapacity> CAPACITIES = new ConcurrentHashMap<>();
+
+    /** Time to wait before trying to synchronize again after a failure */
+    private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final String cloudName;
+    private final String serverUrl;
+    /** Whether the pods are listed and watched, to know the free capacity of the nodes */
+    private final boolean trackPods;
+
+    private final ConcurrentMap<String, NodeState> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PodState> pods = new ConcurrentHashMap<>();
+
+    private Watch nodeWatch;
+    private Watch podWatch;
+    private volatile boolean synced;
+    private long lastFailure;
+
+    private ClusterCapacity(String cloudName, String serverUrl, boolean trackPods) {
+        this.cloudName = cloudName;
+        this.serverUrl = serverUrl;
+        this.trackPods = trackPods;
+    }
+
+    /**
+     * Gets the capacity model of a cloud, synchronizing it with the cluster if needed, and starting over if its
+     * server changed or it started or stopped checking capacity.
+     */
+    @Nonnull
+    static ClusterCapacity get(@Nonnull KubernetesCloud cloud) {
+        boolean trackPods = cloud.isCapacityAware();
+        ClusterCapacity capacity = CAPACITIES.compute(cloud.name, (name, current) -> {
+            if (current != null && Objects.equals(current.serverUrl, cloud.getServerUrl())
+                    && current.trackPods == trackPods) {
+                return current;
+            }
+            if (current != null) {
+                current.close();
+            }
+            return new ClusterCapacity(name, cloud.getServerUrl(), trackPods);
+        });
+        capacity.sync(cloud);
+        return capacity;
+    }
+
+    /**
+     * Gets the capacity model of a cloud if there is one, without contacting the cluster.
+     */
+    @CheckForNull
+    static ClusterCapacity peek(@Nonnull String cloudName) {
+        return CAPACITIES.get(cloudName);
+    }
+
+    /**
+     * @return a model of the given nodes and pods, as if synchronized with the cluster
+     */
+    @Nonnull
+    static ClusterCapacity of(@Nonnull Collection<Node> nodes, @Nonnull Collection<Pod> pods) {
+        ClusterCapacity capacity = new ClusterCapacity("", null, true);
+        capacity.update(nodes, pods);
+        capacity.synced = true;
+        return capacity;
+    }
+
+    /**
+     * Stops tracking the capacity of a cloud.
+     */
+    static void remove(@Nonnull String cloudName) {
+        ClusterCapacity capacity = CAPACITIES.remove(cloudName);
+        if (capacity != null) {
+            capacity.close();
+        }
+    }
+
+    private synchronized void sync(KubernetesCloud cloud) {
+        if (synced || System.currentTimeMillis() - lastFailure < RETRY_INTERVAL) {
+            return;
+        }
+        closeWatches();
+        try {
+            KubernetesClient client = cloud.connect();
+            update(client.nodes().list().getItems(),
+                    trackPods ? client.pods().inAnyNamespace().list().getItems() : Collections.emptyList());
+            nodeWatch = client.nodes().watch(new NodeWatcher());
+            if (trackPods) {
+                podWatch = client.pods().inAnyNamespace().watch(new PodWatcher());
+            }
+            synced = true;
+            LOGGER.log(Level.FINE, "Synchronized cluster capacity of cloud {0}: {1}",
+                    new Object[] { cloudName, getSummary() });
+        } catch (Exception e) {
+            lastFailure = System.currentTimeMillis();
+            closeWatches();
+            LOGGER.log(Level.WARNING, "Failed to read the cluster capacity of cloud {0}, not checking capacity: {1}",
+                    new Object[] { cloudName, e.getMessage() });
+        }
+    }
+
+    private void update(Collection<Node> nodeList, Collection<Pod> podList) {
+        nodes.clear();
+        pods.clear();
+        for (Node node : nodeList) {
+            nodes.put(node.getMetadata().getName(), new NodeState(node));
+        }
+        for (Pod pod : podList) {
+            updatePod(pod);
+        }
+    }
+
+    /**
+     * @return whether the model is up to date with the cluster
+     */
+    public boolean isAvailable() {
+        return synced;
+    }
+
+    /**
+     * Counts how many pods with the given requests could still be scheduled.
+     *
+     * @param nodeSelector the node selector of the pods
+     * @param resources    the requests of the pods
+     * @return the number of pods that fit in the cluster, {@link Integer#MAX_VALUE} if unknown
+     */
+    public int getAvailableSlots(@Nonnull Map<String, String> nodeSelector, @Nonnull PodResources resources) {
+        if (!synced || !trackPods) {
+            return Integer.MAX_VALUE;
+        }
+        Map<String, PodState> requested = getRequestedByNode();
+        long slots = 0;
+        for (NodeState node : nodes.values()) {
+            if (!node.schedulable || !node.matches(nodeSelector)) {
+                continue;
+            }
+            slots += node.fit(requested.get(node.name), resources);
+            if (slots >= Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        // wherever they get scheduled, the agent pods still pending take the room of some of these pods
+        for (PodState pod : pods.values()) {
+            if (pod.nodeName == null && pod.agent) {
+                slots -= pod.getSlots(resources);
+            }
+        }
+        return (int) Math.max(slots, 0);
+    }
+
+    /**
+     * Adds up the size of the given images already present in each schedulable node.
+     *
+     * @param images       normalized image names, see {@link ImageLocality#normalize(String)}
+     * @param nodeSelector the node selector of the pods
+     * @return the bytes of the images present by node name, empty if unknown
+     */
+    @Nonnull
+    public Map<String, Long> getImageBytesByNode(@Nonnull Collection<String> images,
+            @Nonnull Map<String, String> nodeSelector) {
+        Map<String, Long> bytes = new HashMap<>();
+        if (!synced) {
+            return bytes;
+        }
+        for (NodeState node : nodes.values()) {
+            if (!node.schedulable || !node.matches(nodeSelector)) {
+                continue;
+            }
+            long sum = 0;
+            for (String image : images) {
+                Long size = node.images.get(image);
+                if (size != null) {
+                    sum += size;
+                }
+            }
+            bytes.put(node.name, sum);
+        }
+        return bytes;
+    }
+
+    /**
+     * @param images normalized image names, see {@link ImageLocality#normalize(String)}
+     * @return how many of the images are present by node name, empty if unknown
+     */
+    @Nonnull
+    public Map<String, Integer> countPresentImagesByNode(@Nonnull Collection<String> images) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (!synced) {
+            return counts;
+        }
+        for (NodeState node : nodes.values()) {
+            counts.put(node.name, (int) images.stream().filter(node.images::containsKey).count());
+        }
+        return counts;
+    }
+
+    /**
+     * @return a human readable summary of the capacity of the cluster
+     */
+    public String getSummary() {
+        if (!synced) {
+            return "Not synchronized with the cluster";
+        }
+        if (!trackPods) {
+            return String.format("%d nodes, pods are not tracked", nodes.size());
+        }
+        long cpu = 0, memory = 0, requestedCpu = 0, requestedMemory = 0;
+        int schedulable = 0;
+        Map<String, PodState> requested = getRequestedByNode();
+        for (NodeState node : nodes.values()) {
+            if (!node.schedulable) {
+                continue;
+            }
+            schedulable++;
+            cpu += node.cpu;
+            memory += node.memory;
+            PodState used = requested.get(node.name);
+            if (used != null) {
+                requestedCpu += used.cpu;
+                requestedMemory += used.memory;
+            }
+        }
+        return String.format("%d schedulable nodes, %s of %s cpu and %s of %s memory requested", schedulable,
+                formatCpu(requestedCpu), formatCpu(cpu), formatMemory(requestedMemory), formatMemory(memory));
+    }
+
+    /**
+     * @return the sum of pod requests by node name, with the pod count in {@link PodState#count}
+     */
+    private Map<String, PodState> getRequestedByNode() {
+        Map<String, PodState> requested = new HashMap<>();
+        for (PodState pod : pods.values()) {
+            if (pod.nodeName == null) {
+                continue;
+            }
+            PodState sum = requested.computeIfAbsent(pod.nodeName, PodState::new);
+            sum.cpu += pod.cpu;
+            sum.memory += pod.memory;
+            sum.count++;
+        }
+        return requested;
+    }
+
+    private void updatePod(Pod pod) {
+        String key = pod.getMetadata().getNamespace() + "/" + pod.getMetadata().getName();
+        String phase = pod.getStatus() == null ? null : pod.getStatus().getPhase();
+        if ("Succeeded".equals(phase) || "Failed".equals(phase)) {
+            pods.remove(key);
+        } else {
+            pods.put(key, new PodState(pod));
+        }
+    }
+
+    private synchronized void closeWatches() {
+        for (Watch watch : new Watch[] { nodeWatch, podWatch }) {
+            if (watch != null) {
+                try {
+                    watch.close();
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Failed to close watch", e);
+                }
+            }
+        }
+        nodeWatch = null;
+        podWatch = null;
+    }
+
+    void close() {
+        synced = false;
+        closeWatches();
+    }
+
+    private void onWatchClosed(KubernetesClientException cause) {
+        if (synced) {
+            LOGGER.log(Level.INFO, "Cluster capacity watch of cloud {0} closed, will synchronize again: {1}",
+                    new Object[] { cloudName, cause == null ? "" : cause.getMessage() });
+        }
+        // the next provisioning round lists everything again
+        synced = false;
+    }
+
+    /**
+     * Stops tracking the capacity of the clouds removed, or that no longer need it, when the configuration of Jenkins
+     * is saved.
+     */
+    @Extension
+    public static class Reconciler extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (!(o instanceof Jenkins)) {
+                return;
+            }
+            for (String cloudName : CAPACITIES.keySet()) {
+                Cloud cloud = ((Jenkins) o).getCloud(cloudName);
+                if (!(cloud instanceof KubernetesCloud) || !((KubernetesCloud) cloud).isCapacityAware()
+                        && !((KubernetesCloud) cloud).isImageLocality()) {
+                    LOGGER.log(Level.FINE, "No longer tracking the cluster capacity of cloud {0}", cloudName);
+                    remove(cloudName);
+                }
+            }
+        }
+    }
+
+    private class NodeWatcher implements Watcher<Node> {
+        @Override
+        public void eventReceived(Action action, Node node) {
+            String name = node.getMetadata().getName();
+            if (action == Action.DELETED) {
+                nodes.remove(name);
+            } else if (action == Action.ADDED || action == Action.MODIFIED) {
+                nodes.put(name, new NodeState(node));
+            }
+        }
+
+        @Override
+        public void onClose(KubernetesClientException cause) {
+            onWatchClosed(cause);
+        }
+    }
+
+    private class PodWatcher implements Watcher<Pod> {
+        @Override
+        public void eventReceived(Action action, Pod pod) {
+            if (action == Action.DELETED) {
+                pods.remove(pod.getMetadata().getNamespace() + "/" + pod.getMetadata().getName());
+            } else if (action == Action.ADDED || action == Action.MODIFIED) {
+                updatePod(pod);
+            }
+        }
+
+        @Override
+        public void onClose(KubernetesClientException cause) {
+            onWatchClosed(cause);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the relevant fields of a node.
+     */
+    private static class NodeState {
+        final String name;
+        final Map<String, String> labels;
+        final boolean schedulable;
+        final long cpu;
+        final long memory;
+        final long pods;
+        /** Size of the images present in the node by normalized name */
+        final Map<String, Long> images;
+
+        NodeState(Node node) {
+            this.name = node.getMetadata().getName();
+            this.labels = node.getMetadata().getLabels() == null ? Collections.emptyMap()
+                    : new HashMap<>(node.getMetadata().getLabels());
+            boolean ready = false;
+            long cpu = 0, memory = 0, pods = 0;
+            if (node.getStatus() != null) {
+                if (node.getStatus().getConditions() != null) {
+                    for (NodeCondition condition : node.getStatus().getConditions()) {
+                        if ("Ready".equals(condition.getType())) {
+                            ready = "True".equals(condition.getStatus());
+                        }
+                    }
+                }
+                try {
+                    cpu = ResourceQuantities.get(node.getStatus().getAllocatable(), CPU);
+                    memory = ResourceQuantities.get(node.getStatus().getAllocatable(), MEMORY);
+                    pods = ResourceQuantities.get(node.getStatus().getAllocatable(), PODS);
+                } catch (NumberFormatException | ArithmeticException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring node {0} with invalid allocatable resources: {1}",
+                            new Object[] { name, e.getMessage() });
+                    ready = false;
+                }
+            }
+            Map<String, Long> images = new HashMap<>();
+            if (node.getStatus() != null && node.getStatus().getImages() != null) {
+                for (ContainerImage image : node.getStatus().getImages()) {
+                    long size = image.getSizeBytes() == null ? 0 : image.getSizeBytes();
+                    if (image.getNames() != null) {
+                        for (String imageName : image.getNames()) {
+                            images.put(ImageLocality.normalize(imageName), size);
+                        }
+                    }
+                }
+            }
+            this.images = images;
+            boolean cordoned = node.getSpec() != null && Boolean.TRUE.equals(node.getSpec().getUnschedulable());
+            this.schedulable = ready && !cordoned;
+            this.cpu = cpu;
+            this.memory = memory;
+            this.pods = pods;
+        }
+
+        boolean matches(Map<String, String> nodeSelector) {
+            for (Map.Entry<String, String> entry : nodeSelector.entrySet()) {
+                if (!entry.getValue().equals(labels.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return how many pods with the given requests fit in this node
+         */
+        long fit(@CheckForNull PodState used, PodResources resources) {
+            long usedCpu = used == null ? 0 : used.cpu;
+            long usedMemory = used == null ? 0 : used.memory;
+            long usedPods = used == null ? 0 : used.count;
+            long fit = pods > 0 ? pods - usedPods : Integer.MAX_VALUE;
+            if (resources.getCpuRequest() > 0) {
+                fit = Math.min(fit, (cpu - usedCpu) / resources.getCpuRequest());
+            }
+            if (resources.getMemoryRequest() > 0) {
+                fit = Math.min(fit, (memory - usedMemory) / resources.getMemoryRequest());
+            }
+            return Math.max(fit, 0);
+        }
+    }
+
+    /**
+     * Requests of a pod, or the sum of the requests of the pods in a node.
+     */
+    private static class PodState {
+        final String nodeName;
+        /** Whether the pod is an agent pod, created by the plugin */
+        final boolean agent;
+        long cpu;
+        long memory;
+        int count;
+
+        PodState(String nodeName) {
+            this.nodeName = nodeName;
+            this.agent = false;
+        }
+
+        PodState(Pod pod) {
+            this.nodeName = pod.getSpec() == null ? null : pod.getSpec().getNodeName();
+            Map<String, String> labels = pod.getMetadata().getLabels();
+            this.agent = labels != null && labels.entrySet().containsAll(KubernetesCloud.DEFAULT_POD_LABELS.entrySet());
+            if (pod.getSpec() != null && pod.getSpec().getContainers() != null) {
+                for (Container container : pod.getSpec().getContainers()) {
+                    if (container.getResources() == null) {
+                        continue;
+                    }
+                    try {
+                        cpu += ResourceQuantities.get(container.getResources().getRequests(), CPU);
+                        memory += ResourceQuantities.get(container.getResources().getRequests(), MEMORY);
+                    } catch (NumberFormatException | ArithmeticException e) {
+                        LOGGER.log(Level.FINE, "Ignoring invalid requests in pod {0}: {1}",
+                                new Object[] { pod.getMetadata().getName(), e.getMessage() });
+                    }
+                }
+            }
+            this.count = 1;
+        }
+
+        /**
+         * @return how many pods with the given requests this pod takes the room of, at least one
+         */
+        long getSlots(PodResources resources) {
+            long slots = 1;
+            if (resources.getCpuRequest() > 0) {
+                slots = Math.max(slots, (cpu + resources.getCpuRequest() - 1) / resources.getCpuRequest());
+            }
+            if (resources.getMemoryRequest() > 0) {
+                slots = Math.max(slots, (memory + resources.getMemoryRequest() - 1) / resources.getMemoryRequest());
+            }
+            return slots;
+        }
+    }
+}
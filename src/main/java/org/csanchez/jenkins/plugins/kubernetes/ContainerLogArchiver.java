@@ -0,0 +1,183 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.IOUtils;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Archives the logs of the containers of an agent pod, other than the jnlp one, as gzip compressed artifacts of the
+ * last build that ran on the agent, before the pod is deleted. Each log is streamed from the API server to its
+ * artifact, up to a size cap, and the logs of the containers are read concurrently for a limited time.
+ * <p>
+ * The cap and the time limit are set with the
+ * <code>org.csanchez.jenkins.plugins.kubernetes.ContainerLogArchiver.maxBytes</code> and
+ * <code>org.csanchez.jenkins.plugins.kubernetes.ContainerLogArchiver.timeoutSeconds</code> system properties.
+ *
+ * @since 0.13
+ */
+public class ContainerLogArchiver {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerLogArchiver.class.getName());
+
+    /** Directory of the artifacts, with a subdirectory per pod */
+    static final String ARTIFACTS_DIR = "container-logs";
+
+    private static final long MAX_BYTES = Long.getLong(ContainerLogArchiver.class.getName() + ".maxBytes",
+            10 * 1024 * 1024);
+    private static final long TIMEOUT_SECONDS = Long.getLong(ContainerLogArchiver.class.getName() + ".timeoutSeconds",
+            60);
+
+    private ContainerLogArchiver() {
+    }
+
+    /**
+     * Archives the logs of the containers of a pod with a build, waiting for them up to the time limit.
+     */
+    static void archive(@Nonnull KubernetesClient client, @Nonnull String namespace, @Nonnull String podName,
+            @Nonnull Run<?, ?> run, @Nonnull TaskListener listener) throws IOException, InterruptedException {
+        if (!(client instanceof HttpClientAware)) {
+            LOGGER.log(Level.WARNING, "Can not stream the container logs of pod {0} with this client", podName);
+            return;
+        }
+        Pod pod = client.pods().inNamespace(namespace).withName(podName).get();
+        if (pod == null || pod.getSpec() == null) {
+            return;
+        }
+        List<String> containers = pod.getSpec().getContainers().stream().map(Container::getName)
+                .filter(name -> !KubernetesCloud.JNLP_NAME.equals(name)).collect(Collectors.toList());
+        if (containers.isEmpty()) {
+            return;
+        }
+
+        OkHttpClient httpClient = ((HttpClientAware) client).getHttpClient();
+        File dir = Util.createTempDir();
+        try {
+            Map<String, Call> calls = new LinkedHashMap<>();
+            Map<String, Future<Long>> downloads = new LinkedHashMap<>();
+            for (String container : containers) {
+                // one byte more than the cap, to tell truncated logs apart
+                HttpUrl url = getLogUrl(client.getMasterUrl(), namespace, podName, container, MAX_BYTES + 1);
+                Call call = httpClient.newCall(new Request.Builder().url(url).build());
+                File file = new File(dir, container + ".log.gz");
+                calls.put(container, call);
+                downloads.put(container, Computer.threadPoolForRemoting.submit(() -> download(call, file)));
+            }
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            Map<String, String> artifacts = new TreeMap<>();
+            for (Map.Entry<String, Future<Long>> download : downloads.entrySet()) {
+                String container = download.getKey();
+                try {
+                    long bytes = download.getValue().get(Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                    artifacts.put(ARTIFACTS_DIR + "/" + podName + "/" + container + ".log.gz",
+                            container + ".log.gz");
+                    LOGGER.log(Level.FINE, "Archived {0} bytes of log of container {1} of pod {2}",
+                            new Object[] { bytes, container, podName });
+                } catch (TimeoutException e) {
+                    listener.error("Timed out archiving the log of container " + container + " of pod " + podName);
+                } catch (ExecutionException e) {
+                    listener.error("Failed to archive the log of container " + container + " of pod " + podName
+                            + ": " + e.getCause().getMessage());
+                    LOGGER.log(Level.FINE, "Failed to archive the log of container " + container, e.getCause());
+                } finally {
+                    calls.get(container).cancel();
+                    download.getValue().cancel(true);
+                }
+            }
+
+            if (!artifacts.isEmpty()) {
+                run.pickArtifactManager().archive(new FilePath(dir), new Launcher.LocalLauncher(listener),
+                        new StreamBuildListener(listener.getLogger(), Charset.defaultCharset()), artifacts);
+                listener.getLogger().println("Archived the logs of containers " + containers + " of pod " + podName
+                        + " with " + run.getFullDisplayName());
+            }
+        } finally {
+            Util.deleteRecursive(dir);
+        }
+    }
+
+    /**
+     * @return the url of the log of a container, limited to the given size by the API server
+     */
+    @Nonnull
+    static HttpUrl getLogUrl(@Nonnull URL masterUrl, @Nonnull String namespace, @Nonnull String podName,
+            @Nonnull String container, long maxBytes) {
+        HttpUrl url = HttpUrl.get(masterUrl);
+        if (url == null) {
+            throw new IllegalArgumentException("Invalid Kubernetes URL " + masterUrl);
+        }
+        return url.newBuilder() //
+                .addPathSegments("api/v1/namespaces") //
+                .addPathSegment(namespace) //
+                .addPathSegment("pods") //
+                .addPathSegment(podName) //
+                .addPathSegment("log") //
+                .addQueryParameter("container", container) //
+                .addQueryParameter("limitBytes", String.valueOf(maxBytes)) //
+                .build();
+    }
+
+    private static long download(Call call, File file) throws IOException {
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + " " + response.message());
+            }
+            try (InputStream in = response.body().byteStream();
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+                return copy(in, out, MAX_BYTES);
+            }
+        }
+    }
+
+    /**
+     * Copies a log up to the cap, noting when it is truncated.
+     *
+     * @return the number of bytes of the log copied
+     */
+    static long copy(@Nonnull InputStream in, @Nonnull OutputStream out, long maxBytes) throws IOException {
+        long bytes = IOUtils.copyLarge(in, out, 0, maxBytes);
+        if (bytes >= maxBytes && in.read() != -1) {
+            out.write(String.format("%n[log truncated after %d bytes]%n", bytes).getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.model.Descriptor;
+import hudson.slaves.Cloud;
+import hudson.slaves.RetentionStrategy;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps an idle agent for as long as a build that can use it is likely enough to arrive to pay for the idle time,
+ * based on the recent arrival rate of builds for its template and the time its pods take to start, see
+ * {@link TemplateUsage#isWorthKeeping(double, long)}.
+ * <p>
+ * An agent that is not connected is kept for the connect timeout of its template, while its pod may still be starting,
+ * and terminated afterwards, as its pod died or never connected.
+ *
+ * @since 0.13
+ */
+public class DemandAwareRetentionStrategy extends RetentionStrategy<KubernetesComputer> {
+
+    private static final Logger LOGGER = Logger.getLogger(DemandAwareRetentionStrategy.class.getName());
+
+    /** Time an agent is always kept after a build, so queued builds can take it */
+    private static final long MIN_IDLE = TimeUnit.MINUTES.toMillis(1);
+
+    /** Time an agent is kept at most, whatever the demand */
+    private static final long MAX_IDLE = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(DemandAwareRetentionStrategy.class.getName() + ".maxIdleMinutes", 60));
+
+    /** Connect timeout of templates before it was kept with the strategy, in seconds */
+    private static final int DEFAULT_CONNECT_TIMEOUT = 100;
+
+    private final String cloudName;
+    private final String templateName;
+    /** Time the agent has to connect, in seconds, as {@link PodTemplate#getSlaveConnectTimeout()} */
+    private final int connectTimeout;
+
+    public DemandAwareRetentionStrategy(@Nonnull String cloudName, @Nonnull String templateName,
+            int connectTimeout) {
+        this.cloudName = cloudName;
+        this.templateName = templateName;
+        this.connectTimeout = connectTimeout;
+    }
+
+    public String getCloudName() {
+        return cloudName;
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    @Override
+    public long check(@Nonnull KubernetesComputer c) {
+        return check(c, System.currentTimeMillis());
+    }
+
+    long check(@Nonnull KubernetesComputer c, long now) {
+        if (!c.isIdle()) {
+            return 1;
+        }
+        long idle = getIdleTime(c.getConnectTime(), c.getIdleStartMilliseconds(), now);
+        if (c.isOffline() || c.isConnecting()) {
+            // the pod of an agent that is not connected yet may still be starting
+            if (idle < TimeUnit.SECONDS.toMillis(getConnectTimeout())) {
+                return 1;
+            }
+            terminate(c, "Terminating agent {0} of template {1}, not connected for {2} minutes", idle);
+            return 1;
+        }
+        if (idle < MIN_IDLE) {
+            return 1;
+        }
+        if (idle < MAX_IDLE && TemplateUsage.get(cloudName, templateName).isWorthKeeping(getIdleCostFactor(), now)) {
+            return 1;
+        }
+        terminate(c, "Terminating agent {0} of template {1} after {2} idle minutes", idle);
+        return 1;
+    }
+
+    private void terminate(KubernetesComputer c, String message, long idle) {
+        KubernetesSlave node = c.getNode();
+        if (node != null) {
+            LOGGER.log(Level.INFO, message,
+                    new Object[] { node.getNodeName(), templateName, TimeUnit.MILLISECONDS.toMinutes(idle) });
+            try {
+                node.terminate();
+            } catch (InterruptedException | IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to terminate " + c.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * @return how long an agent has been idle, since it connected if it did not run any task since then, which is
+     *         also how long an agent has been offline since it was created or ran its last task
+     */
+    static long getIdleTime(long connectTime, long idleStart, long now) {
+        return now - Math.max(connectTime, idleStart);
+    }
+
+    private double getIdleCostFactor() {
+        Jenkins jenkins = Jenkins.getInstance();
+        Cloud cloud = jenkins == null ? null : jenkins.getCloud(cloudName);
+        return cloud instanceof KubernetesCloud ? ((KubernetesCloud) cloud).getIdleCostFactor()
+                : KubernetesCloud.DEFAULT_IDLE_COST_FACTOR;
+    }
+
+    @Override
+    public void start(@Nonnull KubernetesComputer c) {
+        c.connect(false);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<RetentionStrategy<?>> {
+        @Override
+        public String getDisplayName() {
+            return "Keep idle Kubernetes agents while builds are likely to arrive";
+        }
+    }
+}
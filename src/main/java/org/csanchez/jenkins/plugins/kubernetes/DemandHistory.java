@@ -0,0 +1,171 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+/**
+ * Demand for agents by label, kept as the peak demand of each hour of the week in a ring of
+ * {@link #BUCKETS} buckets, each one an exponentially weighted moving average over the weeks.
+ * <p>
+ * Persisted in <code>JENKINS_HOME/kubernetes-demand-history.xml</code>.
+ *
+ * @since 0.13
+ */
+public class DemandHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(DemandHistory.class.getName());
+
+    /** One bucket per hour of the week */
+    static final int BUCKETS = 7 * 24;
+
+    /** Weight of the last week in the moving average */
+    private static final double ALPHA = 0.3;
+
+    private static DemandHistory instance;
+
+    private final Map<String, LabelDemand> labels = new ConcurrentHashMap<>();
+
+    private transient boolean dirty;
+
+    /**
+     * @return the history, loaded from disk the first time
+     */
+    @Nonnull
+    static synchronized DemandHistory get() {
+        if (instance == null) {
+            instance = new DemandHistory();
+            XmlFile file = getFile();
+            if (file.exists()) {
+                try {
+                    file.unmarshal(instance);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to load the demand history, starting from scratch", e);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static XmlFile getFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.getActiveInstance().getRootDir(),
+                "kubernetes-demand-history.xml"));
+    }
+
+    /**
+     * Saves the history if any hour was completed since the last save.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            getFile().write(this);
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the demand history", e);
+        }
+    }
+
+    /**
+     * Records the demand for agents of a label at the given time.
+     */
+    void record(@Nonnull String label, long time, int demand) {
+        if (labels.computeIfAbsent(label, k -> new LabelDemand()).record(bucket(time), demand)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the demand expected for agents of a label at the given time, 0 if unknown
+     */
+    double forecast(@Nonnull String label, long time) {
+        LabelDemand demand = labels.get(label);
+        return demand == null ? 0 : demand.forecast(bucket(time));
+    }
+
+    /**
+     * @return a summary of the forecast accuracy for a label
+     */
+    @Nonnull
+    String getAccuracy(@Nonnull String label) {
+        LabelDemand demand = labels.get(label);
+        return demand == null ? "no history yet" : demand.getAccuracy();
+    }
+
+    /**
+     * @return the bucket of the hour of the week for a time, in the local time zone
+     */
+    static int bucket(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return (calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY) * 24 + calendar.get(Calendar.HOUR_OF_DAY);
+    }
+
+    /**
+     * Demand history of a single label.
+     */
+    static class LabelDemand {
+        /** Moving average of the peak demand of each hour of the week, negative if never seen */
+        private final double[] peaks = new double[BUCKETS];
+        private int currentBucket = -1;
+        private int currentPeak;
+        /** Sum of the absolute errors of the forecasts made for the completed hours */
+        private double errors;
+        private int forecasts;
+
+        LabelDemand() {
+            Arrays.fill(peaks, -1);
+        }
+
+        /**
+         * @return whether an hour was completed and folded into the history
+         */
+        synchronized boolean record(int bucket, int demand) {
+            boolean completed = false;
+            if (bucket != currentBucket) {
+                completed = fold();
+                currentBucket = bucket;
+                currentPeak = 0;
+            }
+            currentPeak = Math.max(currentPeak, demand);
+            return completed;
+        }
+
+        private boolean fold() {
+            if (currentBucket < 0) {
+                return false;
+            }
+            double previous = peaks[currentBucket];
+            if (previous < 0) {
+                peaks[currentBucket] = currentPeak;
+            } else {
+                errors += Math.abs(previous - currentPeak);
+                forecasts++;
+                peaks[currentBucket] = ALPHA * currentPeak + (1 - ALPHA) * previous;
+            }
+            return true;
+        }
+
+        synchronized double forecast(int bucket) {
+            return Math.max(peaks[bucket], 0);
+        }
+
+        synchronized String getAccuracy() {
+            if (forecasts == 0) {
+                return "not enough history yet";
+            }
+            return String.format("mean absolute error of %.1f agents over %d hours", errors / forecasts, forecasts);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.PodTemplateUtils.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.csanchez.jenkins.plugins.kubernetes.volumes.GitReferenceMirrorVolume;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.PodVolume;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import io.fabric8.kubernetes.api.model.Affinity;
+import io.fabric8.kubernetes.api.model.AffinityBuilder;
+import io.fabric8.kubernetes.api.model.NodeSelectorTerm;
+import io.fabric8.kubernetes.api.model.NodeSelectorTermBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSet;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSetBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps a <code>DaemonSet</code> per cloud and mirror host path that fetches the repositories of the
+ * {@link GitReferenceMirrorVolume} volumes of the pod templates into a bare repository on the nodes the templates run
+ * on, and reports how stale the mirror of each node is.
+ * <p>
+ * The fetch loop writes the time of the last successful fetch to a status file next to the mirror, and the readiness
+ * probe of the pods checks that it is recent, so the staleness of every mirror is read from a single listing of the
+ * pods. Automatic garbage collection is disabled in the mirror, as the repositories cloned with it as reference rely
+ * on its objects.
+ *
+ * @since 0.13
+ */
+@Extension
+public class GitMirrorRefresher extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(GitMirrorRefresher.class.getName());
+
+    /** Label with a hash of the cloud name, to find the objects managed for a cloud */
+    static final String CLOUD_LABEL = "jenkins/git-mirror";
+    /** Label with the name of the daemon set, to select its pods */
+    private static final String SET_LABEL = "jenkins/git-mirror-set";
+    private static final String HASH_ANNOTATION = "jenkins/git-mirror-hash";
+    private static final String INTERVAL_ANNOTATION = "jenkins/git-mirror-interval";
+    private static final String CLOUD_ANNOTATION = "jenkins/cloud";
+
+    private static final String NAME_PREFIX = "jenkins-git-mirror-";
+    private static final String CONTAINER_NAME = "git-mirror";
+    private static final String MIRROR_PATH = "/mirror";
+
+    /** File of the mirror with the time of the last successful fetch, in seconds */
+    private static final String STATUS_FILE = MIRROR_PATH + "/jenkins-last-fetch";
+
+    private static final Map<String, Quantity> REQUESTS = ImmutableMap.of("cpu", new Quantity("10m"), "memory",
+            new Quantity("64Mi"));
+    private static final Map<String, Quantity> LIMITS = ImmutableMap.of("cpu", new Quantity("500m"), "memory",
+            new Quantity("512Mi"));
+
+    /** Mirror staleness by cloud name, then by node name */
+    private static final ConcurrentMap<String, Map<String, String>> STALENESS = new ConcurrentHashMap<>();
+
+    /** Clouds already checked for leftover daemon sets since startup */
+    private final Set<String> checked = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public GitMirrorRefresher() {
+        super("Kubernetes git reference mirrors");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        Set<String> cloudNames = new HashSet<>();
+        for (Cloud cloud : jenkins.clouds) {
+            if (!(cloud instanceof KubernetesCloud)) {
+                continue;
+            }
+            KubernetesCloud kubernetesCloud = (KubernetesCloud) cloud;
+            cloudNames.add(kubernetesCloud.name);
+            try {
+                reconcile(kubernetesCloud);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to reconcile git mirror daemon sets of cloud {0}: {1}",
+                        new Object[] { kubernetesCloud.name, e.getMessage() });
+            }
+        }
+        STALENESS.keySet().retainAll(cloudNames);
+    }
+
+    private void reconcile(KubernetesCloud cloud) throws Exception {
+        Map<String, DaemonSet> desired = getDesiredDaemonSets(cloud);
+        boolean mirror = !desired.isEmpty();
+        if (!mirror && checked.contains(cloud.name) && !STALENESS.containsKey(cloud.name)) {
+            // nothing to mirror and nothing left over
+            return;
+        }
+        KubernetesClient client = cloud.connect();
+        String namespace = getNamespace(cloud, client);
+        String cloudLabel = getCloudLabel(cloud);
+
+        Map<String, Integer> intervals = new TreeMap<>();
+        for (DaemonSet wanted : desired.values()) {
+            intervals.put(wanted.getMetadata().getName(), getInterval(wanted));
+        }
+        for (DaemonSet existing : client.extensions().daemonSets().inNamespace(namespace)
+                .withLabel(CLOUD_LABEL, cloudLabel).list().getItems()) {
+            String name = existing.getMetadata().getName();
+            DaemonSet wanted = desired.remove(name);
+            if (wanted == null) {
+                LOGGER.log(Level.INFO, "Deleting git mirror daemon set {0} of cloud {1}",
+                        new Object[] { name, cloud.name });
+                client.extensions().daemonSets().inNamespace(namespace).withName(name).delete();
+            } else if (!getHash(wanted).equals(getHash(existing))) {
+                LOGGER.log(Level.INFO, "Updating git mirror daemon set {0} of cloud {1}",
+                        new Object[] { name, cloud.name });
+                client.extensions().daemonSets().inNamespace(namespace).withName(name).replace(wanted);
+            }
+        }
+        for (DaemonSet missing : desired.values()) {
+            LOGGER.log(Level.INFO, "Creating git mirror daemon set {0} of cloud {1}",
+                    new Object[] { missing.getMetadata().getName(), cloud.name });
+            client.extensions().daemonSets().inNamespace(namespace).create(missing);
+        }
+        checked.add(cloud.name);
+
+        Map<String, String> staleness = new TreeMap<>();
+        long now = System.currentTimeMillis();
+        for (Pod pod : client.pods().inNamespace(namespace).withLabel(CLOUD_LABEL, cloudLabel).list().getItems()) {
+            if (pod.getSpec() == null || pod.getSpec().getNodeName() == null) {
+                continue;
+            }
+            Integer interval = intervals.get(pod.getMetadata().getLabels().get(SET_LABEL));
+            if (interval == null) {
+                // being deleted
+                continue;
+            }
+            staleness.merge(pod.getSpec().getNodeName(), describe(pod, interval, now), (a, b) -> a + ", " + b);
+        }
+        if (staleness.isEmpty() && !mirror) {
+            STALENESS.remove(cloud.name);
+        } else {
+            STALENESS.put(cloud.name, staleness);
+        }
+    }
+
+    /**
+     * @param pod a pod of a mirror daemon set, whose readiness tells whether the mirror was fetched recently
+     * @param interval minutes between fetches
+     * @return how stale a mirror is
+     */
+    @Nonnull
+    static String describe(@Nonnull Pod pod, int interval, long now) {
+        PodCondition ready = null;
+        if (pod.getStatus() != null && pod.getStatus().getConditions() != null) {
+            for (PodCondition condition : pod.getStatus().getConditions()) {
+                if ("Ready".equals(condition.getType())) {
+                    ready = condition;
+                }
+            }
+        }
+        if (ready == null) {
+            return "not fetched yet";
+        }
+        if ("True".equals(ready.getStatus())) {
+            return "fetched in the last " + Util.getTimeSpanString(TimeUnit.MINUTES.toMillis(2L * interval));
+        }
+        long since;
+        try {
+            since = Instant.parse(ready.getLastTransitionTime()).toEpochMilli();
+        } catch (NullPointerException | DateTimeParseException e) {
+            return "not fetched yet";
+        }
+        // not ready since the pod started or since the mirror became stale
+        return "stale, not fetched for at least " + Util.getTimeSpanString(Math.max(0, now - since));
+    }
+
+    /**
+     * @return the daemon sets needed by the mirror volumes of the cloud templates, one per host path, by name
+     */
+    @Nonnull
+    Map<String, DaemonSet> getDesiredDaemonSets(@Nonnull KubernetesCloud cloud) {
+        Map<String, GitReferenceMirrorVolume> mirrors = new TreeMap<>();
+        Map<String, Set<Map<String, String>>> selectors = new TreeMap<>();
+        Map<String, Integer> intervals = new TreeMap<>();
+        for (PodTemplate template : cloud.getTemplates()) {
+            PodTemplate unwrapped = unwrap(template, cloud.getDefaultsProviderTemplate(), cloud.getTemplates());
+            for (PodVolume volume : unwrapped.getVolumes()) {
+                if (!(volume instanceof GitReferenceMirrorVolume)) {
+                    continue;
+                }
+                GitReferenceMirrorVolume mirror = (GitReferenceMirrorVolume) volume;
+                if (mirror.getRepositoryList().isEmpty()) {
+                    continue;
+                }
+                // a single daemon set per host path, as two of them would fetch into the same directory of a node
+                String key = mirror.getHostPath();
+                selectors.computeIfAbsent(key, k -> new LinkedHashSet<>())
+                        .add(new TreeMap<>(getNodeSelectorMap(unwrapped.getNodeSelector())));
+                mirrors.putIfAbsent(key, mirror);
+                // the most frequent fetch wins when several templates share a mirror
+                intervals.merge(key, Math.max(1, mirror.getFetchInterval()), Math::min);
+            }
+        }
+        Map<String, DaemonSet> daemonSets = new TreeMap<>();
+        for (Map.Entry<String, GitReferenceMirrorVolume> entry : mirrors.entrySet()) {
+            DaemonSet daemonSet = buildDaemonSet(cloud, entry.getValue(), getAffinity(selectors.get(entry.getKey())),
+                    intervals.get(entry.getKey()));
+            daemonSets.put(daemonSet.getMetadata().getName(), daemonSet);
+        }
+        return daemonSets;
+    }
+
+    /**
+     * @param selectors node selectors of the templates sharing a mirror
+     * @return an affinity to the nodes matching any of the selectors, null for all the nodes
+     */
+    @CheckForNull
+    static Affinity getAffinity(@Nonnull Set<Map<String, String>> selectors) {
+        List<NodeSelectorTerm> terms = new ArrayList<>();
+        for (Map<String, String> selector : selectors) {
+            if (selector.isEmpty()) {
+                // a template runs anywhere, so does its mirror
+                return null;
+            }
+            NodeSelectorTermBuilder term = new NodeSelectorTermBuilder();
+            for (Map.Entry<String, String> label : selector.entrySet()) {
+                term.addNewMatchExpression() //
+                        .withKey(label.getKey()) //
+                        .withOperator("In") //
+                        .withValues(label.getValue()) //
+                        .endMatchExpression();
+            }
+            terms.add(term.build());
+        }
+        return new AffinityBuilder() //
+                .withNewNodeAffinity() //
+                .withNewRequiredDuringSchedulingIgnoredDuringExecution() //
+                .withNodeSelectorTerms(terms) //
+                .endRequiredDuringSchedulingIgnoredDuringExecution() //
+                .endNodeAffinity() //
+                .build();
+    }
+
+    private DaemonSet buildDaemonSet(KubernetesCloud cloud, GitReferenceMirrorVolume mirror,
+            @CheckForNull Affinity affinity, int interval) {
+        String name = NAME_PREFIX + Util.getDigestOf(cloud.name + mirror.getHostPath()).substring(0, 10);
+        Map<String, String> labels = ImmutableMap.of(CLOUD_LABEL, getCloudLabel(cloud), SET_LABEL, name);
+        String script = getFetchScript(mirror.getRepositoryList(), interval);
+        String probe = getProbeScript(interval);
+        String hash = Util.getDigestOf(script + "|" + probe + "|" + mirror.getImage() + "|" + mirror.getHostPath() + "|"
+                + affinity);
+
+        return new DaemonSetBuilder() //
+                .withNewMetadata() //
+                .withName(name) //
+                .withLabels(labels) //
+                .withAnnotations(ImmutableMap.of(HASH_ANNOTATION, hash, CLOUD_ANNOTATION, cloud.name,
+                        INTERVAL_ANNOTATION, String.valueOf(interval))) //
+                .endMetadata() //
+                .withNewSpec() //
+                .withNewSelector() //
+                .withMatchLabels(labels) //
+                .endSelector() //
+                .withNewTemplate() //
+                .withNewMetadata() //
+                .withLabels(labels) //
+                .endMetadata() //
+                .withNewSpec() //
+                .addNewContainer() //
+                .withName(CONTAINER_NAME) //
+                .withImage(mirror.getImage()) //
+                .withImagePullPolicy("IfNotPresent") //
+                .withCommand(Arrays.asList("sh", "-c", script)) //
+                .withNewReadinessProbe() //
+                .withNewExec() //
+                .withCommand(Arrays.asList("sh", "-c", probe)) //
+                .endExec() //
+                .withPeriodSeconds(30) //
+                .endReadinessProbe() //
+                .addNewVolumeMount() //
+                .withName("mirror") //
+                .withMountPath(MIRROR_PATH) //
+                .endVolumeMount() //
+                .withNewResources() //
+                .withRequests(REQUESTS) //
+                .withLimits(LIMITS) //
+                .endResources() //
+                .endContainer() //
+                .addNewVolume() //
+                .withName("mirror") //
+                .withNewHostPath(mirror.getHostPath()) //
+                .endVolume() //
+                .withAffinity(affinity) //
+                .withTerminationGracePeriodSeconds(1L) //
+                .endSpec() //
+                .endTemplate() //
+                .endSpec() //
+                .build();
+    }
+
+    /**
+     * @return a shell loop keeping a bare repository with a remote per repository, writing the time of each successful
+     *         fetch to the status file
+     */
+    @Nonnull
+    static String getFetchScript(@Nonnull List<String> repositories, int interval) {
+        StringBuilder script = new StringBuilder();
+        script.append("cd ").append(MIRROR_PATH).append(" && { [ -f HEAD ] || git init --bare -q . ; } || exit 1\n");
+        // the repositories cloned with the mirror as reference use its objects without having them
+        script.append("git config gc.auto 0 && git config gc.pruneExpire never || exit 1\n");
+        int i = 0;
+        for (String url : repositories) {
+            String remote = "mirror-" + i++;
+            String quoted = "'" + url.replace("'", "'\\''") + "'";
+            script.append("git remote add ").append(remote).append(' ').append(quoted).append(" 2>/dev/null")
+                    .append(" || git remote set-url ").append(remote).append(' ').append(quoted).append('\n');
+        }
+        script.append("while true; do\n");
+        script.append("  if git fetch -q --all --prune; then date +%s > ").append(STATUS_FILE)
+                .append("; else echo fetch failed; fi\n");
+        script.append("  sleep ").append(TimeUnit.MINUTES.toSeconds(interval)).append('\n');
+        script.append("done\n");
+        return script.toString();
+    }
+
+    /**
+     * @return a shell command that succeeds if the mirror was fetched in the last two intervals
+     */
+    @Nonnull
+    static String getProbeScript(int interval) {
+        return "[ $(( $(date +%s) - $(cat " + STATUS_FILE + " 2>/dev/null || echo 0) )) -lt "
+                + TimeUnit.MINUTES.toSeconds(2L * interval) + " ]";
+    }
+
+    private static int getInterval(DaemonSet daemonSet) {
+        Map<String, String> annotations = daemonSet.getMetadata().getAnnotations();
+        return Integer.parseInt(annotations.get(INTERVAL_ANNOTATION));
+    }
+
+    private static String getHash(DaemonSet daemonSet) {
+        Map<String, String> annotations = daemonSet.getMetadata().getAnnotations();
+        return annotations == null ? "" : Strings.nullToEmpty(annotations.get(HASH_ANNOTATION));
+    }
+
+    /**
+     * Cloud names can contain characters not allowed in label values, so use a hash.
+     */
+    private static String getCloudLabel(KubernetesCloud cloud) {
+        return Util.getDigestOf(cloud.name).substring(0, 16);
+    }
+
+    private static String getNamespace(KubernetesCloud cloud, KubernetesClient client) {
+        return Strings.isNullOrEmpty(cloud.getNamespace()) ? client.getNamespace() : cloud.getNamespace();
+    }
+
+    /**
+     * @return how stale the git mirror of each node is, empty if the cloud has no mirror volumes
+     */
+    @Nonnull
+    static Map<String, String> getStaleness(@Nonnull String cloudName) {
+        Map<String, String> staleness = STALENESS.get(cloudName);
+        return staleness == null ? Collections.emptyMap() : staleness;
+    }
+}
@@ -0,0 +1,166 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import io.fabric8.kubernetes.api.model.Affinity;
+import io.fabric8.kubernetes.api.model.AffinityBuilder;
+import io.fabric8.kubernetes.api.model.PreferredSchedulingTerm;
+import io.fabric8.kubernetes.api.model.PreferredSchedulingTermBuilder;
+
+/**
+ * Prefers scheduling pods on the nodes that already have their images, using the images reported by the nodes in
+ * their status, and keeps track of how often the images of a template were already present on the node its pods
+ * ran on.
+ *
+ * @since 0.13
+ */
+public class ImageLocality {
+
+    /** Label set by the kubelet on every node */
+    static final String HOSTNAME_LABEL = "kubernetes.io/hostname";
+
+    /** The scheduler accepts weights from 1 to 100 */
+    private static final int MAX_WEIGHT = 100;
+
+    /** Number of nodes to add to the affinity, the ones with most bytes of the images present */
+    private static final int MAX_NODES = Integer.getInteger(ImageLocality.class.getName() + ".maxNodes", 10);
+
+    private static final String DEFAULT_REGISTRY = "docker.io";
+
+    /** Image cache hits by cloud name and template name */
+    private static final ConcurrentMap<String, HitRatio> HIT_RATIOS = new ConcurrentHashMap<>();
+
+    private ImageLocality() {
+    }
+
+    /**
+     * Normalizes an image name so the names used in templates can be compared with the ones reported by nodes, ie.
+     * <code>maven</code> and <code>docker.io/library/maven:latest</code> are the same image.
+     */
+    @Nonnull
+    public static String normalize(@Nonnull String image) {
+        String name = image.trim();
+        String digest = "";
+        int at = name.indexOf('@');
+        if (at >= 0) {
+            digest = name.substring(at);
+            name = name.substring(0, at);
+        }
+        int slash = name.indexOf('/');
+        String first = slash < 0 ? "" : name.substring(0, slash);
+        if (slash < 0 || !(first.contains(".") || first.contains(":") || first.equals("localhost"))) {
+            name = (slash < 0 ? DEFAULT_REGISTRY + "/library/" : DEFAULT_REGISTRY + "/") + name;
+        }
+        if (digest.isEmpty() && name.lastIndexOf(':') <= name.lastIndexOf('/')) {
+            name = name + ":latest";
+        }
+        return name + digest;
+    }
+
+    /**
+     * Builds a preferred node affinity towards the nodes with most bytes of the pod images already pulled.
+     *
+     * @param bytesByNode bytes of the pod images present by node name, as returned by
+     *                    {@link ClusterCapacity#getImageBytesByNode(Collection, Map)}
+     * @return the affinity, null if no node has any of the images
+     */
+    @CheckForNull
+    public static Affinity getAffinity(@Nonnull Map<String, Long> bytesByNode) {
+        Map<String, Integer> weights = getWeights(bytesByNode);
+        if (weights.isEmpty()) {
+            return null;
+        }
+        List<PreferredSchedulingTerm> terms = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            terms.add(new PreferredSchedulingTermBuilder() //
+                    .withWeight(entry.getValue()) //
+                    .withNewPreference() //
+                    .addNewMatchExpression() //
+                    .withKey(HOSTNAME_LABEL) //
+                    .withOperator("In") //
+                    .withValues(entry.getKey()) //
+                    .endMatchExpression() //
+                    .endPreference() //
+                    .build());
+        }
+        return new AffinityBuilder() //
+                .withNewNodeAffinity() //
+                .withPreferredDuringSchedulingIgnoredDuringExecution(terms) //
+                .endNodeAffinity() //
+                .build();
+    }
+
+    /**
+     * @return the weight of the nodes with most bytes present, proportional to those bytes, by node name
+     */
+    @Nonnull
+    static Map<String, Integer> getWeights(@Nonnull Map<String, Long> bytesByNode) {
+        List<Map.Entry<String, Long>> nodes = bytesByNode.entrySet().stream() //
+                .filter(e -> e.getValue() > 0) //
+                .sorted(Map.Entry.<String, Long> comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey())) //
+                .limit(MAX_NODES) //
+                .collect(Collectors.toList());
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        if (nodes.isEmpty()) {
+            return weights;
+        }
+        long max = nodes.get(0).getValue();
+        for (Map.Entry<String, Long> node : nodes) {
+            weights.put(node.getKey(), (int) Math.max(1, node.getValue() * MAX_WEIGHT / max));
+        }
+        return weights;
+    }
+
+    /**
+     * Records how many of the images of a pod were already present on the node it was scheduled on.
+     */
+    static void record(@Nonnull String cloudName, @Nonnull String templateName, int present, int total) {
+        HIT_RATIOS.computeIfAbsent(cloudName + "/" + templateName, k -> new HitRatio()).add(present, total);
+    }
+
+    /**
+     * @return the image cache hit ratio of the templates of a cloud, as text by template name
+     */
+    @Nonnull
+    static Map<String, String> getHitRatios(@Nonnull String cloudName) {
+        Map<String, String> ratios = new TreeMap<>();
+        String prefix = cloudName + "/";
+        for (Map.Entry<String, HitRatio> entry : HIT_RATIOS.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                ratios.put(entry.getKey().substring(prefix.length()), entry.getValue().toString());
+            }
+        }
+        return ratios;
+    }
+
+    private static class HitRatio {
+        private long present;
+        private long total;
+        private long pods;
+
+        synchronized void add(int present, int total) {
+            this.present += present;
+            this.total += total;
+            this.pods++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d%% of %d images already present in %d pods",
+                    total == 0 ? 0 : present * 100 / total, total, pods);
+        }
+    }
+}
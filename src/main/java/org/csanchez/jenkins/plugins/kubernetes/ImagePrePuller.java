@@ -0,0 +1,314 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.PodTemplateUtils.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ContainerBuilder;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.LocalObjectReference;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSet;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSetBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps a <code>DaemonSet</code> per cloud, namespace and node selector that pulls the images of the pod templates marked with
+ * {@link PodTemplate#isPrePull()}, and the default jnlp image, on every eligible node, so new nodes are warm before
+ * builds land on them.
+ * <p>
+ * Each image runs in a container that just sleeps, so an image that can not run the command does not prevent the
+ * others from being pulled. The <code>DaemonSet</code> objects are reconciled periodically with the templates using
+ * a hash of their contents.
+ *
+ * @since 0.13
+ */
+@Extension
+public class ImagePrePuller extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(ImagePrePuller.class.getName());
+
+    /** Label with a hash of the cloud name, to find the objects managed for a cloud */
+    static final String CLOUD_LABEL = "jenkins/image-prepull";
+    /** Label with the name of the daemon set, to select its pods */
+    private static final String SET_LABEL = "jenkins/image-prepull-set";
+    private static final String HASH_ANNOTATION = "jenkins/image-prepull-hash";
+    private static final String CLOUD_ANNOTATION = "jenkins/cloud";
+
+    private static final String NAME_PREFIX = "jenkins-prepull-";
+
+    private static final List<String> SLEEP_COMMAND = Collections.unmodifiableList(
+            Arrays.asList("sh", "-c", "while true; do sleep 3600; done"));
+
+    private static final Map<String, Quantity> REQUESTS = ImmutableMap.of("cpu", new Quantity("1m"), "memory",
+            new Quantity("8Mi"));
+    private static final Map<String, Quantity> LIMITS = ImmutableMap.of("cpu", new Quantity("10m"), "memory",
+            new Quantity("32Mi"));
+
+    /** Pull progress by cloud name, then by node name */
+    private static final ConcurrentMap<String, Map<String, String>> PROGRESS = new ConcurrentHashMap<>();
+
+    /** Clouds already checked for leftover daemon sets since startup */
+    private final Set<String> checked = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /** Namespaces with daemon sets by cloud name, to delete them once no template needs them */
+    private final ConcurrentMap<String, Set<String>> namespaces = new ConcurrentHashMap<>();
+
+    public ImagePrePuller() {
+        super("Kubernetes image pre-pull");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        Set<String> cloudNames = new HashSet<>();
+        for (Cloud cloud : jenkins.clouds) {
+            if (!(cloud instanceof KubernetesCloud)) {
+                continue;
+            }
+            KubernetesCloud kubernetesCloud = (KubernetesCloud) cloud;
+            cloudNames.add(kubernetesCloud.name);
+            try {
+                reconcile(kubernetesCloud);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to reconcile image pre-pull daemon sets of cloud {0}: {1}",
+                        new Object[] { kubernetesCloud.name, e.getMessage() });
+            }
+        }
+        PROGRESS.keySet().retainAll(cloudNames);
+        namespaces.keySet().retainAll(cloudNames);
+    }
+
+    private void reconcile(KubernetesCloud cloud) throws Exception {
+        boolean prePull = cloud.getTemplates().stream().anyMatch(PodTemplate::isPrePull);
+        if (!prePull && checked.contains(cloud.name) && !PROGRESS.containsKey(cloud.name)) {
+            // nothing to pre-pull and nothing left over
+            return;
+        }
+        KubernetesClient client = cloud.connect();
+        String cloudNamespace = getNamespace(cloud, client);
+        Map<String, Map<String, DaemonSet>> desired = getDesiredDaemonSets(cloud, cloudNamespace);
+        String cloudLabel = getCloudLabel(cloud);
+
+        // also the namespaces of templates removed or moved since the last time, to delete their daemon sets
+        Set<String> namespaces = new TreeSet<>(desired.keySet());
+        namespaces.add(cloudNamespace);
+        namespaces.addAll(this.namespaces.getOrDefault(cloud.name, Collections.emptySet()));
+        for (String namespace : namespaces) {
+            reconcile(cloud, client, namespace, desired.getOrDefault(namespace, new TreeMap<>()));
+        }
+        this.namespaces.put(cloud.name, new TreeSet<>(desired.keySet()));
+        checked.add(cloud.name);
+
+        Map<String, String> progress = new TreeMap<>();
+        for (String namespace : namespaces) {
+            for (Pod pod : client.pods().inNamespace(namespace).withLabel(CLOUD_LABEL, cloudLabel).list()
+                    .getItems()) {
+                if (pod.getSpec() == null || pod.getSpec().getNodeName() == null) {
+                    continue;
+                }
+                int total = pod.getSpec().getContainers().size();
+                int pulled = 0;
+                if (pod.getStatus() != null && pod.getStatus().getContainerStatuses() != null) {
+                    for (ContainerStatus status : pod.getStatus().getContainerStatuses()) {
+                        if (StringUtils.isNotBlank(status.getImageID())) {
+                            pulled++;
+                        }
+                    }
+                }
+                progress.merge(pod.getSpec().getNodeName(), String.format("%d of %d images pulled", pulled, total),
+                        (a, b) -> a + ", " + b);
+            }
+        }
+        if (progress.isEmpty() && desired.isEmpty()) {
+            PROGRESS.remove(cloud.name);
+        } else {
+            PROGRESS.put(cloud.name, progress);
+        }
+    }
+
+    private void reconcile(KubernetesCloud cloud, KubernetesClient client, String namespace,
+            Map<String, DaemonSet> desired) {
+        for (DaemonSet existing : client.extensions().daemonSets().inNamespace(namespace)
+                .withLabel(CLOUD_LABEL, getCloudLabel(cloud)).list().getItems()) {
+            String name = existing.getMetadata().getName();
+            DaemonSet wanted = desired.remove(name);
+            if (wanted == null) {
+                LOGGER.log(Level.INFO, "Deleting image pre-pull daemon set {0} of cloud {1} in namespace {2}",
+                        new Object[] { name, cloud.name, namespace });
+                client.extensions().daemonSets().inNamespace(namespace).withName(name).delete();
+            } else if (!getHash(wanted).equals(getHash(existing))) {
+                LOGGER.log(Level.INFO, "Updating image pre-pull daemon set {0} of cloud {1} in namespace {2}",
+                        new Object[] { name, cloud.name, namespace });
+                client.extensions().daemonSets().inNamespace(namespace).withName(name).replace(wanted);
+            }
+        }
+        for (DaemonSet missing : desired.values()) {
+            LOGGER.log(Level.INFO, "Creating image pre-pull daemon set {0} of cloud {1} in namespace {2}",
+                    new Object[] { missing.getMetadata().getName(), cloud.name, namespace });
+            client.extensions().daemonSets().inNamespace(namespace).create(missing);
+        }
+    }
+
+    /**
+     * The pull secrets of a template are only visible from its own namespace, so the templates are grouped by
+     * namespace first.
+     *
+     * @param cloudNamespace namespace of the templates that do not set one
+     * @return the daemon sets needed by the pre-pull templates of the cloud, one per namespace and node selector, by
+     *         namespace then by name
+     */
+    @Nonnull
+    Map<String, Map<String, DaemonSet>> getDesiredDaemonSets(@Nonnull KubernetesCloud cloud,
+            @Nonnull String cloudNamespace) {
+        // images and pull secrets by namespace and node selector
+        Map<String, Set<String>> images = new TreeMap<>();
+        Map<String, Set<String>> secrets = new TreeMap<>();
+        Map<String, Map<String, String>> selectors = new TreeMap<>();
+        Map<String, String> namespaces = new TreeMap<>();
+        for (PodTemplate template : cloud.getTemplates()) {
+            if (!template.isPrePull()) {
+                continue;
+            }
+            PodTemplate unwrapped = unwrap(template, cloud.getDefaultsProviderTemplate(), cloud.getTemplates());
+            String namespace = Strings.isNullOrEmpty(unwrapped.getNamespace()) ? cloudNamespace
+                    : unwrapped.getNamespace();
+            Map<String, String> selector = new TreeMap<>(getNodeSelectorMap(unwrapped.getNodeSelector()));
+            String key = namespace + "/" + selector;
+            selectors.put(key, selector);
+            namespaces.put(key, namespace);
+            Set<String> templateImages = images.computeIfAbsent(key, k -> new LinkedHashSet<>());
+            templateImages.add(ProvisioningCallback.DEFAULT_JNLP_IMAGE);
+            for (ContainerTemplate container : unwrapped.getContainers()) {
+                if (!Strings.isNullOrEmpty(container.getImage())) {
+                    templateImages.add(substituteEnv(container.getImage()));
+                }
+            }
+            Set<String> templateSecrets = secrets.computeIfAbsent(key, k -> new LinkedHashSet<>());
+            for (PodImagePullSecret secret : unwrapped.getImagePullSecrets()) {
+                templateSecrets.add(secret.getName());
+            }
+        }
+        Map<String, Map<String, DaemonSet>> daemonSets = new TreeMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : selectors.entrySet()) {
+            DaemonSet daemonSet = buildDaemonSet(cloud, entry.getValue(), images.get(entry.getKey()),
+                    secrets.get(entry.getKey()));
+            daemonSets.computeIfAbsent(namespaces.get(entry.getKey()), k -> new TreeMap<>())
+                    .put(daemonSet.getMetadata().getName(), daemonSet);
+        }
+        return daemonSets;
+    }
+
+    private DaemonSet buildDaemonSet(KubernetesCloud cloud, Map<String, String> nodeSelector, Set<String> images,
+            Set<String> secrets) {
+        String name = NAME_PREFIX + Util.getDigestOf(cloud.name + nodeSelector).substring(0, 10);
+        Map<String, String> labels = ImmutableMap.of(CLOUD_LABEL, getCloudLabel(cloud), SET_LABEL, name);
+
+        List<Container> containers = new ArrayList<>();
+        int i = 0;
+        for (String image : images) {
+            containers.add(new ContainerBuilder() //
+                    .withName("image-" + i++) //
+                    .withImage(image) //
+                    .withImagePullPolicy("IfNotPresent") //
+                    .withCommand(SLEEP_COMMAND) //
+                    .withNewResources() //
+                    .withRequests(REQUESTS) //
+                    .withLimits(LIMITS) //
+                    .endResources() //
+                    .build());
+        }
+        List<LocalObjectReference> pullSecrets = new ArrayList<>();
+        for (String secret : secrets) {
+            pullSecrets.add(new LocalObjectReference(secret));
+        }
+        String hash = Util.getDigestOf(images + "|" + secrets + "|" + nodeSelector);
+
+        return new DaemonSetBuilder() //
+                .withNewMetadata() //
+                .withName(name) //
+                .withLabels(labels) //
+                .withAnnotations(ImmutableMap.of(HASH_ANNOTATION, hash, CLOUD_ANNOTATION, cloud.name)) //
+                .endMetadata() //
+                .withNewSpec() //
+                .withNewSelector() //
+                .withMatchLabels(labels) //
+                .endSelector() //
+                .withNewTemplate() //
+                .withNewMetadata() //
+                .withLabels(labels) //
+                .endMetadata() //
+                .withNewSpec() //
+                .withContainers(containers) //
+                .withImagePullSecrets(pullSecrets) //
+                .withNodeSelector(nodeSelector) //
+                .withTerminationGracePeriodSeconds(1L) //
+                .endSpec() //
+                .endTemplate() //
+                .endSpec() //
+                .build();
+    }
+
+    private static String getHash(DaemonSet daemonSet) {
+        Map<String, String> annotations = daemonSet.getMetadata().getAnnotations();
+        return annotations == null ? "" : Strings.nullToEmpty(annotations.get(HASH_ANNOTATION));
+    }
+
+    /**
+     * Cloud names can contain characters not allowed in label values, so use a hash.
+     */
+    private static String getCloudLabel(KubernetesCloud cloud) {
+        return Util.getDigestOf(cloud.name).substring(0, 16);
+    }
+
+    private static String getNamespace(KubernetesCloud cloud, KubernetesClient client) {
+        return Strings.isNullOrEmpty(cloud.getNamespace()) ? client.getNamespace() : cloud.getNamespace();
+    }
+
+    /**
+     * @return the image pull progress of each node, empty if the cloud has no pre-pull templates
+     */
+    @Nonnull
+    static Map<String, String> getProgress(@Nonnull String cloudName) {
+        Map<String, String> progress = PROGRESS.get(cloudName);
+        return progress == null ? Collections.emptyMap() : progress;
+    }
+}
@@ -0,0 +1,252 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+/**
+ * Enforces the container cap of a cloud and the instance caps of its templates without holding a lock while talking
+ * to the API server, so concurrent provisioning of different labels does not wait on each other.
+ * <p>
+ * The agent pods of a namespace are counted from a snapshot shared by the provisioning calls for a few seconds, plus
+ * the pods reserved but not created yet, plus the pods created since the snapshot was listed. A created pod stays
+ * counted locally until a listing started after its creation replaces the snapshot, so every pod is counted at least
+ * once without listing again on every creation.
+ *
+ * @since 0.13
+ */
+public class InstanceCaps {
+
+    private static final Logger LOGGER = Logger.getLogger(InstanceCaps.class.getName());
+
+    /** Time a snapshot of the agent pods is used */
+    private static final long SNAPSHOT_TTL = TimeUnit.SECONDS.toMillis(10);
+
+    /** Caps by cloud name */
+    private static final ConcurrentMap<String, InstanceCaps> CAPS = new ConcurrentHashMap<>();
+
+    /** Counts of the agent pods by namespace */
+    private final ConcurrentMap<String, NamespaceState> namespaces = new ConcurrentHashMap<>();
+
+    InstanceCaps() {
+    }
+
+    @Nonnull
+    public static InstanceCaps get(@Nonnull String cloudName) {
+        return CAPS.computeIfAbsent(cloudName, k -> new InstanceCaps());
+    }
+
+    /**
+     * Reserves room for up to count pods of a template.
+     *
+     * @param client client of the cloud, used to list the pods if the snapshot is too old
+     * @param templateLabels labels of the pods of the template
+     * @param containerCap maximum number of agent pods in the namespace, 0 for no caps at all
+     * @return the reservation, for as many pods as the caps admit
+     */
+    @Nonnull
+    public Reservation reserve(@Nonnull KubernetesClient client, @Nonnull String namespace,
+            @Nonnull PodTemplate template, @Nonnull Map<String, String> templateLabels, int containerCap, int count) {
+        return reserve(() -> listPods(client, namespace), namespace, template, templateLabels, containerCap, count);
+    }
+
+    /**
+     * Reserves room for up to count pods of a template.
+     *
+     * @param lister lists the labels of the agent pods of the namespace if the snapshot is too old
+     */
+    @Nonnull
+    Reservation reserve(@Nonnull Supplier<List<Map<String, String>>> lister, @Nonnull String namespace,
+            @Nonnull PodTemplate template, @Nonnull Map<String, String> templateLabels, int containerCap, int count) {
+        NamespaceState state = namespaces.computeIfAbsent(namespace, k -> new NamespaceState());
+        String key = template.getName();
+        if (containerCap == 0) {
+            synchronized (state) {
+                state.namespace.pending += count;
+                state.getTemplate(key).pending += count;
+            }
+            return new Reservation(state, key, count);
+        }
+        Snapshot snapshot = null;
+        synchronized (state) {
+            if (state.snapshot == null || System.currentTimeMillis() - state.snapshot.timestamp >= SNAPSHOT_TTL) {
+                // pods created from now on may be missing from the listing, so they stay counted locally
+                snapshot = state.startListing();
+            }
+        }
+        if (snapshot != null) {
+            // listed without the lock, so that the provisioning of other templates does not wait for the API server
+            snapshot.pods = lister.get();
+            synchronized (state) {
+                state.install(snapshot);
+            }
+        }
+        synchronized (state) {
+            List<Map<String, String>> pods = state.snapshot.pods;
+            Counter namespaceCount = state.namespace;
+            Counter templateCount = state.getTemplate(key);
+            int running = pods.size() + state.getCreatedSinceSnapshot(null, namespaceCount);
+            int named = (int) pods.stream()
+                    .filter(labels -> labels.entrySet().containsAll(templateLabels.entrySet())).count()
+                    + state.getCreatedSinceSnapshot(key, templateCount);
+            int reserved = 0;
+            while (reserved < count) {
+                if (running + namespaceCount.pending >= containerCap) {
+                    LOGGER.log(Level.INFO,
+                            "Total container cap of {0} reached, not provisioning: {1} running or errored and {2} pending in namespace {3}",
+                            new Object[] { containerCap, running, namespaceCount.pending, namespace });
+                    break;
+                }
+                if (named + templateCount.pending >= template.getInstanceCap()) {
+                    LOGGER.log(Level.INFO,
+                            "Template instance cap of {0} reached for template {1}, not provisioning: {2} running or errored and {3} pending in namespace {4}",
+                            new Object[] { template.getInstanceCap(), template.getName(), named,
+                                    templateCount.pending, namespace });
+                    break;
+                }
+                namespaceCount.pending++;
+                templateCount.pending++;
+                reserved++;
+            }
+            return new Reservation(state, key, reserved);
+        }
+    }
+
+    private static List<Map<String, String>> listPods(KubernetesClient client, String namespace) {
+        List<Pod> items = client.pods().inNamespace(namespace).withLabels(KubernetesCloud.DEFAULT_POD_LABELS).list()
+                .getItems();
+        return items.stream()
+                .map(pod -> pod.getMetadata().getLabels() == null ? ImmutableMap.<String, String> of()
+                        : pod.getMetadata().getLabels())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Pods of the namespace or of a template, guarded by the lock of the namespace.
+     */
+    private static class Counter {
+        /** Reserved and not created nor released yet */
+        int pending;
+        /** Created since the counter exists, only ever incremented */
+        int created;
+    }
+
+    /**
+     * Counts of a namespace, guarded by its own lock.
+     */
+    private static class NamespaceState {
+        final Counter namespace = new Counter();
+        final Map<String, Counter> templates = new HashMap<>();
+        Snapshot snapshot;
+        long listings;
+
+        Counter getTemplate(String key) {
+            return templates.computeIfAbsent(key, k -> new Counter());
+        }
+
+        /**
+         * Starts a listing, remembering how many pods were created before it started, which it counts.
+         */
+        Snapshot startListing() {
+            Map<String, Integer> created = new HashMap<>();
+            for (Map.Entry<String, Counter> entry : templates.entrySet()) {
+                created.put(entry.getKey(), entry.getValue().created);
+            }
+            return new Snapshot(++listings, System.currentTimeMillis(), namespace.created, created);
+        }
+
+        void install(Snapshot listed) {
+            // listings may end out of order, keep the one started last
+            if (snapshot == null || snapshot.listing < listed.listing) {
+                snapshot = listed;
+            }
+        }
+
+        /**
+         * @return the pods created since the current snapshot started listing, which it may miss
+         */
+        int getCreatedSinceSnapshot(String key, Counter counter) {
+            int baseline = key == null ? snapshot.namespaceCreated : snapshot.templateCreated.getOrDefault(key, 0);
+            return counter.created - baseline;
+        }
+    }
+
+    private static class Snapshot {
+        final long listing;
+        final long timestamp;
+        final int namespaceCreated;
+        final Map<String, Integer> templateCreated;
+        List<Map<String, String>> pods;
+
+        Snapshot(long listing, long timestamp, int namespaceCreated, Map<String, Integer> templateCreated) {
+            this.listing = listing;
+            this.timestamp = timestamp;
+            this.namespaceCreated = namespaceCreated;
+            this.templateCreated = templateCreated;
+        }
+    }
+
+    /**
+     * Room reserved for pods not created yet.
+     */
+    public class Reservation {
+        private final NamespaceState state;
+        private final String template;
+        private final AtomicInteger remaining;
+
+        private Reservation(NamespaceState state, String template, int count) {
+            this.state = state;
+            this.template = template;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        /**
+         * @return the number of pods reserved and not released yet
+         */
+        public int getCount() {
+            return remaining.get();
+        }
+
+        /**
+         * Turns the room of one pod into a created pod, counted locally until the next listing of the namespace.
+         */
+        public void created() {
+            if (remaining.getAndUpdate(r -> r > 0 ? r - 1 : 0) > 0) {
+                synchronized (state) {
+                    state.namespace.pending--;
+                    state.namespace.created++;
+                    Counter counter = state.getTemplate(template);
+                    counter.pending--;
+                    counter.created++;
+                }
+            }
+        }
+
+        /**
+         * Releases the room of one pod that could not be created.
+         */
+        public void release() {
+            if (remaining.getAndUpdate(r -> r > 0 ? r - 1 : 0) > 0) {
+                synchronized (state) {
+                    state.namespace.pending--;
+                    state.getTemplate(template).pending--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.PersistentVolumeClaimPool.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.csanchez.jenkins.plugins.kubernetes.volumes.workspace.JobPersistentVolumeClaimWorkspaceVolume;
+
+import com.google.common.collect.ImmutableMap;
+
+import hudson.Util;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+/**
+ * Leases the workspace claims of the jobs using a {@link JobPersistentVolumeClaimWorkspaceVolume} to agent pods, and
+ * deletes the claims of the jobs built the least recently to stay within the number of claims and storage budget.
+ * <p>
+ * Claims are leased the same way as the {@link PersistentVolumeClaimPool} ones, and released with them. A released
+ * claim is only leased again once the pod of the terminated agent is gone, as a ReadWriteOnce claim can not be
+ * attached to another node before.
+ *
+ * @since 0.13
+ */
+class JobWorkspaceClaims {
+
+    private static final Logger LOGGER = Logger.getLogger(JobWorkspaceClaims.class.getName());
+
+    /** Label with the hash of the job of a workspace claim */
+    static final String JOB_LABEL = "jenkins/workspace-job";
+
+    /** Annotation with the full name of the job of a workspace claim */
+    static final String JOB_NAME_ANNOTATION = "jenkins/workspace-job-name";
+
+    /** Locks by namespace, as the claims of all the jobs share the budget */
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private JobWorkspaceClaims() {
+    }
+
+    @Nonnull
+    static String getClaimName(@Nonnull String jobName) {
+        return "jenkins-workspace-" + getJobId(jobName);
+    }
+
+    private static String getJobId(String jobName) {
+        return Util.getDigestOf(jobName).substring(0, 16);
+    }
+
+    /**
+     * Leases the workspace claim of the job to an agent, creating it if needed.
+     *
+     * @return the name of the leased claim, or null if it is used by another build or there is no room for it
+     */
+    @CheckForNull
+    static String lease(@Nonnull KubernetesClient client, @Nonnull String namespace,
+            @Nonnull JobPersistentVolumeClaimWorkspaceVolume volume, @Nonnull String jobName,
+            @Nonnull String agentName) {
+        String problem = volume.getProblem();
+        if (problem != null) {
+            LOGGER.log(Level.WARNING, "Invalid workspace volume of job {0}, {1} gets an empty workspace: {2}",
+                    new Object[] { jobName, agentName, problem });
+            return null;
+        }
+        String name = getClaimName(jobName);
+        synchronized (LOCKS.computeIfAbsent(namespace, k -> new Object())) {
+            List<PersistentVolumeClaim> claims = client.persistentVolumeClaims().inNamespace(namespace)
+                    .withLabel(JOB_LABEL).list().getItems();
+            Set<String> mounted = getMountedClaims(client, namespace);
+            for (PersistentVolumeClaim claim : claims) {
+                if (!name.equals(claim.getMetadata().getName())) {
+                    continue;
+                }
+                if (!isFree(claim)) {
+                    LOGGER.log(Level.INFO, "Workspace claim {0} of job {1} is used by {2}, {3} gets an empty workspace",
+                            new Object[] { name, jobName, claim.getMetadata().getLabels().get(LEASE_LABEL),
+                                    agentName });
+                    return null;
+                }
+                if (mounted.contains(name)) {
+                    // released by a terminated agent whose pod is still being deleted
+                    LOGGER.log(Level.INFO,
+                            "Workspace claim {0} of job {1} is still mounted by a pod, {2} gets an empty workspace",
+                            new Object[] { name, jobName, agentName });
+                    return null;
+                }
+                client.persistentVolumeClaims().inNamespace(namespace).withName(name).edit()
+                        .editMetadata()
+                            .addToLabels(LEASE_LABEL, agentName)
+                            .addToAnnotations(LAST_LEASE_ANNOTATION, String.valueOf(System.currentTimeMillis()))
+                        .endMetadata()
+                        .done();
+                LOGGER.log(Level.FINE, "Leased workspace claim {0} of job {1} to {2}",
+                        new Object[] { name, jobName, agentName });
+                return name;
+            }
+
+            if (!makeRoom(client, namespace, volume, claims, mounted)) {
+                LOGGER.log(Level.INFO, "No room for the workspace claim of job {0}, {1} gets an empty workspace",
+                        new Object[] { jobName, agentName });
+                return null;
+            }
+            PersistentVolumeClaimBuilder builder = new PersistentVolumeClaimBuilder()
+                    .withNewMetadata()
+                        .withName(name)
+                        .addToLabels(JOB_LABEL, getJobId(jobName))
+                        .addToLabels(LEASE_LABEL, agentName)
+                        .addToAnnotations(JOB_NAME_ANNOTATION, jobName)
+                        .addToAnnotations(LAST_LEASE_ANNOTATION, String.valueOf(System.currentTimeMillis()))
+                    .endMetadata()
+                    .withNewSpec()
+                        .withAccessModes("ReadWriteOnce")
+                        .withNewResources()
+                            .withRequests(ImmutableMap.of("storage", new Quantity(volume.getStorageSize())))
+                        .endResources()
+                    .endSpec();
+            if (volume.getStorageClassName() != null) {
+                builder.editMetadata()
+                        .addToAnnotations("volume.beta.kubernetes.io/storage-class", volume.getStorageClassName())
+                        .endMetadata();
+            }
+            client.persistentVolumeClaims().inNamespace(namespace).create(builder.build());
+            LOGGER.log(Level.INFO, "Created workspace claim {0} of job {1} for {2}",
+                    new Object[] { name, jobName, agentName });
+            return name;
+        }
+    }
+
+    /**
+     * Deletes the free claims of the jobs built the least recently until a new claim fits.
+     *
+     * @return whether there is room for a new claim
+     */
+    private static boolean makeRoom(KubernetesClient client, String namespace,
+            JobPersistentVolumeClaimWorkspaceVolume volume, List<PersistentVolumeClaim> claims, Set<String> mounted) {
+        List<PersistentVolumeClaim> free = new ArrayList<>();
+        for (PersistentVolumeClaim claim : claims) {
+            if (isFree(claim) && !mounted.contains(claim.getMetadata().getName())) {
+                free.add(claim);
+            }
+        }
+        free.sort(Comparator.comparingLong(PersistentVolumeClaimPool::getLastLease));
+        List<PersistentVolumeClaim> evictions = getEvictions(claims, free,
+                ResourceQuantities.parseMemory(volume.getStorageSize()), volume.getMaxClaims(),
+                volume.getStorageBudget() == null ? Long.MAX_VALUE
+                        : ResourceQuantities.parseMemory(volume.getStorageBudget()));
+        if (evictions == null) {
+            return false;
+        }
+        for (PersistentVolumeClaim evicted : evictions) {
+            Map<String, String> annotations = evicted.getMetadata().getAnnotations();
+            LOGGER.log(Level.INFO, "Deleting workspace claim {0} of job {1}, built the least recently",
+                    new Object[] { evicted.getMetadata().getName(),
+                            annotations == null ? null : annotations.get(JOB_NAME_ANNOTATION) });
+            client.persistentVolumeClaims().inNamespace(namespace).withName(evicted.getMetadata().getName()).delete();
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the free claims to delete for a new claim to fit.
+     *
+     * @param claims all the workspace claims of the namespace
+     * @param free the free claims, built the least recently first
+     * @param size the storage of the new claim
+     * @return the claims to delete, possibly none, or null if there is no room for a new claim even without any of
+     *         the free claims, in which case none should be deleted
+     */
+    @CheckForNull
+    static List<PersistentVolumeClaim> getEvictions(@Nonnull List<PersistentVolumeClaim> claims,
+            @Nonnull List<PersistentVolumeClaim> free, long size, int maxClaims, long budget) {
+        if (maxClaims < 1) {
+            return null;
+        }
+        long used = 0;
+        for (PersistentVolumeClaim claim : claims) {
+            used += getStorage(claim);
+        }
+        int count = claims.size();
+        List<PersistentVolumeClaim> evictions = new ArrayList<>();
+        for (PersistentVolumeClaim claim : free) {
+            if (count < maxClaims && used + size <= budget) {
+                break;
+            }
+            evictions.add(claim);
+            count--;
+            used -= getStorage(claim);
+        }
+        return count < maxClaims && used + size <= budget ? evictions : null;
+    }
+
+    private static long getStorage(PersistentVolumeClaim claim) {
+        if (claim.getSpec() == null || claim.getSpec().getResources() == null) {
+            return 0;
+        }
+        return ResourceQuantities.get(claim.getSpec().getResources().getRequests(), "storage");
+    }
+}
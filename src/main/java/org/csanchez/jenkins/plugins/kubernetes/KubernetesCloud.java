@@ -16,6 +16,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,8 +55,6 @@ import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
-import io.fabric8.kubernetes.api.model.Pod;
-import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import jenkins.model.Jenkins;
@@ -81,6 +80,8 @@ public class KubernetesCloud extends Cloud {
     /** Default timeout for idle workers that don't correctly indicate exit. */
     private static final int DEFAULT_RETENTION_TIMEOUT_MINUTES = 5;
 
+    static final double DEFAULT_IDLE_COST_FACTOR = 1.0;
+
     private String defaultsProviderTemplate;
 
     private List<PodTemplate> templates = new ArrayList<PodTemplate>();
@@ -104,6 +105,26 @@ public class KubernetesCloud extends Cloud {
     private transient KubernetesClient client;
     private int maxRequestsPerHost;
 
+    /** Whether to check the free capacity of the cluster before provisioning */
+    private boolean capacityAware;
+
+    /** Whether to check the namespace quotas and limit ranges before provisioning */
+    private boolean quotaAware;
+
+    /** Whether to prefer the nodes that already have the images of a pod */
+    private boolean imageLocality;
+
+    /** How many agents to provision ahead of the forecast demand at most, 0 to disable */
+    private int maxPredictedAgents;
+
+    /** Whether to keep idle agents based on the demand instead of fixed timeouts */
+    private boolean demandAwareRetention;
+    /** Cost of a minute of idle agent relative to a minute of build latency */
+    private double idleCostFactor = DEFAULT_IDLE_COST_FACTOR;
+
+    /** Why pods of a template can not be created, by template name, updated by {@link NamespaceQuota.Check} */
+    private transient volatile Map<String, String> templateProblems;
+
     @DataBoundConstructor
     public KubernetesCloud(String name) {
         super(name);
@@ -129,6 +150,12 @@ public class KubernetesCloud extends Cloud {
         this.containerCap = source.containerCap;
         this.retentionTimeout = source.retentionTimeout;
         this.connectTimeout = source.connectTimeout;
+        this.capacityAware = source.capacityAware;
+        this.quotaAware = source.quotaAware;
+        this.imageLocality = source.imageLocality;
+        this.maxPredictedAgents = source.maxPredictedAgents;
+        this.demandAwareRetention = source.demandAwareRetention;
+        this.idleCostFactor = source.idleCostFactor;
     }
 
     @Deprecated
@@ -292,6 +319,155 @@ public class KubernetesCloud extends Cloud {
         this.connectTimeout = connectTimeout;
     }
 
+    public boolean isCapacityAware() {
+        return capacityAware;
+    }
+
+    @DataBoundSetter
+    public void setCapacityAware(boolean capacityAware) {
+        this.capacityAware = capacityAware;
+    }
+
+    public boolean isQuotaAware() {
+        return quotaAware;
+    }
+
+    @DataBoundSetter
+    public void setQuotaAware(boolean quotaAware) {
+        this.quotaAware = quotaAware;
+    }
+
+    public boolean isImageLocality() {
+        return imageLocality;
+    }
+
+    @DataBoundSetter
+    public void setImageLocality(boolean imageLocality) {
+        this.imageLocality = imageLocality;
+    }
+
+    /**
+     * @return the image cache hit ratio of the pods created for each template, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getImageCacheHitRatios() {
+        return ImageLocality.getHitRatios(name);
+    }
+
+    public int getMaxPredictedAgents() {
+        return maxPredictedAgents;
+    }
+
+    @DataBoundSetter
+    public void setMaxPredictedAgents(int maxPredictedAgents) {
+        this.maxPredictedAgents = Math.max(maxPredictedAgents, 0);
+    }
+
+    /**
+     * @return the demand forecast of each template label and its accuracy, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getDemandForecasts() {
+        return PredictiveProvisioner.getForecasts(this);
+    }
+
+    public boolean isDemandAwareRetention() {
+        return demandAwareRetention;
+    }
+
+    @DataBoundSetter
+    public void setDemandAwareRetention(boolean demandAwareRetention) {
+        this.demandAwareRetention = demandAwareRetention;
+    }
+
+    public double getIdleCostFactor() {
+        return idleCostFactor;
+    }
+
+    @DataBoundSetter
+    public void setIdleCostFactor(double idleCostFactor) {
+        this.idleCostFactor = idleCostFactor > 0 ? idleCostFactor : DEFAULT_IDLE_COST_FACTOR;
+    }
+
+    /**
+     * @return how often the agents of each template are reused, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getTemplateUsages() {
+        return TemplateUsage.getUsages(name);
+    }
+
+    /**
+     * @return the image pre-pull progress of each node, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getImagePrePullProgress() {
+        return ImagePrePuller.getProgress(name);
+    }
+
+    /**
+     * @return how stale the git reference mirror of each node is, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getGitMirrorStaleness() {
+        return GitMirrorRefresher.getStaleness(name);
+    }
+
+    /**
+     * @return templates whose pods can not be admitted in their namespace and why, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getTemplateProblems() {
+        Map<String, String> problems = templateProblems;
+        return problems == null ? Collections.emptyMap() : problems;
+    }
+
+    /**
+     * Checks whether the pods of each template could be admitted in their namespace, logging the changes.
+     */
+    void checkTemplateProblems() {
+        Map<String, String> previous = getTemplateProblems();
+        Map<String, String> problems = new TreeMap<>();
+        if (quotaAware) {
+            for (PodTemplate t : templates) {
+                PodTemplate unwrapped = PodTemplateUtils.unwrap(t, defaultsProviderTemplate, templates);
+                NamespaceQuota quota = NamespaceQuota.get(this, getNamespace(unwrapped));
+                String problem = quota.getRejectionReason(quota.getPodResources(unwrapped));
+                if (problem != null) {
+                    problems.put(t.getName(), problem);
+                    if (!problem.equals(previous.get(t.getName()))) {
+                        LOGGER.log(Level.WARNING, "Not provisioning template {0}, its pods would be rejected: {1}",
+                                new Object[] { t.getName(), problem });
+                    }
+                } else if (previous.containsKey(t.getName())) {
+                    LOGGER.log(Level.INFO, "Pods of template {0} can be admitted again", t.getName());
+                }
+            }
+        }
+        templateProblems = Collections.unmodifiableMap(problems);
+    }
+
+    /**
+     * @return the renewals of the OpenShift token of this cloud, for the configuration page, null for other
+     *         credentials
+     */
+    @CheckForNull
+    public String getTokenRefreshStats() {
+        if (credentialsId == null
+                || !(CredentialsCache.getCredentials(credentialsId) instanceof OpenShiftBearerTokenCredentialImpl)) {
+            return null;
+        }
+        return OpenShiftBearerTokenCredentialImpl.getRefreshStats(serverUrl);
+    }
+
+    /**
+     * @return a summary of the cluster capacity as seen by this cloud, for the configuration page
+     */
+    public String getClusterCapacitySummary() {
+        ClusterCapacity capacity = ClusterCapacity.peek(name);
+        return capacity == null ? "Not synchronized with the cluster yet" : capacity.getSummary();
+    }
+
     /**
      * Connects to Kubernetes.
      *
@@ -328,7 +504,16 @@ public class KubernetesCloud extends Cloud {
     }
 
     @Override
-    public synchronized Collection<NodeProvisioner.PlannedNode> provision(@CheckForNull final Label label, final int excessWorkload) {
+    public Collection<NodeProvisioner.PlannedNode> provision(@CheckForNull final Label label, final int excessWorkload) {
+        return provision(label, excessWorkload, 0);
+    }
+
+    /**
+     * @param minIdleMinutes how long the agents are kept idle at least, as those provisioned ahead of the demand, 0
+     *            for the retention of their template
+     */
+    Collection<NodeProvisioner.PlannedNode> provision(@CheckForNull Label label, int excessWorkload,
+            int minIdleMinutes) {
         try {
 
             LOGGER.log(Level.INFO, "Excess workload after pending Spot instances: " + excessWorkload);
@@ -339,13 +524,17 @@ public class KubernetesCloud extends Cloud {
 
             for (PodTemplate t: templates) {
                 LOGGER.log(Level.INFO, "Template: " + t.getDisplayName());
-                for (int i = 1; i <= excessWorkload; i++) {
-                    if (!addProvisionedSlave(t, label)) {
-                        break;
-                    }
-
+                PodTemplate unwrapped = PodTemplateUtils.unwrap(t, defaultsProviderTemplate, this.templates);
+                NamespaceQuota quota = quotaAware ? NamespaceQuota.get(this, getNamespace(unwrapped)) : null;
+                int limit = getProvisioningLimit(unwrapped, quota, excessWorkload);
+                InstanceCaps.Reservation reservation = limit > 0 ? reserve(t, limit) : null;
+                int planned = reservation == null ? 0 : reservation.getCount();
+                for (int i = 0; i < planned; i++) {
                     r.add(new NodeProvisioner.PlannedNode(t.getDisplayName(), Computer.threadPoolForRemoting
-                                .submit(new ProvisioningCallback(this, t, label)), 1));
+                                .submit(new ProvisioningCallback(this, t, label, reservation, minIdleMinutes)), 1));
+                }
+                if (quota != null && planned > 0) {
+                    quota.reserve(quota.getPodResources(unwrapped), planned);
                 }
                 if (r.size() > 0) {
                     // Already found a matching template
@@ -354,6 +543,9 @@ public class KubernetesCloud extends Cloud {
             }
             return r;
         } catch (KubernetesClientException e) {
+            if (CloudHealth.isClusterFailure(e)) {
+                CloudHealth.get(name).recordFailure();
+            }
             Throwable cause = e.getCause();
             if (cause instanceof SocketTimeoutException || cause instanceof ConnectException || cause instanceof UnknownHostException) {
                 LOGGER.log(Level.WARNING, "Failed to connect to Kubernetes at {0}: {1}",
@@ -363,22 +555,67 @@ public class KubernetesCloud extends Cloud {
                         cause != null ? cause : e);
             }
         } catch (ConnectException e) {
+            CloudHealth.get(name).recordFailure();
             LOGGER.log(Level.WARNING, "Failed to connect to Kubernetes at {0}", serverUrl);
         } catch (Exception e) {
+            if (CloudHealth.isClusterFailure(e)) {
+                CloudHealth.get(name).recordFailure();
+            }
             LOGGER.log(Level.WARNING, "Failed to count the # of live instances on Kubernetes", e);
         }
         return Collections.emptyList();
     }
 
+    private String getNamespace(@Nonnull PodTemplate template) {
+        return Strings.isNullOrEmpty(template.getNamespace()) ? namespace : template.getNamespace();
+    }
+
     /**
-     * Check not too many already running.
+     * Caps the number of pods to create for a template to what its namespace quotas admit and what the cluster can
+     * still schedule.
      *
+     * @param template the unwrapped template
+     * @param quota the quotas of the template namespace, null if not checking them
+     * @return the number of pods that can be provisioned, at most excessWorkload
      */
-    private boolean addProvisionedSlave(@Nonnull PodTemplate template, @CheckForNull Label label) throws Exception {
-        if (containerCap == 0) {
-            return true;
+    private int getProvisioningLimit(@Nonnull PodTemplate template, @CheckForNull NamespaceQuota quota,
+            int excessWorkload) {
+        int limit = excessWorkload;
+        if (quota != null) {
+            PodResources resources = quota.getPodResources(template);
+            String problem = quota.getRejectionReason(resources);
+            if (problem != null) {
+                LOGGER.log(Level.FINE, "Not provisioning template {0}, its pods would be rejected: {1}",
+                        new Object[] { template.getName(), problem });
+                return 0;
+            }
+            int slots = quota.getAvailableSlots(resources);
+            if (slots < limit) {
+                LOGGER.log(Level.INFO, "Quotas of namespace {0} admit {1} pods of template {2}, not provisioning {3} more",
+                        new Object[] { getNamespace(template), slots, template.getName(), limit - slots });
+                limit = slots;
+            }
+        }
+        if (!capacityAware) {
+            return limit;
+        }
+        if (limit <= 0) {
+            return 0;
         }
+        int slots = ClusterCapacity.get(this).getAvailableSlots(
+                PodTemplateUtils.getNodeSelectorMap(template.getNodeSelector()), PodResources.of(template));
+        if (slots < limit) {
+            LOGGER.log(Level.INFO, "Cluster has room for {0} pods of template {1}, not provisioning {2} more",
+                    new Object[] { slots, template.getName(), limit - slots });
+            return slots;
+        }
+        return limit;
+    }
 
+    /**
+     * Reserves room for pods of a template within the container cap and the template instance cap.
+     */
+    private InstanceCaps.Reservation reserve(@Nonnull PodTemplate template, int count) throws Exception {
         KubernetesClient client = connect();
         String templateNamespace = template.getNamespace();
         // If template's namespace is not defined, take the
@@ -386,34 +623,17 @@ public class KubernetesCloud extends Cloud {
         if (Strings.isNullOrEmpty(templateNamespace)) {
             templateNamespace = client.getNamespace();
         }
-
-        PodList slaveList = client.pods().inNamespace(templateNamespace).withLabels(DEFAULT_POD_LABELS).list();
-        List<Pod> slaveListItems = slaveList.getItems();
-
-        Map<String, String> labelsMap = getLabelsMap(template.getLabelSet());
-        PodList namedList = client.pods().inNamespace(templateNamespace).withLabels(labelsMap).list();
-        List<Pod> namedListItems = namedList.getItems();
-
-        if (slaveListItems != null && containerCap <= slaveListItems.size()) {
-            LOGGER.log(Level.INFO,
-                    "Total container cap of {0} reached, not provisioning: {1} running or errored in namespace {2}",
-                    new Object[] { containerCap, slaveListItems.size(), client.getNamespace() });
-            return false;
-        }
-
-        if (namedListItems != null && slaveListItems != null && template.getInstanceCap() <= namedListItems.size()) {
-            LOGGER.log(Level.INFO,
-                    "Template instance cap of {0} reached for template {1}, not provisioning: {2} running or errored in namespace {3} with label {4}",
-                    new Object[] { template.getInstanceCap(), template.getName(), slaveListItems.size(),
-                            client.getNamespace(), label == null ? "" : label.toString() });
-            return false; // maxed out
-        }
-        return true;
+        return InstanceCaps.get(name).reserve(client, templateNamespace, template,
+                getLabelsMap(template.getLabelSet()), containerCap, count);
     }
 
+    /**
+     * The members of a {@link KubernetesCloudGroup} decline, so Jenkins provisions them through the group and its
+     * failover applies.
+     */
     @Override
     public boolean canProvision(@CheckForNull Label label) {
-        return getTemplate(label) != null;
+        return getTemplate(label) != null && !KubernetesCloudGroup.isMember(name);
     }
 
     /**
@@ -540,6 +760,10 @@ public class KubernetesCloud extends Cloud {
         if (maxRequestsPerHost == 0) {
             maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
         }
+
+        if (idleCostFactor <= 0) {
+            idleCostFactor = DEFAULT_IDLE_COST_FACTOR;
+        }
         return this;
     }
 
@@ -0,0 +1,248 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import hudson.Extension;
+import hudson.model.Descriptor;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+
+/**
+ * Spreads the agents to provision across several {@link KubernetesCloud}s, usually one per cluster with the same
+ * templates, based on their free capacity, provisioning latency and error rate, and skips the clouds that failed
+ * repeatedly so new work fails over to the healthy ones.
+ * <p>
+ * The members decline to provision on their own, see {@link KubernetesCloud#canProvision(Label)}, so Jenkins only
+ * provisions them through the group.
+ *
+ * @since 0.13
+ */
+public class KubernetesCloudGroup extends Cloud {
+
+    private static final Logger LOGGER = Logger.getLogger(KubernetesCloudGroup.class.getName());
+
+    /** Names of the member clouds, separated by commas or spaces */
+    private final String cloudNames;
+
+    @DataBoundConstructor
+    public KubernetesCloudGroup(String name, String cloudNames) {
+        super(name);
+        this.cloudNames = cloudNames;
+    }
+
+    public String getCloudNames() {
+        return cloudNames;
+    }
+
+    @Nonnull
+    private List<String> getMemberNames() {
+        return StringUtils.isBlank(cloudNames) ? Collections.emptyList()
+                : Arrays.asList(cloudNames.trim().split("[\\s,]+"));
+    }
+
+    /**
+     * @return whether a cloud is a member of a group, and so only provisioned through it
+     */
+    static boolean isMember(@Nonnull String cloudName) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return false;
+        }
+        for (Cloud cloud : jenkins.clouds) {
+            if (cloud instanceof KubernetesCloudGroup
+                    && ((KubernetesCloudGroup) cloud).getMemberNames().contains(cloudName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the member clouds that exist
+     */
+    @Nonnull
+    public List<KubernetesCloud> getClouds() {
+        List<KubernetesCloud> clouds = new ArrayList<>();
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return clouds;
+        }
+        for (String cloudName : getMemberNames()) {
+            Cloud cloud = jenkins.getCloud(cloudName);
+            if (cloud instanceof KubernetesCloud) {
+                clouds.add((KubernetesCloud) cloud);
+            } else {
+                LOGGER.log(Level.FINE, "Ignoring member {0} of cloud group {1}, not a Kubernetes cloud",
+                        new Object[] { cloudName, name });
+            }
+        }
+        return clouds;
+    }
+
+    /**
+     * @return the health of each member cloud, for the configuration page
+     */
+    @Nonnull
+    public Map<String, String> getHealth() {
+        Map<String, String> health = new LinkedHashMap<>();
+        for (KubernetesCloud cloud : getClouds()) {
+            health.put(cloud.name, CloudHealth.get(cloud.name).toString());
+        }
+        return health;
+    }
+
+    @Override
+    public boolean canProvision(@CheckForNull Label label) {
+        for (KubernetesCloud cloud : getClouds()) {
+            if (CloudHealth.get(cloud.name).isHealthy() && cloud.getTemplate(label) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Collection<NodeProvisioner.PlannedNode> provision(@CheckForNull Label label, int excessWorkload) {
+        List<KubernetesCloud> candidates = new ArrayList<>();
+        for (KubernetesCloud cloud : getClouds()) {
+            if (cloud.getTemplate(label) == null) {
+                continue;
+            }
+            if (!CloudHealth.get(cloud.name).isHealthy()) {
+                LOGGER.log(Level.FINE, "Skipping unhealthy cloud {0} of group {1}", new Object[] { cloud.name, name });
+                continue;
+            }
+            candidates.add(cloud);
+        }
+        List<NodeProvisioner.PlannedNode> planned = new ArrayList<>();
+        int remaining = excessWorkload;
+        // clouds that provision less than asked for are not asked again in this round
+        while (remaining > 0 && !candidates.isEmpty()) {
+            Map<KubernetesCloud, Integer> slots = new LinkedHashMap<>();
+            for (KubernetesCloud cloud : candidates) {
+                slots.put(cloud, getAvailableSlots(cloud, label));
+            }
+            Map<KubernetesCloud, Integer> allocation = allocate(slots, cloud -> CloudHealth.get(cloud.name),
+                    remaining);
+            if (allocation.isEmpty()) {
+                break;
+            }
+            for (Map.Entry<KubernetesCloud, Integer> entry : allocation.entrySet()) {
+                KubernetesCloud cloud = entry.getKey();
+                Collection<NodeProvisioner.PlannedNode> nodes = cloud.provision(label, entry.getValue());
+                LOGGER.log(Level.FINE, "Cloud {0} of group {1} provisioned {2} of {3} agents",
+                        new Object[] { cloud.name, name, nodes.size(), entry.getValue() });
+                planned.addAll(nodes);
+                remaining -= nodes.size();
+                if (nodes.size() < entry.getValue()) {
+                    candidates.remove(cloud);
+                }
+            }
+        }
+        return planned;
+    }
+
+    /**
+     * Assigns the agents to provision one by one to the cloud with the best score, where the score is the estimated
+     * free slots of the cloud, discounted by its error rate and provisioning latency.
+     *
+     * @param slots the free slots of each cloud, in order of preference on equal scores
+     * @return the number of agents to provision by cloud
+     */
+    @Nonnull
+    static <C> Map<C, Integer> allocate(@Nonnull Map<C, Integer> slots, @Nonnull Function<C, CloudHealth> healths,
+            int count) {
+        Map<C, Integer> free = new LinkedHashMap<>(slots);
+        Map<C, Integer> allocation = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            C best = null;
+            double bestScore = 0;
+            for (Map.Entry<C, Integer> entry : free.entrySet()) {
+                C cloud = entry.getKey();
+                int left = entry.getValue();
+                if (left <= 0) {
+                    continue;
+                }
+                CloudHealth health = healths.apply(cloud);
+                double score = left * (1 - health.getErrorRate()) / (1 + health.getLatency() / 60000);
+                if (best == null || score > bestScore) {
+                    best = cloud;
+                    bestScore = score;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            free.merge(best, -1, Integer::sum);
+            allocation.merge(best, 1, Integer::sum);
+        }
+        return allocation;
+    }
+
+    /**
+     * Estimates how many more agents a cloud can provision, from its container cap and, if it tracks the cluster
+     * capacity, from the free capacity of the cluster.
+     */
+    private static int getAvailableSlots(KubernetesCloud cloud, Label label) {
+        int agents = 0;
+        for (Node node : Jenkins.getActiveInstance().getNodes()) {
+            if (node instanceof KubernetesSlave && cloud.name.equals(((KubernetesSlave) node).getCloudName())) {
+                agents++;
+            }
+        }
+        long slots = (long) cloud.getContainerCap() - agents;
+        ClusterCapacity capacity = cloud.isCapacityAware() ? ClusterCapacity.peek(cloud.name) : null;
+        PodTemplate template = cloud.getTemplate(label);
+        if (capacity != null && capacity.isAvailable() && template != null) {
+            PodTemplate unwrapped = PodTemplateUtils.unwrap(template, cloud.getDefaultsProviderTemplate(),
+                    cloud.getTemplates());
+            slots = Math.min(slots, capacity.getAvailableSlots(
+                    PodTemplateUtils.getNodeSelectorMap(unwrapped.getNodeSelector()), PodResources.of(unwrapped)));
+        }
+        return (int) Math.max(Math.min(slots, Integer.MAX_VALUE), 0);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<Cloud> {
+        @Override
+        public String getDisplayName() {
+            return "Kubernetes cloud group";
+        }
+
+        public FormValidation doCheckCloudNames(@QueryParameter String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.error("At least one Kubernetes cloud is required");
+            }
+            List<String> missing = new ArrayList<>();
+            for (String cloudName : value.trim().split("[\\s,]+")) {
+                if (!(Jenkins.getActiveInstance().getCloud(cloudName) instanceof KubernetesCloud)) {
+                    missing.add(cloudName);
+                }
+            }
+            if (!missing.isEmpty()) {
+                return FormValidation.warning("Not Kubernetes clouds: %s", StringUtils.join(missing, ", "));
+            }
+            return FormValidation.ok();
+        }
+    }
+}
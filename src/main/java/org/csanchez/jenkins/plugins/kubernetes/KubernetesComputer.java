@@ -1,18 +1,34 @@
 package org.csanchez.jenkins.plugins.kubernetes;
 
+import org.csanchez.jenkins.plugins.kubernetes.pipeline.ExecSessions;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.support.steps.ExecutorStepExecution;
+import org.kohsuke.stapler.export.Exported;
+
 import hudson.model.Executor;
 import hudson.model.Queue;
+import hudson.model.Run;
 import hudson.slaves.AbstractCloudComputer;
 
+import java.io.IOException;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.CheckForNull;
+
 /**
  * @author Carlos Sanchez carlos@apache.org
  */
 public class KubernetesComputer extends AbstractCloudComputer<KubernetesSlave> {
     private static final Logger LOGGER = Logger.getLogger(KubernetesComputer.class.getName());
 
+    /** Number of tasks accepted so far, to tell reused agents apart */
+    private int acceptedTasks;
+
+    /** Id of the last build that ran on the agent */
+    private volatile String lastRunId;
+
     public KubernetesComputer(KubernetesSlave slave) {
         super(slave);
     }
@@ -21,6 +37,60 @@ public class KubernetesComputer extends AbstractCloudComputer<KubernetesSlave> {
     public void taskAccepted(Executor executor, Queue.Task task) {
         super.taskAccepted(executor, task);
         LOGGER.fine(" Computer " + this + " taskAccepted");
+        KubernetesSlave node = getNode();
+        if (node != null && node.getCloudName() != null && node.getTemplateName() != null) {
+            TemplateUsage.get(node.getCloudName(), node.getTemplateName()).recordTask(acceptedTasks > 0);
+        }
+        Run<?, ?> run = getRun(executor.getCurrentExecutable());
+        if (run != null) {
+            lastRunId = run.getExternalizableId();
+            if (acceptedTasks == 0 && node != null && node.getCloudName() != null) {
+                attachTimeline(node, run);
+            }
+        }
+        acceptedTasks++;
+    }
+
+    /**
+     * Attaches the timeline of the pod startup to the build that waited for it.
+     */
+    private void attachTimeline(KubernetesSlave node, Run<?, ?> run) {
+        PodEvents events = PodEvents.peek(node.getCloudName());
+        if (events != null) {
+            run.addAction(new PodTimelineAction(node.getNodeName(), events.getTimeline(node.getNodeName())));
+        }
+    }
+
+    /**
+     * @return the last build that ran on the agent, if it still exists
+     */
+    @CheckForNull
+    public Run<?, ?> getLastRun() {
+        String id = lastRunId;
+        return id == null ? null : Run.fromExternalizableId(id);
+    }
+
+    /**
+     * @return the build running an executable, the build itself or the one of a pipeline <code>node</code> step
+     */
+    @CheckForNull
+    static Run<?, ?> getRun(@CheckForNull Queue.Executable executable) {
+        if (executable instanceof Run) {
+            return (Run<?, ?>) executable;
+        }
+        if (executable != null && executable.getParent() instanceof ExecutorStepExecution.PlaceholderTask) {
+            try {
+                FlowNode flowNode = ((ExecutorStepExecution.PlaceholderTask) executable.getParent()).getNode();
+                Queue.Executable owner = flowNode == null ? null
+                        : flowNode.getExecution().getOwner().getExecutable();
+                if (owner instanceof Run) {
+                    return (Run<?, ?>) owner;
+                }
+            } catch (IOException | InterruptedException e) {
+                LOGGER.log(Level.FINE, "Failed to find the build of " + executable, e);
+            }
+        }
+        return null;
     }
 
     @Override
@@ -38,6 +108,14 @@ public class KubernetesComputer extends AbstractCloudComputer<KubernetesSlave> {
         LOGGER.log(Level.FINE, " Computer " + this + " taskCompletedWithProblems");
     }
 
+    /**
+     * @return the exec sessions opened in each container of the pod through the API server
+     */
+    @Exported
+    public Map<String, String> getExecSessions() {
+        return ExecSessions.getSessions(getName());
+    }
+
     @Override
     public String toString() {
         return String.format("KubernetesComputer name: %s slave: %s", getName(), getNode());
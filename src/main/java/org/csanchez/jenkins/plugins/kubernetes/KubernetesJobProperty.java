@@ -13,7 +13,6 @@ import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.JobProperty;
 import hudson.model.JobPropertyDescriptor;
-import hudson.model.Label;
 import hudson.security.ACL;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
@@ -66,20 +65,34 @@ public class KubernetesJobProperty extends JobProperty<AbstractProject<?, ?>> {
     private int connectTimeout;
     private int readTimeout;
     private int maxRequestsPerHost;
+    private transient KubernetesJobCloud kubernetesJobCloud;
 
     @DataBoundConstructor
     public KubernetesJobProperty(String name) {
         this.cloudName = name;
     }
 
+    /**
+     * Assigns the build to a new agent, whose pod is created in the background as this runs while holding the queue
+     * lock.
+     */
     public boolean assignLabel(final AbstractProject<?, ?> project, final List<Action> actions) {
         String slaveName = SlaveNameUtils.getSlaveName(template.getName());
-        KubernetesJobCloud kubernetesJobCloud = new KubernetesJobCloud(cloudName, template, slaveName, serverUrl, namespace, jenkinsUrl, containerCap, connectTimeout, readTimeout, retentionTimeout);
-        kubernetesJobCloud.provision(Label.get(template.getLabel()), 1);
+        getKubernetesJobCloud().provisionAsync(slaveName);
         actions.add(0, new KubernetesLabelAssignmentAction(slaveName));
         return true;
     }
 
+    /**
+     * @return the cloud for this job configuration, as a new property is created each time the job is saved
+     */
+    private synchronized KubernetesJobCloud getKubernetesJobCloud() {
+        if (kubernetesJobCloud == null) {
+            kubernetesJobCloud = new KubernetesJobCloud(cloudName, template, null, serverUrl, namespace, jenkinsUrl, containerCap, connectTimeout, readTimeout, retentionTimeout);
+        }
+        return kubernetesJobCloud;
+    }
+
     @Extension
     public static class DescriptorImpl extends JobPropertyDescriptor {
 
@@ -10,6 +10,7 @@ import java.util.logging.Logger;
 
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
+import org.csanchez.jenkins.plugins.kubernetes.pipeline.ExecSessions;
 import org.jenkinsci.plugins.durabletask.executors.Messages;
 import org.jenkinsci.plugins.durabletask.executors.OnceRetentionStrategy;
 import org.jvnet.localizer.Localizable;
@@ -22,6 +23,7 @@ import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
 import hudson.model.Node;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.slaves.AbstractCloudSlave;
 import hudson.slaves.Cloud;
@@ -49,6 +51,9 @@ public class KubernetesSlave extends AbstractCloudSlave {
 
     private final String cloudName;
     private final String namespace;
+    private final String templateName;
+    private final boolean shareProcessNamespace;
+    private final boolean archiveContainerLogs;
 
     public KubernetesSlave(PodTemplate template, String nodeDescription, KubernetesCloud cloud, String labelStr)
             throws Descriptor.FormException, IOException {
@@ -86,6 +91,30 @@ public class KubernetesSlave extends AbstractCloudSlave {
 
         this.cloudName = cloudName;
         this.namespace = Util.fixEmpty(template.getNamespace());
+        this.templateName = template.getName();
+        this.shareProcessNamespace = template.isShareProcessNamespace();
+        this.archiveContainerLogs = template.isArchiveContainerLogs();
+    }
+
+    /**
+     * @return the name of the template the agent was created from, null for agents created by older versions
+     */
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    /**
+     * @return whether the containers of the pod share a process namespace with the agent
+     */
+    public boolean isShareProcessNamespace() {
+        return shareProcessNamespace;
+    }
+
+    /**
+     * @return whether the logs of the containers are archived with the last build of the agent when it terminates
+     */
+    public boolean isArchiveContainerLogs() {
+        return archiveContainerLogs;
     }
 
     public String getCloudName() {
@@ -121,7 +150,15 @@ public class KubernetesSlave extends AbstractCloudSlave {
     @Override
     protected void _terminate(TaskListener listener) throws IOException, InterruptedException {
         LOGGER.log(Level.INFO, "Terminating Kubernetes instance for agent {0}", name);
+        try {
+            deletePod(listener);
+        } finally {
+            // the pod is gone or will never be reached again through this agent
+            ExecSessions.forget(name);
+        }
+    }
 
+    private void deletePod(TaskListener listener) throws IOException, InterruptedException {
         Computer computer = toComputer();
         if (computer == null) {
             String msg = String.format("Computer for agent is null: %s", name);
@@ -166,12 +203,16 @@ public class KubernetesSlave extends AbstractCloudSlave {
         }
 
         String actualNamespace = getNamespace() == null ? client.getNamespace() : getNamespace();
+        if (archiveContainerLogs) {
+            archiveContainerLogs(client, actualNamespace, computer, listener);
+        }
         try {
             Boolean deleted = client.pods().inNamespace(actualNamespace).withName(name).delete();
             if (!Boolean.TRUE.equals(deleted)) {
                 String msg = String.format("Failed to delete pod for agent %s/%s: not found", actualNamespace, name);
                 LOGGER.log(Level.WARNING, msg);
                 listener.error(msg);
+                releaseClaims(client, actualNamespace);
                 return;
             }
         } catch (KubernetesClientException e) {
@@ -183,6 +224,8 @@ public class KubernetesSlave extends AbstractCloudSlave {
             return;
         }
 
+        releaseClaims(client, actualNamespace);
+
         String msg = String.format("Terminated Kubernetes instance for agent %s/%s", actualNamespace, name);
         LOGGER.log(Level.INFO, msg);
         listener.getLogger().println(msg);
@@ -190,6 +233,35 @@ public class KubernetesSlave extends AbstractCloudSlave {
         LOGGER.log(Level.INFO, "Disconnected computer {0}", name);
     }
 
+    /**
+     * Archives the logs of the containers with the last build of the agent, before the pod is deleted.
+     */
+    private void archiveContainerLogs(KubernetesClient client, String namespace, Computer computer,
+            TaskListener listener) throws InterruptedException {
+        Run<?, ?> run = computer instanceof KubernetesComputer ? ((KubernetesComputer) computer).getLastRun() : null;
+        if (run == null) {
+            LOGGER.log(Level.FINE, "No build to archive the container logs of agent {0} with", name);
+            return;
+        }
+        try {
+            ContainerLogArchiver.archive(client, namespace, name, run, listener);
+        } catch (IOException | KubernetesClientException e) {
+            LOGGER.log(Level.WARNING, "Failed to archive the container logs of agent " + name, e);
+            listener.error("Failed to archive the container logs of agent %s: %s", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the claims of the pooled volumes leased by the pod.
+     */
+    private void releaseClaims(KubernetesClient client, String namespace) {
+        try {
+            PersistentVolumeClaimPool.release(client, namespace, name);
+        } catch (KubernetesClientException e) {
+            LOGGER.log(Level.WARNING, "Failed to release the claims leased by agent " + name, e);
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("KubernetesSlave name: %s", name);
@@ -0,0 +1,419 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.ResourceQuantities.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import io.fabric8.kubernetes.api.model.LimitRange;
+import io.fabric8.kubernetes.api.model.LimitRangeItem;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.ResourceQuota;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import jenkins.model.Jenkins;
+
+/**
+ * Cached <code>ResourceQuota</code> and <code>LimitRange</code> objects of a namespace, used to check how many pods
+ * of a template the namespace can still admit before creating them.
+ * <p>
+ * Quotas whose scopes do not match the agent pods are left out. The objects are read again after
+ * {@link #REFRESH_INTERVAL}. Pods planned since the last read are reserved locally
+ * so that a burst of provisioning does not overshoot the quota before its usage is updated.
+ *
+ * @since 0.13
+ */
+public class NamespaceQuota {
+
+    private static final Logger LOGGER = Logger.getLogger(NamespaceQuota.class.getName());
+
+    private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    /** Quotas by cloud name and namespace */
+    private static final ConcurrentMap<String, NamespaceQuota> QUOTAS = new ConcurrentHashMap<>();
+
+    private static final String LIMITS_PREFIX = "limits.";
+    private static final String REQUESTS_PREFIX = "requests.";
+
+    private final String cloudName;
+    private final String namespace;
+
+    private volatile List<Remaining> remaining = Collections.emptyList();
+    @CheckForNull
+    private volatile LimitRangeItem containerLimits;
+    @CheckForNull
+    private volatile LimitRangeItem podLimits;
+    private volatile boolean available;
+    private long lastRefresh;
+
+    NamespaceQuota(String cloudName, String namespace) {
+        this.cloudName = cloudName;
+        this.namespace = namespace;
+    }
+
+    /**
+     * Gets the quota of a namespace as seen by a cloud, reading it from the cluster if the cached copy is too old.
+     */
+    @Nonnull
+    static NamespaceQuota get(@Nonnull KubernetesCloud cloud, @Nonnull String namespace) {
+        NamespaceQuota quota = QUOTAS.computeIfAbsent(cloud.name + "/" + namespace,
+                key -> new NamespaceQuota(cloud.name, namespace));
+        quota.refresh(cloud);
+        return quota;
+    }
+
+    private synchronized void refresh(KubernetesCloud cloud) {
+        if (System.currentTimeMillis() - lastRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+        lastRefresh = System.currentTimeMillis();
+        try {
+            KubernetesClient client = cloud.connect();
+            update(client.resourceQuotas().inNamespace(namespace).list().getItems(),
+                    client.limitRanges().inNamespace(namespace).list().getItems());
+        } catch (Exception e) {
+            this.available = false;
+            LOGGER.log(Level.WARNING, "Failed to read quotas of namespace {0} for cloud {1}, not checking quotas: {2}",
+                    new Object[] { namespace, cloudName, e.getMessage() });
+        }
+    }
+
+    /**
+     * Replaces the quotas and limit ranges of the namespace, dropping the local reservations.
+     */
+    void update(@Nonnull List<ResourceQuota> quotas, @Nonnull List<LimitRange> limitRanges) {
+        List<Remaining> remaining = new ArrayList<>();
+        for (ResourceQuota quota : quotas) {
+            Predicate<PodResources> scope = getScope(quota);
+            if (scope == null) {
+                LOGGER.log(Level.FINE, "Ignoring quota {0}, its scopes never match agent pods",
+                        quota.getMetadata().getName());
+                continue;
+            }
+            Map<String, Quantity> hard = quota.getStatus() != null && quota.getStatus().getHard() != null
+                    ? quota.getStatus().getHard() : quota.getSpec().getHard();
+            Map<String, Quantity> used = quota.getStatus() == null ? null : quota.getStatus().getUsed();
+            if (hard == null) {
+                continue;
+            }
+            for (String resource : hard.keySet()) {
+                try {
+                    remaining.add(new Remaining(quota.getMetadata().getName(), resource,
+                            ResourceQuantities.get(hard, resource), ResourceQuantities.get(used, resource), scope));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    LOGGER.log(Level.FINE, "Ignoring quota {0} on {1}: {2}",
+                            new Object[] { quota.getMetadata().getName(), resource, e.getMessage() });
+                }
+            }
+        }
+        LimitRangeItem containerLimits = null;
+        LimitRangeItem podLimits = null;
+        for (LimitRange limitRange : limitRanges) {
+            if (limitRange.getSpec() == null || limitRange.getSpec().getLimits() == null) {
+                continue;
+            }
+            for (LimitRangeItem item : limitRange.getSpec().getLimits()) {
+                if ("Container".equals(item.getType())) {
+                    containerLimits = item;
+                } else if ("Pod".equals(item.getType())) {
+                    podLimits = item;
+                }
+            }
+        }
+        this.remaining = remaining;
+        this.containerLimits = containerLimits;
+        this.podLimits = podLimits;
+        this.available = true;
+    }
+
+    /**
+     * Agent pods never set an active deadline, a priority class or cross-namespace pod affinity, so only the best
+     * effort scopes depend on the pod, through its resources.
+     *
+     * @return which pods the quota applies to, null if it never applies to agent pods
+     */
+    @CheckForNull
+    static Predicate<PodResources> getScope(@Nonnull ResourceQuota quota) {
+        Predicate<PodResources> scope = r -> true;
+        if (quota.getSpec() == null) {
+            return scope;
+        }
+        List<String> scopes = quota.getSpec().getScopes() == null ? Collections.<String> emptyList()
+                : quota.getSpec().getScopes();
+        for (String name : scopes) {
+            scope = and(scope, getScope(name, "Exists", Collections.<String> emptyList()));
+        }
+        // not known to the model of the client, so only read as an unmapped property
+        Object selector = quota.getSpec().getAdditionalProperties().get("scopeSelector");
+        Object expressions = selector instanceof Map ? ((Map<?, ?>) selector).get("matchExpressions") : null;
+        if (expressions instanceof List) {
+            for (Object expression : (List<?>) expressions) {
+                if (!(expression instanceof Map)) {
+                    continue;
+                }
+                Map<?, ?> requirement = (Map<?, ?>) expression;
+                Object values = requirement.get("values");
+                scope = and(scope, getScope(String.valueOf(requirement.get("scopeName")),
+                        String.valueOf(requirement.get("operator")),
+                        values instanceof List ? (List<?>) values : Collections.emptyList()));
+            }
+        }
+        return scope;
+    }
+
+    @CheckForNull
+    private static Predicate<PodResources> getScope(String name, String operator, List<?> values) {
+        switch (name) {
+            case "BestEffort":
+                return PodResources::isBestEffort;
+            case "NotBestEffort":
+                return r -> !r.isBestEffort();
+            case "NotTerminating":
+                return r -> true;
+            case "PriorityClass":
+                // matched against an empty priority class name
+                if ("In".equals(operator) && values.contains("")
+                        || "NotIn".equals(operator) && !values.contains("")) {
+                    return r -> true;
+                }
+                return null;
+            default:
+                // Terminating, CrossNamespacePodAffinity and scopes added later
+                return null;
+        }
+    }
+
+    @CheckForNull
+    private static Predicate<PodResources> and(@CheckForNull Predicate<PodResources> a,
+            @CheckForNull Predicate<PodResources> b) {
+        return a == null || b == null ? null : a.and(b);
+    }
+
+    /**
+     * @return the resources of a pod built from the template, with the namespace defaults applied
+     */
+    @Nonnull
+    public PodResources getPodResources(@Nonnull PodTemplate template) {
+        return PodResources.of(template, containerLimits);
+    }
+
+    /**
+     * Counts how many more pods with the given resources the quotas of the namespace admit.
+     *
+     * @return the number of pods, {@link Integer#MAX_VALUE} if there are no quotas or they could not be read
+     */
+    public int getAvailableSlots(@Nonnull PodResources resources) {
+        if (!available) {
+            return Integer.MAX_VALUE;
+        }
+        long slots = Integer.MAX_VALUE;
+        for (Remaining r : remaining) {
+            long demand = r.demand(resources);
+            if (demand > 0) {
+                slots = Math.min(slots, r.free() / demand);
+            }
+        }
+        return (int) Math.max(slots, 0);
+    }
+
+    /**
+     * Checks whether pods with the given resources could ever be admitted in the namespace, even if it was empty.
+     *
+     * @return why the pods can never be admitted, or null if they can
+     */
+    @CheckForNull
+    public String getRejectionReason(@Nonnull PodResources resources) {
+        if (!available) {
+            return null;
+        }
+        for (Remaining r : remaining) {
+            String missing = r.getMissingResource(resources);
+            if (missing != null) {
+                // the API server rejects the pod if any container, such as the jnlp one, lacks it
+                return String.format("quota %s in namespace %s requires every container to set a %s", r.quota,
+                        namespace, missing);
+            }
+            long demand = r.demand(resources);
+            if (demand > r.hard) {
+                return String.format("needs %s %s but quota %s in namespace %s allows %s", format(r.resource, demand),
+                        r.resource, r.quota, namespace, format(r.resource, r.hard));
+            }
+        }
+        LimitRangeItem containerLimits = this.containerLimits;
+        if (containerLimits != null && containerLimits.getMax() != null) {
+            long maxCpu = ResourceQuantities.get(containerLimits.getMax(), CPU);
+            long maxMemory = ResourceQuantities.get(containerLimits.getMax(), MEMORY);
+            for (PodResources.ContainerResources container : resources.getContainers()) {
+                if (maxCpu > 0 && container.getCpuLimit() > maxCpu) {
+                    return String.format("container %s cpu limit %s is over the maximum of %s in namespace %s",
+                            container.getName(), formatCpu(container.getCpuLimit()), formatCpu(maxCpu), namespace);
+                }
+                if (maxMemory > 0 && container.getMemoryLimit() > maxMemory) {
+                    return String.format("container %s memory limit %s is over the maximum of %s in namespace %s",
+                            container.getName(), formatMemory(container.getMemoryLimit()), formatMemory(maxMemory),
+                            namespace);
+                }
+            }
+        }
+        LimitRangeItem podLimits = this.podLimits;
+        if (podLimits != null && podLimits.getMax() != null) {
+            long maxCpu = ResourceQuantities.get(podLimits.getMax(), CPU);
+            long maxMemory = ResourceQuantities.get(podLimits.getMax(), MEMORY);
+            if (maxCpu > 0 && resources.getCpuLimit() > maxCpu) {
+                return String.format("pod cpu limit %s is over the maximum of %s in namespace %s",
+                        formatCpu(resources.getCpuLimit()), formatCpu(maxCpu), namespace);
+            }
+            if (maxMemory > 0 && resources.getMemoryLimit() > maxMemory) {
+                return String.format("pod memory limit %s is over the maximum of %s in namespace %s",
+                        formatMemory(resources.getMemoryLimit()), formatMemory(maxMemory), namespace);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Accounts for pods about to be created until the quotas are read again.
+     */
+    public void reserve(@Nonnull PodResources resources, int pods) {
+        for (Remaining r : remaining) {
+            r.reserve(r.demand(resources) * pods);
+        }
+    }
+
+    private static String format(String resource, long amount) {
+        if (resource.endsWith(CPU)) {
+            return formatCpu(amount);
+        } else if (resource.endsWith(MEMORY) || resource.endsWith("storage")) {
+            return formatMemory(amount);
+        }
+        return String.valueOf(amount);
+    }
+
+    /**
+     * Remaining amount of one resource in a quota.
+     */
+    private static class Remaining {
+        final String quota;
+        final String resource;
+        final long hard;
+        final long used;
+        final Predicate<PodResources> scope;
+        private long reserved;
+
+        Remaining(String quota, String resource, long hard, long used, Predicate<PodResources> scope) {
+            this.quota = quota;
+            this.resource = resource;
+            this.hard = hard;
+            this.used = used;
+            this.scope = scope;
+        }
+
+        synchronized long free() {
+            return hard - used - reserved;
+        }
+
+        synchronized void reserve(long amount) {
+            reserved += amount;
+        }
+
+        /**
+         * @return the request or limit this quota requires that some container of the pod does not set, if any
+         */
+        @CheckForNull
+        String getMissingResource(PodResources resources) {
+            if (!scope.test(resources)) {
+                return null;
+            }
+            switch (resource) {
+                case CPU:
+                case REQUESTS_PREFIX + CPU:
+                    return resources.isCpuRequested() ? null : "cpu request";
+                case MEMORY:
+                case REQUESTS_PREFIX + MEMORY:
+                    return resources.isMemoryRequested() ? null : "memory request";
+                case LIMITS_PREFIX + CPU:
+                    return resources.isCpuLimited() ? null : "cpu limit";
+                case LIMITS_PREFIX + MEMORY:
+                    return resources.isMemoryLimited() ? null : "memory limit";
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return how much of this resource one pod consumes, 0 if the quota does not apply to the pod
+         */
+        long demand(PodResources resources) {
+            if (!scope.test(resources)) {
+                return 0;
+            }
+            switch (resource) {
+                case PODS:
+                    return 1;
+                case CPU:
+                case REQUESTS_PREFIX + CPU:
+                    return resources.getCpuRequest();
+                case MEMORY:
+                case REQUESTS_PREFIX + MEMORY:
+                    return resources.getMemoryRequest();
+                case LIMITS_PREFIX + CPU:
+                    return resources.getCpuLimit();
+                case LIMITS_PREFIX + MEMORY:
+                    return resources.getMemoryLimit();
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * Checks every minute which templates of the clouds can not be admitted in their namespace, so the
+     * configuration page only reads the result.
+     */
+    @Extension
+    public static class Check extends AsyncPeriodicWork {
+
+        public Check() {
+            super("Kubernetes namespace quota check");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            for (Cloud cloud : jenkins.clouds) {
+                if (!(cloud instanceof KubernetesCloud)) {
+                    continue;
+                }
+                try {
+                    ((KubernetesCloud) cloud).checkTemplateProblems();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to check the templates of cloud {0} against quotas: {1}",
+                            new Object[] { cloud.name, e.getMessage() });
+                }
+            }
+        }
+    }
+}
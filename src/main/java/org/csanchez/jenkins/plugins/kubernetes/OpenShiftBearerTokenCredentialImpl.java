@@ -3,9 +3,13 @@ package org.csanchez.jenkins.plugins.kubernetes;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.PeriodicWork;
 import hudson.util.Secret;
+import jenkins.util.Timer;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.http.Header;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -17,37 +21,76 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.TrustStrategy;
+import org.apache.http.util.EntityUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import javax.annotation.CheckForNull;
 import javax.net.ssl.HostnameVerifier;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyManagementException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Username and password exchanged for an OAuth access token by the OpenShift server.
+ * <p>
+ * Tokens are renewed in the background at 80% of their lifetime while they are in use, so callers only wait for a
+ * token the first time, or if renewing failed until it expired. The renewals of each server are counted, see
+ * {@link #getRefreshStats(String)}.
+ *
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
 public class OpenShiftBearerTokenCredentialImpl extends UsernamePasswordCredentialsImpl implements TokenProducer {
 
     private static final long serialVersionUID = 6031616605797622926L;
 
-    private transient AtomicReference<Token> token = new AtomicReference<Token>();
+    private static final Logger LOGGER = Logger.getLogger(OpenShiftBearerTokenCredentialImpl.class.getName());
+
+    /** Share of the token lifetime after which it is renewed */
+    private static final double REFRESH_RATIO = 0.8;
+
+    /** Lifetime assumed for tokens returned without <code>expires_in</code> */
+    static final long DEFAULT_EXPIRES_IN = TimeUnit.HOURS.toMillis(1);
+
+    /** Shortest time between two renewals of a token, whatever its lifetime */
+    static final long MIN_REFRESH_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    /** Renewal statistics by server address */
+    private static final ConcurrentMap<String, RefreshStats> STATS = new ConcurrentHashMap<>();
+
+    /** Time after which an HTTP client nobody used is closed */
+    static final long HTTP_CLIENT_IDLE = TimeUnit.MINUTES.toMillis(5);
+
+    /** HTTP clients by server address and trust settings, shared by all the credentials */
+    private static final ConcurrentMap<String, PooledHttpClient> HTTP_CLIENTS = new ConcurrentHashMap<>();
+
+    /** Tokens by server address and trust settings, as the same credentials can be used with several servers */
+    private transient ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<>();
+
+    private transient ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    /** Last key used by server address, to drop what was kept for the previous trust settings of a server */
+    private transient ConcurrentMap<String, String> keys = new ConcurrentHashMap<>();
 
     @DataBoundConstructor
     public OpenShiftBearerTokenCredentialImpl(CredentialsScope scope, String id, String description, String username, String password) {
@@ -55,23 +98,214 @@ public class OpenShiftBearerTokenCredentialImpl extends UsernamePasswordCredenti
     }
 
     private Object readResolve() {
-        token = new AtomicReference<Token>();
+        tokens = new ConcurrentHashMap<>();
+        locks = new ConcurrentHashMap<>();
+        keys = new ConcurrentHashMap<>();
         return this;
     }
 
 
     @Override
     public String getToken(String serviceAddress, String caCertData, boolean skipTlsVerify) throws IOException {
-        Token t = this.token.get();
-        if (t == null || System.currentTimeMillis() > t.expire) {
-            t = refreshToken(serviceAddress, caCertData, skipTlsVerify);
+        String key = getKey(serviceAddress, caCertData, skipTlsVerify);
+        String previous = keys.put(serviceAddress, key);
+        if (previous != null && !previous.equals(key)) {
+            // the trust settings of the server changed, its token and client are not used anymore
+            tokens.remove(previous);
+            closeHttpClient(previous);
         }
-
+        Token t = tokens.get(key);
+        long now = System.currentTimeMillis();
+        if (t != null && now < t.expire) {
+            t.used = true;
+            return t.value;
+        }
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            // another caller may have refreshed it while we waited
+            t = tokens.get(key);
+            if (t == null || System.currentTimeMillis() >= t.expire) {
+                t = refreshToken(key, serviceAddress, caCertData, skipTlsVerify);
+            }
+        }
+        t.used = true;
         return t.value;
     }
 
-    private synchronized Token refreshToken(String serviceAddress, String caCertData, boolean skipTlsVerify) throws IOException {
+    private Token refreshToken(String key, String serviceAddress, String caCertData, boolean skipTlsVerify)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        RefreshStats stats = STATS.computeIfAbsent(serviceAddress, k -> new RefreshStats());
+        Token t;
+        try {
+            t = requestToken(serviceAddress, caCertData, skipTlsVerify);
+            stats.recordSuccess(System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            stats.recordFailure(System.currentTimeMillis() - start);
+            LOGGER.log(Level.WARNING, "Failed to get an OAuth access token for {0} from {1} after {2} ms: {3}",
+                    new Object[] { getUsername(), serviceAddress, System.currentTimeMillis() - start, e.getMessage() });
+            throw e;
+        }
+        LOGGER.log(Level.FINE, "Got an OAuth access token for {0} from {1} in {2} ms, expiring in {3} s",
+                new Object[] { getUsername(), serviceAddress, System.currentTimeMillis() - start,
+                        TimeUnit.MILLISECONDS.toSeconds(t.expire - System.currentTimeMillis()) });
+        tokens.put(key, t);
+        scheduleRefresh(t, key, serviceAddress, caCertData, skipTlsVerify);
+        return t;
+    }
+
+    /**
+     * Renews the token in the background at {@link #REFRESH_RATIO} of its lifetime, if it was used in the meantime.
+     */
+    private void scheduleRefresh(Token t, String key, String serviceAddress, String caCertData, boolean skipTlsVerify) {
+        if (!t.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = getRefreshDelay(t, System.currentTimeMillis());
+        Timer.get().schedule(() -> {
+            if (tokens.get(key) != t) {
+                // already replaced
+                return;
+            }
+            if (!t.used) {
+                LOGGER.log(Level.FINE, "Not renewing the unused OAuth access token for {0} from {1}",
+                        new Object[] { getUsername(), serviceAddress });
+                return;
+            }
+            synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+                if (tokens.get(key) != t) {
+                    return;
+                }
+                try {
+                    refreshToken(key, serviceAddress, caCertData, skipTlsVerify);
+                } catch (IOException e) {
+                    // already logged, callers will try again once the current token expires
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
 
+    private Token requestToken(String serviceAddress, String caCertData, boolean skipTlsVerify) throws IOException {
+        HttpGet authorize = new HttpGet(serviceAddress + "/oauth/authorize?client_id=openshift-challenging-client&response_type=token");
+        authorize.setHeader("Authorization", "Basic "+ Base64.encodeBase64String(
+                (getUsername()+':'+Secret.toString(getPassword()))
+                .getBytes(StandardCharsets.UTF_8)));
+        long issued = System.currentTimeMillis();
+        PooledHttpClient client = getHttpClient(serviceAddress, caCertData, skipTlsVerify);
+        try (CloseableHttpResponse response = client.client.execute(authorize)) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (response.getStatusLine().getStatusCode() != 302) {
+                throw new IOException("Failed to get an OAuth access token " + response.getStatusLine().getStatusCode());
+            }
+
+            Header locationHeader = response.getFirstHeader("Location");
+            if (locationHeader == null) {
+                throw new IOException("Failed to get an OAuth access token, no Location header in the response");
+            }
+            return parseToken(locationHeader.getValue(), issued);
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * Reads the token from the location the server redirects to, assuming {@link #DEFAULT_EXPIRES_IN} if the server
+     * does not tell when it expires.
+     */
+    static Token parseToken(String location, long issued) throws IOException {
+        String parameters = location.substring(location.indexOf('#')+1);
+        List<NameValuePair> pairs = URLEncodedUtils.parse(parameters, StandardCharsets.UTF_8);
+        String value = null;
+        long expiresIn = 0;
+        for (NameValuePair pair : pairs) {
+            if (pair.getName().equals("access_token")) {
+                value = pair.getValue();
+            }
+            else if (pair.getName().equals("expires_in")) {
+                try {
+                    expiresIn = TimeUnit.SECONDS.toMillis(Long.parseLong(pair.getValue()));
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring invalid expires_in of OAuth access token: {0}",
+                            pair.getValue());
+                }
+            }
+        }
+        if (value == null) {
+            throw new IOException("Failed to get an OAuth access token, no access_token in the response");
+        }
+        if (expiresIn <= 0) {
+            expiresIn = DEFAULT_EXPIRES_IN;
+        }
+        return new Token(value, issued + expiresIn - 100, issued + (long) (expiresIn * REFRESH_RATIO));
+    }
+
+    /**
+     * @return the time to wait before renewing a token, at least {@link #MIN_REFRESH_DELAY}
+     */
+    static long getRefreshDelay(Token t, long now) {
+        return Math.max(t.refreshAt - now, MIN_REFRESH_DELAY);
+    }
+
+    /**
+     * @return how often and how fast tokens were renewed with a server, null if they never were
+     */
+    @CheckForNull
+    public static String getRefreshStats(String serviceAddress) {
+        RefreshStats stats = STATS.get(serviceAddress);
+        return stats == null ? null : stats.toString();
+    }
+
+    /**
+     * Gets the pooled HTTP client for a server and its trust settings, creating it the first time.
+     *
+     * @return the client, to release once the request is done
+     */
+    private static PooledHttpClient getHttpClient(String serviceAddress, String caCertData, boolean skipTlsVerify)
+            throws IOException {
+        String key = getKey(serviceAddress, caCertData, skipTlsVerify);
+        while (true) {
+            PooledHttpClient client = HTTP_CLIENTS.get(key);
+            if (client == null) {
+                PooledHttpClient created = new PooledHttpClient(
+                        createHttpClient(serviceAddress, caCertData, skipTlsVerify));
+                client = HTTP_CLIENTS.putIfAbsent(key, created);
+                if (client == null) {
+                    client = created;
+                } else {
+                    created.client.close();
+                }
+            }
+            if (client.acquire()) {
+                return client;
+            }
+            // closed meanwhile
+            HTTP_CLIENTS.remove(key, client);
+        }
+    }
+
+    /**
+     * Closes the HTTP client of a server and trust settings, unless a request is using it.
+     */
+    private static void closeHttpClient(String key) {
+        PooledHttpClient client = HTTP_CLIENTS.get(key);
+        if (client != null && client.closeIfIdle(Long.MAX_VALUE, 0)) {
+            HTTP_CLIENTS.remove(key, client);
+        }
+    }
+
+    /**
+     * Closes the HTTP clients not used for {@link #HTTP_CLIENT_IDLE}.
+     */
+    static void closeIdleHttpClients(long now) {
+        for (Map.Entry<String, PooledHttpClient> entry : HTTP_CLIENTS.entrySet()) {
+            if (entry.getValue().closeIfIdle(now, HTTP_CLIENT_IDLE)) {
+                HTTP_CLIENTS.remove(entry.getKey(), entry.getValue());
+                LOGGER.log(Level.FINE, "Closed the idle HTTP client of {0}", entry.getKey());
+            }
+        }
+    }
+
+    private static CloseableHttpClient createHttpClient(String serviceAddress, String caCertData,
+            boolean skipTlsVerify) throws IOException {
         URI uri = null;
         try {
             uri = new URI(serviceAddress);
@@ -80,7 +314,8 @@ public class OpenShiftBearerTokenCredentialImpl extends UsernamePasswordCredenti
         }
 
         final HttpClientBuilder builder = HttpClients.custom()
-                .setRedirectStrategy(NO_REDIRECT);
+                .setRedirectStrategy(NO_REDIRECT)
+                .setMaxConnPerRoute(4);
 
         if (skipTlsVerify || caCertData != null) {
             final SSLContextBuilder sslBuilder = new SSLContextBuilder();
@@ -101,57 +336,130 @@ public class OpenShiftBearerTokenCredentialImpl extends UsernamePasswordCredenti
                 }
 
                 builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslBuilder.build(), hostnameVerifier));
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
-            } catch (KeyManagementException e) {
-                e.printStackTrace();
-            } catch (KeyStoreException e) {
-                e.printStackTrace();
-            } catch (CertificateException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to set up TLS for " + serviceAddress, e);
             }
         }
+        return builder.build();
+    }
 
+    private static String getKey(String serviceAddress, String caCertData, boolean skipTlsVerify) {
+        return serviceAddress + "|" + skipTlsVerify + "|" + (caCertData == null ? "" : Util.getDigestOf(caCertData));
+    }
 
-        HttpGet authorize = new HttpGet(serviceAddress + "/oauth/authorize?client_id=openshift-challenging-client&response_type=token");
-        authorize.setHeader("Authorization", "Basic "+ Base64.encodeBase64String(
-                (getUsername()+':'+Secret.toString(getPassword()))
-                .getBytes(StandardCharsets.UTF_8)));
-        final CloseableHttpResponse response = builder.build().execute(authorize);
+    @Extension
+    public static class DescriptorImpl extends BaseStandardCredentialsDescriptor {
 
-        if (response.getStatusLine().getStatusCode() != 302) {
-            throw new IOException("Failed to get an OAuth access token " + response.getStatusLine().getStatusCode());
+        @Override
+        public String getDisplayName() {
+            return "OpenShift Username and Password";
         }
+    }
 
-        String location = response.getFirstHeader("Location").getValue();
-        String parameters = location.substring(location.indexOf('#')+1);
-        List<NameValuePair> pairs = URLEncodedUtils.parse(parameters, StandardCharsets.UTF_8);
-        Token t = new Token();
-        for (NameValuePair pair : pairs) {
-            if (pair.getName().equals("access_token")) {
-                t.value = pair.getValue();
+    /**
+     * Closes the HTTP clients nobody used for a while, such as those of servers no longer configured.
+     */
+    @Extension
+    public static class HttpClientReaper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void doRun() {
+            closeIdleHttpClients(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * HTTP client counting the requests using it, so it is only closed while idle.
+     */
+    static class PooledHttpClient {
+        final CloseableHttpClient client;
+        private int users;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean closed;
+
+        PooledHttpClient(CloseableHttpClient client) {
+            this.client = client;
+        }
+
+        /**
+         * @return whether the client can be used, false if it was closed
+         */
+        synchronized boolean acquire() {
+            if (closed) {
+                return false;
             }
-            else if (pair.getName().equals("expires_in")) {
-                t.expire = System.currentTimeMillis() + Long.parseLong(pair.getValue())*1000 - 100;
+            users++;
+            return true;
+        }
+
+        synchronized void release() {
+            users--;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * @return whether the client was closed, as no request used it for the given time
+         */
+        synchronized boolean closeIfIdle(long now, long idle) {
+            if (closed || users > 0 || now - lastUsed < idle) {
+                return closed;
+            }
+            closed = true;
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close an HTTP client", e);
             }
+            return true;
         }
-        return t;
     }
 
-    @Extension
-    public static class DescriptorImpl extends BaseStandardCredentialsDescriptor {
+    static class Token {
+        final String value;
+        final long expire;
+        /** Time to renew the token in the background */
+        final long refreshAt;
+        /** Whether the token was handed out, to stop renewing tokens nobody uses */
+        volatile boolean used;
+        final AtomicBoolean scheduled = new AtomicBoolean();
 
-        @Override
-        public String getDisplayName() {
-            return "OpenShift Username and Password";
+        Token(String value, long expire, long refreshAt) {
+            this.value = value;
+            this.expire = expire;
+            this.refreshAt = refreshAt;
         }
     }
 
-    private static class Token {
-        String value;
-        long expire;
+    /**
+     * Counts of the token renewals with a server, and their latency.
+     */
+    static class RefreshStats {
+        private long count;
+        private long failures;
+        private long totalMillis;
+        private long lastMillis;
+
+        synchronized void recordSuccess(long millis) {
+            count++;
+            totalMillis += millis;
+            lastMillis = millis;
+        }
+
+        synchronized void recordFailure(long millis) {
+            recordSuccess(millis);
+            failures++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d token requests, %d failed, %d ms on average, %d ms the last time", count,
+                    failures, count == 0 ? 0 : totalMillis / count, lastMillis);
+        }
     }
 
     private static TrustStrategy ALWAYS = new TrustStrategy() {
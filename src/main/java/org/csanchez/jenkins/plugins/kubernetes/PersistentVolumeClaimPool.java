@@ -0,0 +1,322 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.RandomStringUtils;
+import org.apache.commons.lang.StringUtils;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.PooledPersistentVolumeClaim;
+
+import com.google.common.collect.ImmutableMap;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import jenkins.model.Jenkins;
+
+/**
+ * Leases the claims of the {@link PooledPersistentVolumeClaim} pools to agent pods.
+ * <p>
+ * A pool is identified by the mount path and the storage of its volume, so the pods of all the templates mounting the
+ * same cache share it, including the templates of pipelines whose names change with every build. The state of a pool
+ * is kept on its claims so it survives restarts: a label with the agent leasing the claim, and an annotation with the
+ * last time it was leased. A lease by an agent that is no longer a Jenkins node is ignored.
+ * <p>
+ * Free claims not leased for longer than
+ * <code>org.csanchez.jenkins.plugins.kubernetes.PersistentVolumeClaimPool.maxIdleHours</code> hours, a week by
+ * default, are deleted, so the pools of volumes that are no longer used by any template go away.
+ *
+ * @since 0.13
+ */
+public class PersistentVolumeClaimPool {
+
+    private static final Logger LOGGER = Logger.getLogger(PersistentVolumeClaimPool.class.getName());
+
+    /** Label with the id of the pool of a claim */
+    static final String POOL_LABEL = "jenkins/pvc-pool";
+
+    /** Label with the name of the agent leasing a claim */
+    static final String LEASE_LABEL = "jenkins/pvc-lease";
+
+    /** Annotation with the last time a claim was leased */
+    static final String LAST_LEASE_ANNOTATION = "jenkins/pvc-last-lease";
+
+    /** Time after which a free claim is deleted */
+    private static final long MAX_IDLE = TimeUnit.HOURS
+            .toMillis(Long.getLong(PersistentVolumeClaimPool.class.getName() + ".maxIdleHours", 7 * 24));
+
+    /** Locks by namespace and pool, so claims are leased once by this Jenkins */
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private PersistentVolumeClaimPool() {
+    }
+
+    /**
+     * @return the id of the pool of a volume, the same for all the templates mounting the same storage at the same path
+     */
+    @Nonnull
+    static String getPoolId(@Nonnull PooledPersistentVolumeClaim volume) {
+        return Util.getDigestOf(volume.getMountPath() + ":" + volume.getStorageSize() + ":"
+                + Util.fixNull(volume.getStorageClassName())).substring(0, 16);
+    }
+
+    /**
+     * Leases a free claim of the pool to an agent, creating a new one if all are leased and the pool is not full.
+     *
+     * @return the name of the leased claim, or null if the pool is exhausted
+     */
+    @CheckForNull
+    static String lease(@Nonnull KubernetesClient client, @Nonnull String namespace, @Nonnull String poolId,
+            @Nonnull PooledPersistentVolumeClaim volume, @Nonnull String agentName) {
+        synchronized (LOCKS.computeIfAbsent(namespace + "/" + poolId, k -> new Object())) {
+            List<PersistentVolumeClaim> claims = client.persistentVolumeClaims().inNamespace(namespace)
+                    .withLabel(POOL_LABEL, poolId).list().getItems();
+            Set<String> mounted = getMountedClaims(client, namespace);
+            List<PersistentVolumeClaim> free = new ArrayList<>();
+            for (PersistentVolumeClaim claim : claims) {
+                if (isFree(claim) && !mounted.contains(claim.getMetadata().getName())) {
+                    free.add(claim);
+                }
+            }
+            // most recently leased first, as its cache is the warmest
+            free.sort(Comparator.comparingLong(PersistentVolumeClaimPool::getLastLease).reversed());
+
+            long now = System.currentTimeMillis();
+            for (PersistentVolumeClaim evicted : getEvictions(free, claims.size(), volume.getPoolSize(), now)) {
+                LOGGER.log(Level.INFO, "Deleting claim {0} idle the longest from pool {1} of size {2}",
+                        new Object[] { evicted.getMetadata().getName(), poolId, volume.getPoolSize() });
+                client.persistentVolumeClaims().inNamespace(namespace).withName(evicted.getMetadata().getName())
+                        .delete();
+                free.remove(evicted);
+                claims.remove(evicted);
+            }
+
+            for (PersistentVolumeClaim claim : free) {
+                String name = claim.getMetadata().getName();
+                try {
+                    client.persistentVolumeClaims().inNamespace(namespace).withName(name).edit()
+                            .editMetadata()
+                                .addToLabels(LEASE_LABEL, agentName)
+                                .addToAnnotations(LAST_LEASE_ANNOTATION, String.valueOf(System.currentTimeMillis()))
+                            .endMetadata()
+                            .done();
+                    LOGGER.log(Level.FINE, "Leased claim {0} of pool {1} to {2}",
+                            new Object[] { name, poolId, agentName });
+                    return name;
+                } catch (KubernetesClientException e) {
+                    LOGGER.log(Level.WARNING, "Failed to lease claim " + name + " of pool " + poolId, e);
+                }
+            }
+
+            if (claims.size() >= volume.getPoolSize()) {
+                LOGGER.log(Level.INFO, "All the {0} claims of pool {1} are leased, {2} gets an empty volume",
+                        new Object[] { claims.size(), poolId, agentName });
+                return null;
+            }
+            String name = "jenkins-cache-" + poolId + "-"
+                    + RandomStringUtils.random(5, "bcdfghjklmnpqrstvwxz0123456789");
+            PersistentVolumeClaimBuilder builder = new PersistentVolumeClaimBuilder()
+                    .withNewMetadata()
+                        .withName(name)
+                        .addToLabels(POOL_LABEL, poolId)
+                        .addToLabels(LEASE_LABEL, agentName)
+                        .addToAnnotations(LAST_LEASE_ANNOTATION, String.valueOf(System.currentTimeMillis()))
+                    .endMetadata()
+                    .withNewSpec()
+                        .withAccessModes("ReadWriteOnce")
+                        .withNewResources()
+                            .withRequests(ImmutableMap.of("storage", new Quantity(volume.getStorageSize())))
+                        .endResources()
+                    .endSpec();
+            if (volume.getStorageClassName() != null) {
+                builder.editMetadata()
+                        .addToAnnotations("volume.beta.kubernetes.io/storage-class", volume.getStorageClassName())
+                        .endMetadata();
+            }
+            client.persistentVolumeClaims().inNamespace(namespace).create(builder.build());
+            LOGGER.log(Level.INFO, "Created claim {0} in pool {1} for {2}", new Object[] { name, poolId, agentName });
+            return name;
+        }
+    }
+
+    /**
+     * Chooses the free claims to delete before leasing one: the ones over the size of the pool, as it was shrunk, and
+     * once the pool is at its size, the one idle the longest if it was not leased for {@link #MAX_IDLE}.
+     *
+     * @param free the free claims of the pool, most recently leased first
+     * @param total the number of claims of the pool
+     * @return the claims to delete, idle the longest first
+     */
+    @Nonnull
+    static List<PersistentVolumeClaim> getEvictions(@Nonnull List<PersistentVolumeClaim> free, int total,
+            int poolSize, long now) {
+        List<PersistentVolumeClaim> evictions = new ArrayList<>();
+        int excess = total - poolSize;
+        for (int i = free.size() - 1; i >= 0 && excess > 0; i--, excess--) {
+            evictions.add(free.get(i));
+        }
+        int remaining = free.size() - evictions.size();
+        // keep one to lease
+        if (excess == 0 && remaining > 1 && now - getLastLease(free.get(remaining - 1)) > MAX_IDLE) {
+            evictions.add(free.get(remaining - 1));
+        }
+        return evictions;
+    }
+
+    /**
+     * Deletes the free claims of all the pools of a namespace that were not leased for {@link #MAX_IDLE}.
+     */
+    static void reap(@Nonnull KubernetesClient client, @Nonnull String namespace) {
+        long now = System.currentTimeMillis();
+        for (PersistentVolumeClaim claim : client.persistentVolumeClaims().inNamespace(namespace).list().getItems()) {
+            Map<String, String> labels = claim.getMetadata().getLabels();
+            String poolId = labels == null ? null : labels.get(POOL_LABEL);
+            if (poolId == null || now - getLastLease(claim) <= MAX_IDLE) {
+                continue;
+            }
+            String name = claim.getMetadata().getName();
+            synchronized (LOCKS.computeIfAbsent(namespace + "/" + poolId, k -> new Object())) {
+                // it may have been leased since it was listed
+                PersistentVolumeClaim current = client.persistentVolumeClaims().inNamespace(namespace).withName(name)
+                        .get();
+                if (current == null || !isFree(current) || now - getLastLease(current) <= MAX_IDLE) {
+                    continue;
+                }
+                LOGGER.log(Level.INFO, "Deleting claim {0} of pool {1} not leased since {2}",
+                        new Object[] { name, poolId, new Date(getLastLease(current)) });
+                client.persistentVolumeClaims().inNamespace(namespace).withName(name).delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the claims leased by an agent to their pools.
+     */
+    static void release(@Nonnull KubernetesClient client, @Nonnull String namespace, @Nonnull String agentName) {
+        List<PersistentVolumeClaim> claims = client.persistentVolumeClaims().inNamespace(namespace)
+                .withLabel(LEASE_LABEL, agentName).list().getItems();
+        for (PersistentVolumeClaim claim : claims) {
+            String name = claim.getMetadata().getName();
+            client.persistentVolumeClaims().inNamespace(namespace).withName(name).edit()
+                    .editMetadata()
+                        .removeFromLabels(LEASE_LABEL)
+                    .endMetadata()
+                    .done();
+            LOGGER.log(Level.FINE, "Released claim {0} leased by {1}", new Object[] { name, agentName });
+        }
+    }
+
+    /**
+     * @return the names of the claims mounted by the agent pods of a namespace, including the pods being deleted, as a
+     *         ReadWriteOnce claim released by a terminated agent can not be attached to another node until its pod is
+     *         gone
+     */
+    @Nonnull
+    static Set<String> getMountedClaims(@Nonnull KubernetesClient client, @Nonnull String namespace) {
+        Set<String> mounted = new HashSet<>();
+        for (Pod pod : client.pods().inNamespace(namespace).withLabels(KubernetesCloud.DEFAULT_POD_LABELS).list()
+                .getItems()) {
+            if (pod.getSpec() == null || pod.getSpec().getVolumes() == null) {
+                continue;
+            }
+            for (Volume volume : pod.getSpec().getVolumes()) {
+                if (volume.getPersistentVolumeClaim() != null) {
+                    mounted.add(volume.getPersistentVolumeClaim().getClaimName());
+                }
+            }
+        }
+        return mounted;
+    }
+
+    static boolean isFree(PersistentVolumeClaim claim) {
+        Map<String, String> labels = claim.getMetadata().getLabels();
+        String agent = labels == null ? null : labels.get(LEASE_LABEL);
+        if (agent == null) {
+            return true;
+        }
+        // leased by an agent that was removed without releasing it
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null && jenkins.getNode(agent) == null;
+    }
+
+    static long getLastLease(PersistentVolumeClaim claim) {
+        Map<String, String> annotations = claim.getMetadata().getAnnotations();
+        String lastLease = annotations == null ? null : annotations.get(LAST_LEASE_ANNOTATION);
+        try {
+            return lastLease == null ? 0 : Long.parseLong(lastLease);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes every hour the claims of the pools of the clouds that were not leased for a long time, as the pool of a
+     * volume that no template mounts anymore is never leased from again.
+     */
+    @Extension
+    public static class Reaper extends AsyncPeriodicWork {
+
+        public Reaper() {
+            super("Kubernetes persistent volume claim pool reaper");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.HOURS.toMillis(1);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            for (Cloud cloud : jenkins.clouds) {
+                if (!(cloud instanceof KubernetesCloud)) {
+                    continue;
+                }
+                KubernetesCloud kubernetesCloud = (KubernetesCloud) cloud;
+                try {
+                    KubernetesClient client = kubernetesCloud.connect();
+                    Set<String> namespaces = new TreeSet<>();
+                    namespaces.add(client.getNamespace());
+                    for (PodTemplate template : kubernetesCloud.getTemplates()) {
+                        if (!StringUtils.isBlank(template.getNamespace())) {
+                            namespaces.add(template.getNamespace());
+                        }
+                    }
+                    for (String namespace : namespaces) {
+                        reap(client, namespace);
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to delete the idle claims of cloud {0}: {1}",
+                            new Object[] { cloud.name, e.getMessage() });
+                }
+            }
+        }
+    }
+}
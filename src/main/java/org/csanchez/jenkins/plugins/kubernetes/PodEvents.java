@@ -0,0 +1,281 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.csanchez.jenkins.plugins.kubernetes.pipeline.EvictingQueue;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.ObjectReference;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import jenkins.model.Jenkins;
+
+/**
+ * Recent Kubernetes events of the agent pods of a {@link KubernetesCloud}, received through a single watch per
+ * namespace shared by all the pods, and kept in a ring of bounded size, so the {@link PodTimeline} of a pod needs no
+ * API call.
+ * <p>
+ * The size of the ring is set with the <code>org.csanchez.jenkins.plugins.kubernetes.PodEvents.maxEvents</code>
+ * system property.
+ *
+ * @since 0.13
+ */
+public class PodEvents {
+
+    private static final Logger LOGGER = Logger.getLogger(PodEvents.class.getName());
+
+    /** Events by cloud name */
+    private static final ConcurrentMap<String, PodEvents> EVENTS = new ConcurrentHashMap<>();
+
+    private static final int MAX_EVENTS = Integer.getInteger(PodEvents.class.getName() + ".maxEvents", 2000);
+
+    /** Time to wait before watching a namespace again after a failure */
+    private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /** Field path of the events about a container, ie. <code>spec.containers{jnlp}</code> */
+    private static final Pattern CONTAINER_FIELD_PATH = Pattern.compile("spec\\.(?:init)?[cC]ontainers\\{(.+)\\}");
+
+    private final String cloudName;
+    private final String serverUrl;
+
+    /** Guarded by itself */
+    private final EvictingQueue<Received> ring = EvictingQueue.create(MAX_EVENTS);
+
+    /** Watches by namespace */
+    private final Map<String, Watch> watches = new HashMap<>();
+    private final Map<String, Long> lastFailures = new HashMap<>();
+
+    private PodEvents(String cloudName, String serverUrl) {
+        this.cloudName = cloudName;
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * Gets the events of a cloud, starting over if its server changed.
+     */
+    @Nonnull
+    static PodEvents get(@Nonnull KubernetesCloud cloud) {
+        return EVENTS.compute(cloud.name, (name, current) -> {
+            if (current != null && Objects.equals(current.serverUrl, cloud.getServerUrl())) {
+                return current;
+            }
+            if (current != null) {
+                current.close();
+            }
+            return new PodEvents(name, cloud.getServerUrl());
+        });
+    }
+
+    /**
+     * Gets the events of a cloud if they are watched, without contacting the cluster.
+     */
+    @CheckForNull
+    static PodEvents peek(@Nonnull String cloudName) {
+        return EVENTS.get(cloudName);
+    }
+
+    /**
+     * Stops watching the events of a cloud.
+     */
+    static void remove(@Nonnull String cloudName) {
+        PodEvents events = EVENTS.remove(cloudName);
+        if (events != null) {
+            events.close();
+        }
+    }
+
+    /**
+     * Stops watching the events of the clouds other than the given ones, as those removed from the configuration.
+     */
+    static void retain(@Nonnull Collection<String> cloudNames) {
+        for (String cloudName : EVENTS.keySet()) {
+            if (!cloudNames.contains(cloudName)) {
+                LOGGER.log(Level.FINE, "Cloud {0} was removed, no longer watching its events", cloudName);
+                remove(cloudName);
+            }
+        }
+    }
+
+    /**
+     * Starts watching the events of a namespace, unless they are already watched.
+     */
+    synchronized void watch(@Nonnull KubernetesClient client, @Nonnull String namespace) {
+        if (watches.containsKey(namespace)
+                || System.currentTimeMillis() - lastFailures.getOrDefault(namespace, 0L) < RETRY_INTERVAL) {
+            return;
+        }
+        try {
+            // events carry no pod labels and field selectors only match whole names, so only the kind is filtered
+            watches.put(namespace, client.events().inNamespace(namespace).withField("involvedObject.kind", "Pod")
+                    .watch(new EventWatcher(namespace)));
+            LOGGER.log(Level.FINE, "Watching events of namespace {0} for cloud {1}",
+                    new Object[] { namespace, cloudName });
+        } catch (KubernetesClientException e) {
+            lastFailures.put(namespace, System.currentTimeMillis());
+            LOGGER.log(Level.WARNING, "Failed to watch the events of namespace {0} for cloud {1}: {2}",
+                    new Object[] { namespace, cloudName, e.getMessage() });
+        }
+    }
+
+    /**
+     * Records an event of the agent rather than of Kubernetes, such as {@link PodTimeline#SUBMITTED}.
+     */
+    void record(@Nonnull String podName, @Nonnull String reason, @Nonnull String message) {
+        add(new Received(podName, null, new PodTimeline.Entry(System.currentTimeMillis(), reason, message, null, 1)));
+    }
+
+    /**
+     * @return the timeline of a pod from the events still in the ring
+     */
+    @Nonnull
+    public PodTimeline getTimeline(@Nonnull String podName) {
+        // an event is received again each time it repeats, keep its last state
+        Map<Object, PodTimeline.Entry> entries = new LinkedHashMap<>();
+        synchronized (ring) {
+            for (Received received : ring) {
+                if (podName.equals(received.podName)) {
+                    entries.put(received.uid == null ? new Object() : received.uid, received.entry);
+                }
+            }
+        }
+        return new PodTimeline(new ArrayList<>(entries.values()));
+    }
+
+    private void add(Received received) {
+        synchronized (ring) {
+            ring.add(received);
+        }
+    }
+
+    /**
+     * @return the entry of an event about a pod, null for events about other objects
+     */
+    @CheckForNull
+    static PodTimeline.Entry toEntry(@Nonnull Event event) {
+        ObjectReference object = event.getInvolvedObject();
+        if (object == null || !"Pod".equals(object.getKind())) {
+            return null;
+        }
+        String container = null;
+        if (object.getFieldPath() != null) {
+            Matcher m = CONTAINER_FIELD_PATH.matcher(object.getFieldPath());
+            if (m.matches()) {
+                container = m.group(1);
+            }
+        }
+        long time;
+        try {
+            String timestamp = event.getFirstTimestamp() != null ? event.getFirstTimestamp()
+                    : event.getMetadata().getCreationTimestamp();
+            time = timestamp == null ? System.currentTimeMillis() : Instant.parse(timestamp).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            time = System.currentTimeMillis();
+        }
+        return new PodTimeline.Entry(time, event.getReason(), event.getMessage(), container,
+                event.getCount() == null ? 1 : event.getCount());
+    }
+
+    private static boolean isAgent(String podName) {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null && jenkins.getNode(podName) instanceof KubernetesSlave;
+    }
+
+    private synchronized void onWatchClosed(String namespace, KubernetesClientException cause) {
+        if (watches.remove(namespace) != null) {
+            // the next pod provisioned in the namespace watches again
+            LOGGER.log(Level.INFO, "Event watch of namespace {0} for cloud {1} closed: {2}",
+                    new Object[] { namespace, cloudName, cause == null ? "" : cause.getMessage() });
+        }
+    }
+
+    synchronized void close() {
+        for (Watch watch : watches.values()) {
+            try {
+                watch.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Failed to close watch", e);
+            }
+        }
+        watches.clear();
+    }
+
+    /**
+     * Stops watching the events of the clouds removed when the configuration of Jenkins is saved.
+     */
+    @Extension
+    public static class Reconciler extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                retain(((Jenkins) o).clouds.stream().filter(KubernetesCloud.class::isInstance)
+                        .map(cloud -> cloud.name).collect(Collectors.toSet()));
+            }
+        }
+    }
+
+    private class EventWatcher implements Watcher<Event> {
+        private final String namespace;
+
+        EventWatcher(String namespace) {
+            this.namespace = namespace;
+        }
+
+        @Override
+        public void eventReceived(Action action, Event event) {
+            if (action != Action.ADDED && action != Action.MODIFIED) {
+                return;
+            }
+            PodTimeline.Entry entry = toEntry(event);
+            if (entry != null && isAgent(event.getInvolvedObject().getName())) {
+                add(new Received(event.getInvolvedObject().getName(), event.getMetadata().getUid(), entry));
+            }
+        }
+
+        @Override
+        public void onClose(KubernetesClientException cause) {
+            onWatchClosed(namespace, cause);
+        }
+    }
+
+    /**
+     * An event in the ring.
+     */
+    private static class Received {
+        final String podName;
+        /** Null for the events of the agent */
+        @CheckForNull
+        final String uid;
+        final PodTimeline.Entry entry;
+
+        Received(String podName, @CheckForNull String uid, PodTimeline.Entry entry) {
+            this.podName = podName;
+            this.uid = uid;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.KubernetesCloud.*;
+import static org.csanchez.jenkins.plugins.kubernetes.PodTemplateUtils.*;
+import static org.csanchez.jenkins.plugins.kubernetes.ResourceQuantities.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.StringUtils;
+
+import io.fabric8.kubernetes.api.model.LimitRangeItem;
+import io.fabric8.kubernetes.api.model.Quantity;
+
+/**
+ * Resources requested and limited by the containers of a pod built from a {@link PodTemplate}, including the jnlp
+ * container added by the plugin when the template does not define one.
+ *
+ * @since 0.13
+ */
+public class PodResources {
+
+    private static final Logger LOGGER = Logger.getLogger(PodResources.class.getName());
+
+    private final List<ContainerResources> containers;
+
+    PodResources(List<ContainerResources> containers) {
+        this.containers = Collections.unmodifiableList(containers);
+    }
+
+    /**
+     * Adds up the requests of all the containers in the template.
+     * @param template an unwrapped template, see {@link PodTemplateUtils#unwrap(PodTemplate, String, java.util.Collection)}
+     */
+    public static PodResources of(@Nonnull PodTemplate template) {
+        return of(template, null);
+    }
+
+    /**
+     * Adds up the requests and limits of all the containers in the template, applying the defaults of a
+     * <code>LimitRange</code> to the containers that do not set them, the same way the API server would.
+     * @param template an unwrapped template, see {@link PodTemplateUtils#unwrap(PodTemplate, String, java.util.Collection)}
+     * @param defaults the <code>Container</code> item of the namespace limit range, if any
+     */
+    public static PodResources of(@Nonnull PodTemplate template, @CheckForNull LimitRangeItem defaults) {
+        List<ContainerResources> containers = new ArrayList<>();
+        boolean hasJnlp = false;
+        for (ContainerTemplate container : template.getContainers()) {
+            hasJnlp |= JNLP_NAME.equals(container.getName());
+            containers.add(new ContainerResources(container.getName(),
+                    valid(container.getResourceRequestCpu(), true, container, template),
+                    valid(container.getResourceRequestMemory(), false, container, template),
+                    valid(container.getResourceLimitCpu(), true, container, template),
+                    valid(container.getResourceLimitMemory(), false, container, template), defaults));
+        }
+        if (!hasJnlp) {
+            containers.add(new ContainerResources(JNLP_NAME, null, null, null, null, defaults));
+        }
+        return new PodResources(containers);
+    }
+
+    /**
+     * @return the quantity with the environment variables substituted, or null, as if not set, if it is invalid
+     */
+    @CheckForNull
+    private static String valid(@CheckForNull String quantity, boolean cpu, ContainerTemplate container,
+            PodTemplate template) {
+        String value = substituteEnv(quantity, null);
+        if (StringUtils.isBlank(value)) {
+            return value;
+        }
+        try {
+            if (cpu) {
+                parseCpu(value);
+            } else {
+                parseMemory(value);
+            }
+            return value;
+        } catch (NumberFormatException | ArithmeticException e) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid resource {0} in container {1} of template {2}: {3}",
+                    new Object[] { value, container.getName(), template.getName(), e.getMessage() });
+            return null;
+        }
+    }
+
+    @Nonnull
+    public List<ContainerResources> getContainers() {
+        return containers;
+    }
+
+    /**
+     * @return cpu request in millicores
+     */
+    public long getCpuRequest() {
+        return containers.stream().mapToLong(ContainerResources::getCpuRequest).sum();
+    }
+
+    /**
+     * @return memory request in bytes
+     */
+    public long getMemoryRequest() {
+        return containers.stream().mapToLong(ContainerResources::getMemoryRequest).sum();
+    }
+
+    /**
+     * @return cpu limit in millicores
+     */
+    public long getCpuLimit() {
+        return containers.stream().mapToLong(ContainerResources::getCpuLimit).sum();
+    }
+
+    /**
+     * @return memory limit in bytes
+     */
+    public long getMemoryLimit() {
+        return containers.stream().mapToLong(ContainerResources::getMemoryLimit).sum();
+    }
+
+    /**
+     * @return whether every container has a cpu request, as required by quotas on <code>requests.cpu</code>
+     */
+    public boolean isCpuRequested() {
+        return containers.stream().allMatch(c -> c.getCpuRequest() > 0);
+    }
+
+    /**
+     * @return whether every container has a memory request, as required by quotas on <code>requests.memory</code>
+     */
+    public boolean isMemoryRequested() {
+        return containers.stream().allMatch(c -> c.getMemoryRequest() > 0);
+    }
+
+    /**
+     * @return whether every container has a cpu limit, as required by quotas on <code>limits.cpu</code>
+     */
+    public boolean isCpuLimited() {
+        return containers.stream().allMatch(c -> c.getCpuLimit() > 0);
+    }
+
+    /**
+     * @return whether every container has a memory limit, as required by quotas on <code>limits.memory</code>
+     */
+    public boolean isMemoryLimited() {
+        return containers.stream().allMatch(c -> c.getMemoryLimit() > 0);
+    }
+
+    /**
+     * @return whether no container requests or limits any cpu or memory, which makes the pod best effort
+     */
+    public boolean isBestEffort() {
+        return containers.stream().allMatch(c -> c.getCpuRequest() == 0 && c.getMemoryRequest() == 0
+                && c.getCpuLimit() == 0 && c.getMemoryLimit() == 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PodResources requests: %s cpu %s memory, limits: %s cpu %s memory",
+                formatCpu(getCpuRequest()), formatMemory(getMemoryRequest()), formatCpu(getCpuLimit()),
+                formatMemory(getMemoryLimit()));
+    }
+
+    /**
+     * Effective resources of a single container, 0 when not set.
+     */
+    public static class ContainerResources {
+        private final String name;
+        private final long cpuRequest;
+        private final long memoryRequest;
+        private final long cpuLimit;
+        private final long memoryLimit;
+
+        ContainerResources(String name, String cpuRequest, String memoryRequest, String cpuLimit,
+                String memoryLimit, @CheckForNull LimitRangeItem defaults) {
+            this.name = name;
+            Map<String, Quantity> defaultLimits = defaults == null ? null : defaults.getDefault();
+            Map<String, Quantity> defaultRequests = defaults == null ? null : defaults.getDefaultRequest();
+            this.cpuLimit = StringUtils.isNotBlank(cpuLimit) ? parseCpu(cpuLimit) : get(defaultLimits, CPU);
+            this.memoryLimit = StringUtils.isNotBlank(memoryLimit) ? parseMemory(memoryLimit) : get(defaultLimits, MEMORY);
+            // when there is no request the API server uses the default request, or else the limit
+            long defaultCpuRequest = get(defaultRequests, CPU);
+            long defaultMemoryRequest = get(defaultRequests, MEMORY);
+            this.cpuRequest = StringUtils.isNotBlank(cpuRequest) ? parseCpu(cpuRequest)
+                    : defaultCpuRequest > 0 ? defaultCpuRequest : this.cpuLimit;
+            this.memoryRequest = StringUtils.isNotBlank(memoryRequest) ? parseMemory(memoryRequest)
+                    : defaultMemoryRequest > 0 ? defaultMemoryRequest : this.memoryLimit;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCpuRequest() {
+            return cpuRequest;
+        }
+
+        public long getMemoryRequest() {
+            return memoryRequest;
+        }
+
+        public long getCpuLimit() {
+            return cpuLimit;
+        }
+
+        public long getMemoryLimit() {
+            return memoryLimit;
+        }
+    }
+}
@@ -86,6 +86,12 @@ public class PodTemplate extends AbstractDescribableImpl<PodTemplate> implements
 
     private String resourceLimitMemory;
 
+    private boolean prePull;
+
+    private boolean shareProcessNamespace;
+
+    private boolean archiveContainerLogs;
+
     private boolean customWorkspaceVolumeEnabled;
     private WorkspaceVolume workspaceVolume;
 
@@ -120,6 +126,9 @@ public class PodTemplate extends AbstractDescribableImpl<PodTemplate> implements
         this.setSlaveConnectTimeout(from.getSlaveConnectTimeout());
         this.setVolumes(from.getVolumes());
         this.setWorkspaceVolume(from.getWorkspaceVolume());
+        this.setPrePull(from.isPrePull());
+        this.setShareProcessNamespace(from.isShareProcessNamespace());
+        this.setArchiveContainerLogs(from.isArchiveContainerLogs());
     }
 
     @Deprecated
@@ -505,6 +514,41 @@ public class PodTemplate extends AbstractDescribableImpl<PodTemplate> implements
         this.customWorkspaceVolumeEnabled = customWorkspaceVolumeEnabled;
     }
 
+    public boolean isPrePull() {
+        return prePull;
+    }
+
+    @DataBoundSetter
+    public void setPrePull(boolean prePull) {
+        this.prePull = prePull;
+    }
+
+    /**
+     * @return whether the containers of the pod share a process namespace, so commands run in them from the agent
+     *         without going through the API server
+     */
+    public boolean isShareProcessNamespace() {
+        return shareProcessNamespace;
+    }
+
+    @DataBoundSetter
+    public void setShareProcessNamespace(boolean shareProcessNamespace) {
+        this.shareProcessNamespace = shareProcessNamespace;
+    }
+
+    /**
+     * @return whether the logs of the containers are archived with the last build of the agent before the pod is
+     *         deleted
+     */
+    public boolean isArchiveContainerLogs() {
+        return archiveContainerLogs;
+    }
+
+    @DataBoundSetter
+    public void setArchiveContainerLogs(boolean archiveContainerLogs) {
+        this.archiveContainerLogs = archiveContainerLogs;
+    }
+
     public WorkspaceVolume getWorkspaceVolume() {
         return workspaceVolume;
     }
@@ -10,6 +10,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,13 +24,20 @@ import org.csanchez.jenkins.plugins.kubernetes.volumes.workspace.WorkspaceVolume
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 
+import hudson.Util;
 import hudson.model.Label;
 import hudson.model.Node;
 import hudson.tools.ToolLocationNodeProperty;
+import hudson.util.XStream2;
 
 public class PodTemplateUtils {
 
+    private static final Logger LOGGER = Logger.getLogger(PodTemplateUtils.class.getName());
+
+    private static final XStream2 XSTREAM = new XStream2();
+
     private static final String PLACEHOLDER_KEY = "key";
     private static final String PLACEHOLDER_FORMAT = "\\$\\{%s\\}";
     private static final String PLACEHOLDER_REGEX = String.format(PLACEHOLDER_FORMAT, "(?<" + PLACEHOLDER_KEY + ">[a-zA-Z0-9_]+)");
@@ -131,6 +140,8 @@ public class PodTemplateUtils {
         podTemplate.setImagePullSecrets(new ArrayList<>(imagePullSecrets));
         podTemplate.setNodeProperties(toolLocationNodeProperties);
         podTemplate.setNodeUsageMode(nodeUsageMode);
+        podTemplate.setShareProcessNamespace(parent.isShareProcessNamespace() || template.isShareProcessNamespace());
+        podTemplate.setArchiveContainerLogs(parent.isArchiveContainerLogs() || template.isArchiveContainerLogs());
 
         return podTemplate;
     }
@@ -269,6 +280,41 @@ public class PodTemplateUtils {
         return s;
     }
 
+    /**
+     * Parses a node selector in the format used by {@link PodTemplate#getNodeSelector()}.
+     * @param selectors     The selectors, in the format 'label1=value1,label2=value2'.
+     * @return              The map of node labels to values.
+     */
+    public static Map<String, String> getNodeSelectorMap(String selectors) {
+        if (Strings.isNullOrEmpty(selectors)) {
+            return ImmutableMap.of();
+        } else {
+            ImmutableMap.Builder<String, String> builder = ImmutableMap.<String, String> builder();
+
+            for (String selector : selectors.split(",")) {
+                String[] parts = selector.split("=");
+                if (parts.length == 2 && !parts[0].isEmpty() && !parts[1].isEmpty()) {
+                    builder = builder.put(parts[0], substituteEnv(parts[1]));
+                } else {
+                    LOGGER.log(Level.WARNING, "Ignoring selector '" + selector
+                            + "'. Selectors must be in the format 'label1=value1,label2=value2'.");
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Computes a hash of everything that defines the pods of a template, so that identical templates defined in
+     * different places can be recognized: containers, volumes, env vars, service account, node selector, image pull
+     * secrets and the rest of the template settings.
+     * @param template  The unwrapped template, before it is given a name.
+     * @return          The hash, as hex.
+     */
+    public static String getTemplateHash(@Nonnull PodTemplate template) {
+        return Util.getDigestOf(XSTREAM.toXML(template));
+    }
+
     private static List<TemplateEnvVar> combineEnvVars(ContainerTemplate parent, ContainerTemplate template) {
         List<TemplateEnvVar> combinedEnvVars = new ArrayList<>();
         combinedEnvVars.addAll(parent.getEnvVars());
@@ -0,0 +1,199 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.Util;
+
+/**
+ * The startup of an agent pod, as told by its Kubernetes events and by the provisioning of the agent, with the time
+ * spent in each phase and pulling the image of each container.
+ *
+ * @since 0.13
+ */
+public class PodTimeline {
+
+    /** Reason of the entry recorded when the pod is submitted to the API server */
+    static final String SUBMITTED = "Submitted";
+    /** Reason of the entry recorded when the agent of the pod is connected */
+    static final String CONNECTED = "Connected";
+
+    private static final String SCHEDULED = "Scheduled";
+    private static final String PULLING = "Pulling";
+    private static final String PULLED = "Pulled";
+    private static final String STARTED = "Started";
+
+    private final List<Entry> entries;
+
+    public PodTimeline(@Nonnull List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(Entry::getTime));
+        this.entries = Collections.unmodifiableList(sorted);
+    }
+
+    @Nonnull
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the time of an entry since the first one, formatted
+     */
+    @Nonnull
+    public String getOffset(@Nonnull Entry entry) {
+        return entries.isEmpty() ? "" : "+" + Util.getTimeSpanString(entry.getTime() - entries.get(0).getTime());
+    }
+
+    /**
+     * @return the duration of each known phase of the startup in milliseconds, in order
+     */
+    @Nonnull
+    public Map<String, Long> getPhaseDurations() {
+        Entry submitted = first(SUBMITTED);
+        Entry scheduled = first(SCHEDULED);
+        Entry pulling = first(PULLING);
+        Entry pulled = last(PULLED);
+        Entry started = last(STARTED);
+        Entry connected = first(CONNECTED);
+
+        Map<String, Long> phases = new LinkedHashMap<>();
+        putDuration(phases, "Scheduling", submitted, scheduled);
+        putDuration(phases, "Pulling images", pulling, pulled);
+        Entry ready = pulled != null && (scheduled == null || pulled.getTime() > scheduled.getTime()) ? pulled
+                : scheduled;
+        putDuration(phases, "Starting containers", ready, started);
+        putDuration(phases, "Connecting the agent", started, connected);
+        putDuration(phases, "Total", submitted, connected);
+        return phases;
+    }
+
+    /**
+     * @return the time spent pulling the image of each container in milliseconds, for the images that were pulled
+     */
+    @Nonnull
+    public Map<String, Long> getImagePullDurations() {
+        Map<String, Long> pullStarts = new TreeMap<>();
+        Map<String, Long> durations = new TreeMap<>();
+        for (Entry entry : entries) {
+            if (entry.getContainer() == null) {
+                continue;
+            }
+            if (PULLING.equals(entry.getReason())) {
+                pullStarts.putIfAbsent(entry.getContainer(), entry.getTime());
+            } else if (PULLED.equals(entry.getReason())) {
+                Long start = pullStarts.remove(entry.getContainer());
+                if (start != null) {
+                    durations.put(entry.getContainer(), entry.getTime() - start);
+                }
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * @return {@link #getPhaseDurations()} formatted
+     */
+    @Nonnull
+    public Map<String, String> getPhases() {
+        return format(getPhaseDurations());
+    }
+
+    /**
+     * @return {@link #getImagePullDurations()} formatted
+     */
+    @Nonnull
+    public Map<String, String> getImagePulls() {
+        return format(getImagePullDurations());
+    }
+
+    private static Map<String, String> format(Map<String, Long> durations) {
+        Map<String, String> formatted = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            formatted.put(entry.getKey(), Util.getTimeSpanString(entry.getValue()));
+        }
+        return formatted;
+    }
+
+    private static void putDuration(Map<String, Long> phases, String phase, @CheckForNull Entry from,
+            @CheckForNull Entry to) {
+        if (from != null && to != null && to.getTime() >= from.getTime()) {
+            phases.put(phase, to.getTime() - from.getTime());
+        }
+    }
+
+    @CheckForNull
+    private Entry first(String reason) {
+        for (Entry entry : entries) {
+            if (reason.equals(entry.getReason())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @CheckForNull
+    private Entry last(String reason) {
+        Entry last = null;
+        for (Entry entry : entries) {
+            if (reason.equals(entry.getReason())) {
+                last = entry;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * An event of the pod.
+     */
+    public static class Entry {
+        private final long time;
+        private final String reason;
+        private final String message;
+        @CheckForNull
+        private final String container;
+        private final int count;
+
+        public Entry(long time, String reason, String message, @CheckForNull String container, int count) {
+            this.time = time;
+            this.reason = reason;
+            this.message = message;
+            this.container = container;
+            this.count = count;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return the container the event is about, null if it is about the pod
+         */
+        @CheckForNull
+        public String getContainer() {
+            return container;
+        }
+
+        /**
+         * @return how many times the event happened, as for repeated back offs
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.TransientComputerActionFactory;
+
+/**
+ * Shows the {@link PodTimeline} of an agent pod, on the build that waited for it and, while the pod is running, on
+ * its {@link KubernetesComputer}.
+ *
+ * @since 0.13
+ */
+public class PodTimelineAction implements Action {
+
+    private final String podName;
+    private final PodTimeline timeline;
+
+    public PodTimelineAction(@Nonnull String podName, @Nonnull PodTimeline timeline) {
+        this.podName = podName;
+        this.timeline = timeline;
+    }
+
+    public String getPodName() {
+        return podName;
+    }
+
+    public PodTimeline getTimeline() {
+        return timeline;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Pod Timeline";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "podTimeline";
+    }
+
+    /**
+     * Adds the current timeline of the pod to each {@link KubernetesComputer}.
+     */
+    @Extension
+    public static class ComputerActionFactory extends TransientComputerActionFactory {
+        @Override
+        public Collection<? extends Action> createFor(Computer target) {
+            if (!(target instanceof KubernetesComputer)) {
+                return Collections.emptyList();
+            }
+            KubernetesSlave node = ((KubernetesComputer) target).getNode();
+            PodEvents events = node == null || node.getCloudName() == null ? null
+                    : PodEvents.peek(node.getCloudName());
+            if (events == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new PodTimelineAction(node.getNodeName(),
+                    events.getTimeline(node.getNodeName())));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Joiner;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import jenkins.model.Jenkins;
+
+/**
+ * Samples the demand for the agents of every pod template of the clouds with predictive provisioning enabled, and
+ * provisions ahead of the demand forecast by the {@link DemandHistory}, up to
+ * {@link KubernetesCloud#getMaxPredictedAgents()} agents more than the current demand. The agents are kept idle for
+ * the forecast horizon at least, and no more are provisioned for a template while the previous ones are starting.
+ *
+ * @since 0.13
+ */
+@Extension
+public class PredictiveProvisioner extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(PredictiveProvisioner.class.getName());
+
+    /** How far ahead to look at the forecast */
+    private static final long HORIZON = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(PredictiveProvisioner.class.getName() + ".horizonMinutes", 15));
+
+    /** Agents provisioned ahead of the demand and not connected yet, by cloud and label */
+    private final Map<String, List<NodeProvisioner.PlannedNode>> planned = new ConcurrentHashMap<>();
+
+    public PredictiveProvisioner() {
+        super("Kubernetes predictive provisioning");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        DemandHistory history = null;
+        long now = System.currentTimeMillis();
+        Queue.Item[] items = jenkins.getQueue().getItems();
+        for (Cloud cloud : jenkins.clouds) {
+            if (!(cloud instanceof KubernetesCloud) || ((KubernetesCloud) cloud).getMaxPredictedAgents() <= 0) {
+                continue;
+            }
+            KubernetesCloud kubernetesCloud = (KubernetesCloud) cloud;
+            if (history == null) {
+                history = DemandHistory.get();
+            }
+            for (PodTemplate template : kubernetesCloud.getTemplates()) {
+                if (template.getLabelSet().isEmpty()) {
+                    continue;
+                }
+                Label label = getLabel(template);
+                int queued = 0;
+                for (Queue.Item item : items) {
+                    if (item.isBuildable() && item.getAssignedLabel() != null
+                            && item.getAssignedLabel().matches(template.getLabelSet())) {
+                        queued++;
+                    }
+                }
+                int agents = 0, busy = 0;
+                for (Node node : label.getNodes()) {
+                    if (node instanceof KubernetesSlave
+                            && kubernetesCloud.name.equals(((KubernetesSlave) node).getCloudName())) {
+                        agents++;
+                        Computer computer = node.toComputer();
+                        if (computer != null) {
+                            busy += computer.countBusy();
+                        }
+                    }
+                }
+                int demand = queued + busy;
+                String key = getKey(kubernetesCloud, template);
+                history.record(key, now, demand);
+
+                int forecast = (int) Math.ceil(
+                        Math.max(history.forecast(key, now), history.forecast(key, now + HORIZON)));
+                provisionAhead(kubernetesCloud, template, label, forecast, demand, agents);
+            }
+        }
+        if (history != null) {
+            history.save();
+        }
+    }
+
+    /**
+     * Provisions the agents missing for a forecast demand, unless the agents provisioned for it earlier are still
+     * starting, as those are not all counted as agents yet.
+     *
+     * @param agents the agents of the template in Jenkins
+     * @return the number of agents provisioned
+     */
+    int provisionAhead(@Nonnull KubernetesCloud cloud, @Nonnull PodTemplate template, @Nonnull Label label,
+            int forecast, int demand, int agents) {
+        String key = getKey(cloud, template);
+        List<NodeProvisioner.PlannedNode> starting = planned.getOrDefault(key, Collections.emptyList()).stream()
+                .filter(node -> !node.future.isDone()).collect(Collectors.toList());
+        if (!starting.isEmpty()) {
+            planned.put(key, starting);
+            LOGGER.log(Level.FINE, "{0} agents of template {1} provisioned ahead of the demand are still starting",
+                    new Object[] { starting.size(), template.getName() });
+            return 0;
+        }
+        planned.remove(key);
+        int target = Math.min(forecast, demand + cloud.getMaxPredictedAgents());
+        int missing = target - agents;
+        if (missing <= 0) {
+            return 0;
+        }
+        LOGGER.log(Level.INFO, "Provisioning {0} agents of template {1} ahead of a forecast demand of {2}",
+                new Object[] { missing, template.getName(), forecast });
+        Collection<NodeProvisioner.PlannedNode> nodes = cloud.provision(label, missing,
+                (int) TimeUnit.MILLISECONDS.toMinutes(HORIZON));
+        if (!nodes.isEmpty()) {
+            planned.put(key, new ArrayList<>(nodes));
+        }
+        return nodes.size();
+    }
+
+    private static Label getLabel(PodTemplate template) {
+        return Jenkins.getActiveInstance().getLabel(Joiner.on("&&").join(template.getLabelSet()));
+    }
+
+    private static String getKey(KubernetesCloud cloud, PodTemplate template) {
+        return cloud.name + "/" + getLabel(template).getExpression();
+    }
+
+    /**
+     * @return the demand forecast and its accuracy for the templates of a cloud, by label
+     */
+    @Nonnull
+    static Map<String, String> getForecasts(@Nonnull KubernetesCloud cloud) {
+        Map<String, String> forecasts = new LinkedHashMap<>();
+        if (cloud.getMaxPredictedAgents() <= 0) {
+            return forecasts;
+        }
+        DemandHistory history = DemandHistory.get();
+        long now = System.currentTimeMillis();
+        for (PodTemplate template : cloud.getTemplates()) {
+            if (template.getLabelSet().isEmpty()) {
+                continue;
+            }
+            String key = getKey(cloud, template);
+            forecasts.put(getLabel(template).getExpression(), String.format("%.1f agents in the next hour, %s",
+                    history.forecast(key, now + TimeUnit.HOURS.toMillis(1)), history.getAccuracy(key)));
+        }
+        return forecasts;
+    }
+}
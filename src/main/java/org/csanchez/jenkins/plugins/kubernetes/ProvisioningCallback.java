@@ -51,8 +51,12 @@ import javax.annotation.Nonnull;
 
 import org.apache.commons.lang.StringUtils;
 import org.csanchez.jenkins.plugins.kubernetes.model.TemplateEnvVar;
+import org.csanchez.jenkins.plugins.kubernetes.pipeline.ContainerExecDecorator;
 import org.csanchez.jenkins.plugins.kubernetes.pipeline.PodTemplateStepExecution;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.GitReferenceMirrorVolume;
 import org.csanchez.jenkins.plugins.kubernetes.volumes.PodVolume;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.PooledPersistentVolumeClaim;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.workspace.JobPersistentVolumeClaimWorkspaceVolume;
 import org.jenkinsci.plugins.durabletask.executors.OnceRetentionStrategy;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -66,6 +70,7 @@ import hudson.model.Label;
 import hudson.model.Node;
 import hudson.slaves.CloudRetentionStrategy;
 import hudson.slaves.RetentionStrategy;
+import io.fabric8.kubernetes.api.model.Affinity;
 import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.ContainerBuilder;
 import io.fabric8.kubernetes.api.model.ContainerPort;
@@ -102,7 +107,7 @@ class ProvisioningCallback implements Callable<Node> {
 
     private static final String DEFAULT_JNLP_ARGUMENTS = "${computer.jnlpmac} ${computer.name}";
 
-    private static final String DEFAULT_JNLP_IMAGE = System
+    static final String DEFAULT_JNLP_IMAGE = System
             .getProperty(PodTemplateStepExecution.class.getName() + ".defaultImage", "jenkinsci/jnlp-slave:alpine");
 
     private static final String JNLPMAC_REF = "\\$\\{computer.jnlpmac\\}";
@@ -114,18 +119,55 @@ class ProvisioningCallback implements Callable<Node> {
     private final PodTemplate t;
     @CheckForNull
     private final Label label;
+    @CheckForNull
+    private final InstanceCaps.Reservation reservation;
+    /** How long the agent is kept idle at least, 0 for the retention of the template */
+    private final int minIdleMinutes;
+    private boolean released;
+
+    /** Normalized images of the pod and how many of them each node had when the pod was created */
+    private List<String> images;
+    private Map<String, Integer> presentImagesByNode;
 
     public ProvisioningCallback(@Nonnull KubernetesCloud cloud, @Nonnull PodTemplate t, @CheckForNull Label label) {
+        this(cloud, t, label, null);
+    }
+
+    /**
+     * @param reservation room reserved for the pod within the instance caps, released once it is created
+     */
+    public ProvisioningCallback(@Nonnull KubernetesCloud cloud, @Nonnull PodTemplate t, @CheckForNull Label label,
+            @CheckForNull InstanceCaps.Reservation reservation) {
+        this(cloud, t, label, reservation, 0);
+    }
+
+    /**
+     * @param minIdleMinutes how long the agent is kept idle at least, as when it is provisioned ahead of the demand
+     */
+    ProvisioningCallback(@Nonnull KubernetesCloud cloud, @Nonnull PodTemplate t, @CheckForNull Label label,
+            @CheckForNull InstanceCaps.Reservation reservation, int minIdleMinutes) {
         this.cloud = cloud;
         this.t = t;
         this.label = label;
+        this.reservation = reservation;
+        this.minIdleMinutes = minIdleMinutes;
     }
 
     public Node call() throws Exception {
         KubernetesSlave slave = null;
         RetentionStrategy retentionStrategy = null;
+        long start = System.currentTimeMillis();
         try {
-            if (t.getIdleMinutes() == 0) {
+            if (minIdleMinutes > 0) {
+                // not used before the demand it was provisioned for arrives
+                retentionStrategy = t.getIdleMinutes() == 0
+                        ? new OnceRetentionStrategy(Math.max(minIdleMinutes, cloud.getRetentionTimeout()))
+                        : new CloudRetentionStrategy(Math.max(minIdleMinutes, t.getIdleMinutes()));
+            } else if (cloud.isDemandAwareRetention() && t.getIdleMinutes() > 0) {
+                // not the templates used once, as those of the podTemplate step removed when their run ends
+                retentionStrategy = new DemandAwareRetentionStrategy(cloud.name, t.getName(),
+                        t.getSlaveConnectTimeout());
+            } else if (t.getIdleMinutes() == 0) {
                 retentionStrategy = new OnceRetentionStrategy(cloud.getRetentionTimeout());
             } else {
                 retentionStrategy = new CloudRetentionStrategy(t.getIdleMinutes());
@@ -140,14 +182,19 @@ class ProvisioningCallback implements Callable<Node> {
             Jenkins.getActiveInstance().addNode(slave);
 
             KubernetesClient client = cloud.connect();
-            Pod pod = getPodTemplate(slave, unwrappedTemplate);
+            String namespace = Strings.isNullOrEmpty(t.getNamespace()) ? client.getNamespace() : t.getNamespace();
+            Pod pod = getPodTemplate(slave, unwrappedTemplate, client, namespace);
 
             String podId = pod.getMetadata().getName();
-            String namespace = Strings.isNullOrEmpty(t.getNamespace()) ? client.getNamespace() : t.getNamespace();
+
+            PodEvents events = PodEvents.get(cloud);
+            events.watch(client, namespace);
+            events.record(podId, PodTimeline.SUBMITTED, "Submitted pod to namespace " + namespace);
 
             LOGGER.log(Level.FINE, "Creating Pod: {0} in namespace {1}", new Object[] { podId, namespace });
             pod = client.pods().inNamespace(namespace).create(pod);
             LOGGER.log(Level.INFO, "Created Pod: {0} in namespace {1}", new Object[] { podId, namespace });
+            releaseReservation(true);
 
             // We need the pod to be running and connected before returning
             // otherwise this method keeps being called multiple times
@@ -207,6 +254,7 @@ class ProvisioningCallback implements Callable<Node> {
             if (!validStates.contains(status)) {
                 throw new IllegalStateException("Container is not running after " + j + " attempts, status: " + status);
             }
+            recordImageLocality(pod);
 
             j = t.getSlaveConnectTimeout();
 
@@ -227,9 +275,17 @@ class ProvisioningCallback implements Callable<Node> {
                 }
                 throw new IllegalStateException("Slave is not connected after " + j + " attempts, status: " + status);
             }
+            events.record(podId, PodTimeline.CONNECTED, "Agent connected");
+            TemplateUsage.get(cloud.name, t.getName()).recordStartup(System.currentTimeMillis() - start);
+            CloudHealth.get(cloud.name).recordSuccess(System.currentTimeMillis() - start);
 
             return slave;
         } catch (Throwable ex) {
+            releaseReservation(false);
+            // a bad template or image says nothing about the health of the cluster
+            if (CloudHealth.isClusterFailure(ex)) {
+                CloudHealth.get(cloud.name).recordFailure();
+            }
             LOGGER.log(Level.SEVERE, "Error in provisioning; slave={0}, template={1}: {2}",
                     new Object[] { slave, t, ex.getMessage() });
             if (slave != null) {
@@ -240,6 +296,20 @@ class ProvisioningCallback implements Callable<Node> {
         }
     }
 
+    /**
+     * Releases the room reserved for the pod, either to count it as created or because it was never created.
+     */
+    private void releaseReservation(boolean created) {
+        if (reservation != null && !released) {
+            released = true;
+            if (created) {
+                reservation.created();
+            } else {
+                reservation.release();
+            }
+        }
+    }
+
      /**
       * Log the last lines of containers logs
       */
@@ -257,7 +327,7 @@ class ProvisioningCallback implements Callable<Node> {
                              : "";
                      LOGGER.log(Level.SEVERE,
                              "Error in provisioning; slave={0}, template={1}. Container {2}{3}. Logs: {4}",
-                             new Object[] { slave, t, containerName, msg, tailingLines.getLog() });
+                             new Object[] { slave, t, containerName, msg, log });
                  }
              } catch (UnrecoverableKeyException | CertificateEncodingException | NoSuchAlgorithmException
                      | KeyStoreException | IOException e) {
@@ -366,7 +436,7 @@ class ProvisioningCallback implements Callable<Node> {
     }
 
 
-    private Pod getPodTemplate(KubernetesSlave slave, PodTemplate template) {
+    private Pod getPodTemplate(KubernetesSlave slave, PodTemplate template, KubernetesClient client, String namespace) {
         if (template == null) {
             return null;
         }
@@ -375,19 +445,28 @@ class ProvisioningCallback implements Callable<Node> {
         List<Volume> volumes = new ArrayList<>();
         Map<String, VolumeMount> volumeMounts = new HashMap();
 
+        List<EnvVar> volumeEnvVars = new ArrayList<>();
+
         int i = 0;
         for (final PodVolume volume : template.getVolumes()) {
             final String volumeName = "volume-" + i;
             //We need to normalize the path or we can end up in really hard to debug issues.
             final String mountPath = substituteEnv(Paths.get(volume.getMountPath()).normalize().toString());
             if (!volumeMounts.containsKey(mountPath)) {
-                volumeMounts.put(mountPath, new VolumeMount(mountPath, volumeName, false, null));
-                volumes.add(volume.buildVolume(volumeName));
+                boolean mirror = volume instanceof GitReferenceMirrorVolume;
+                volumeMounts.put(mountPath, new VolumeMount(mountPath, volumeName, mirror, null));
+                volumes.add(buildVolume(volume, volumeName, slave, template, client, namespace));
+                if (mirror) {
+                    volumeEnvVars.addAll(((GitReferenceMirrorVolume) volume).getEnvVars(mountPath));
+                }
                 i++;
             }
         }
 
-        if (template.getWorkspaceVolume() != null) {
+        if (template.getWorkspaceVolume() instanceof JobPersistentVolumeClaimWorkspaceVolume) {
+            volumes.add(buildJobWorkspaceVolume((JobPersistentVolumeClaimWorkspaceVolume) template.getWorkspaceVolume(),
+                    slave, client, namespace));
+        } else if (template.getWorkspaceVolume() != null) {
             volumes.add(template.getWorkspaceVolume().buildVolume(WORKSPACE_VOLUME_NAME));
         } else {
             // add an empty volume to share the workspace across the pod
@@ -407,9 +486,30 @@ class ProvisioningCallback implements Callable<Node> {
             containers.put(JNLP_NAME, createContainer(slave, containerTemplate, template.getEnvVars(), volumeMounts.values()));
         }
 
+        if (!volumeEnvVars.isEmpty()) {
+            EnvVar[] envVars = volumeEnvVars.toArray(new EnvVar[volumeEnvVars.size()]);
+            containers.replaceAll((name, container) -> new ContainerBuilder(container).addToEnv(envVars).build());
+        }
+
+        if (template.isShareProcessNamespace()) {
+            // lets the agent find the processes of each container
+            containers.replaceAll((name, container) -> new ContainerBuilder(container)
+                    .addToEnv(new EnvVar(ContainerExecDecorator.CONTAINER_NAME_VAR, name, null)).build());
+        }
+
+        Affinity affinity = null;
+        if (cloud.isImageLocality()) {
+            images = containers.values().stream().map(c -> ImageLocality.normalize(c.getImage())).distinct()
+                    .collect(Collectors.toList());
+            ClusterCapacity capacity = ClusterCapacity.get(cloud);
+            presentImagesByNode = capacity.countPresentImagesByNode(images);
+            affinity = ImageLocality.getAffinity(
+                    capacity.getImageBytesByNode(images, getNodeSelectorMap(template.getNodeSelector())));
+        }
+
         List<LocalObjectReference> imagePullSecrets = template.getImagePullSecrets().stream()
                 .map((x) -> x.toLocalObjectReference()).collect(Collectors.toList());
-        return new PodBuilder()
+        Pod pod = new PodBuilder()
                 .withNewMetadata()
                 .withName(substituteEnv(slave.getNodeName()))
                 .withLabels(cloud.getLabelsMap(template.getLabelSet()))
@@ -421,9 +521,57 @@ class ProvisioningCallback implements Callable<Node> {
                 .withImagePullSecrets(imagePullSecrets)
                 .withContainers(containers.values().toArray(new Container[containers.size()]))
                 .withNodeSelector(getNodeSelectorMap(template.getNodeSelector()))
+                .withAffinity(affinity)
                 .withRestartPolicy("Never")
                 .endSpec()
                 .build();
+        if (template.isShareProcessNamespace()) {
+            // not in the model of this client version yet
+            pod.getSpec().setAdditionalProperty("shareProcessNamespace", true);
+        }
+        return pod;
+    }
+
+    /**
+     * Records how many of the pod images were already present on the node it was scheduled on.
+     */
+    private void recordImageLocality(Pod pod) {
+        if (images == null || presentImagesByNode == null || pod.getSpec() == null) {
+            return;
+        }
+        Integer present = presentImagesByNode.get(pod.getSpec().getNodeName());
+        if (present == null) {
+            return;
+        }
+        LOGGER.log(Level.FINE, "Pod {0} scheduled on node {1} with {2} of {3} images present",
+                new Object[] { pod.getMetadata().getName(), pod.getSpec().getNodeName(), present, images.size() });
+        ImageLocality.record(cloud.name, t.getName(), present, images.size());
+    }
+
+    /**
+     * Builds a volume, leasing a claim for the pooled ones.
+     */
+    private Volume buildVolume(PodVolume volume, String volumeName, KubernetesSlave slave, PodTemplate template,
+            KubernetesClient client, String namespace) {
+        if (!(volume instanceof PooledPersistentVolumeClaim)) {
+            return volume.buildVolume(volumeName);
+        }
+        PooledPersistentVolumeClaim pooled = (PooledPersistentVolumeClaim) volume;
+        String claimName = PersistentVolumeClaimPool.lease(client, namespace,
+                PersistentVolumeClaimPool.getPoolId(pooled), pooled, slave.getNodeName());
+        return claimName == null ? pooled.buildVolume(volumeName) : pooled.buildVolume(volumeName, claimName);
+    }
+
+    /**
+     * Builds the workspace volume of the job of the template, leasing its claim if it is free.
+     */
+    private Volume buildJobWorkspaceVolume(JobPersistentVolumeClaimWorkspaceVolume volume, KubernetesSlave slave,
+            KubernetesClient client, String namespace) {
+        String jobName = volume.getJobName();
+        String claimName = jobName == null ? null
+                : JobWorkspaceClaims.lease(client, namespace, volume, jobName, slave.getNodeName());
+        return claimName == null ? volume.buildVolume(WORKSPACE_VOLUME_NAME)
+                : volume.buildVolume(WORKSPACE_VOLUME_NAME, claimName);
     }
 
     private Map<String, Quantity> getResourcesMap(String memory, String cpu) {
@@ -451,25 +599,6 @@ class ProvisioningCallback implements Callable<Node> {
         return builder.build();
     }
 
-    private Map<String, String> getNodeSelectorMap(String selectors) {
-        if (Strings.isNullOrEmpty(selectors)) {
-            return ImmutableMap.of();
-        } else {
-            ImmutableMap.Builder<String, String> builder = ImmutableMap.<String, String> builder();
-
-            for (String selector : selectors.split(",")) {
-                String[] parts = selector.split("=");
-                if (parts.length == 2 && !parts[0].isEmpty() && !parts[1].isEmpty()) {
-                    builder = builder.put(parts[0], substituteEnv(parts[1]));
-                } else {
-                    LOGGER.log(Level.WARNING, "Ignoring selector '" + selector
-                            + "'. Selectors must be in the format 'label1=value1,label2=value2'.");
-                }
-            }
-            return builder.build();
-        }
-    }
-
     /**
      * Split a command in the parts that Docker need
      *
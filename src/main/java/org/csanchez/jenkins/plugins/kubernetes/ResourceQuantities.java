@@ -0,0 +1,120 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.commons.lang.StringUtils;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+
+/**
+ * Parses Kubernetes resource quantities (<code>500m</code>, <code>2</code>, <code>512Mi</code>, <code>1G</code>...)
+ * into plain numbers so they can be compared and added up.
+ *
+ * @since 0.13
+ */
+public class ResourceQuantities {
+
+    public static final String CPU = "cpu";
+    public static final String MEMORY = "memory";
+    public static final String PODS = "pods";
+
+    private static final String[] BINARY_SUFFIXES = { "Ki", "Mi", "Gi", "Ti", "Pi", "Ei" };
+    private static final String[] DECIMAL_SUFFIXES = { "k", "M", "G", "T", "P", "E" };
+
+    private ResourceQuantities() {
+    }
+
+    /**
+     * Parses a cpu quantity.
+     * @param value the quantity, ie. <code>500m</code> or <code>0.5</code>
+     * @return the quantity in millicores, 0 if blank
+     * @throws NumberFormatException if the value is not a valid quantity
+     */
+    public static long parseCpu(@CheckForNull String value) {
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        String s = value.trim();
+        BigDecimal multiplier = BigDecimal.valueOf(1000);
+        if (s.endsWith("m")) {
+            multiplier = BigDecimal.ONE;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("u")) {
+            multiplier = new BigDecimal("0.001");
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("n")) {
+            multiplier = new BigDecimal("0.000001");
+            s = s.substring(0, s.length() - 1);
+        }
+        return new BigDecimal(s).multiply(multiplier).setScale(0, BigDecimal.ROUND_CEILING).longValueExact();
+    }
+
+    /**
+     * Parses a memory (or any other byte based) quantity.
+     * @param value the quantity, ie. <code>512Mi</code> or <code>1G</code>
+     * @return the quantity in bytes, 0 if blank
+     * @throws NumberFormatException if the value is not a valid quantity
+     */
+    public static long parseMemory(@CheckForNull String value) {
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        String s = value.trim();
+        BigDecimal multiplier = BigDecimal.ONE;
+        for (int i = 0; i < BINARY_SUFFIXES.length; i++) {
+            if (s.endsWith(BINARY_SUFFIXES[i])) {
+                multiplier = BigDecimal.valueOf(2).pow(10 * (i + 1));
+                s = s.substring(0, s.length() - 2);
+                break;
+            }
+            if (s.endsWith(DECIMAL_SUFFIXES[i])) {
+                multiplier = BigDecimal.TEN.pow(3 * (i + 1));
+                s = s.substring(0, s.length() - 1);
+                break;
+            }
+        }
+        if (s.endsWith("m")) {
+            // millibytes are valid, if odd
+            multiplier = new BigDecimal("0.001");
+            s = s.substring(0, s.length() - 1);
+        }
+        return new BigDecimal(s).multiply(multiplier).setScale(0, BigDecimal.ROUND_CEILING).longValueExact();
+    }
+
+    /**
+     * Parses a plain count quantity, such as the number of pods.
+     */
+    public static long parseCount(@CheckForNull String value) {
+        return parseMemory(value);
+    }
+
+    /**
+     * @return the amount of the given resource in the map, parsed as millicores for cpu and as a plain number for
+     *         everything else. 0 if not present.
+     */
+    public static long get(@CheckForNull Map<String, Quantity> resources, String name) {
+        if (resources == null) {
+            return 0;
+        }
+        Quantity quantity = resources.get(name);
+        if (quantity == null) {
+            return 0;
+        }
+        return isCpu(name) ? parseCpu(quantity.getAmount()) : parseMemory(quantity.getAmount());
+    }
+
+    private static boolean isCpu(String name) {
+        return CPU.equals(name) || name.endsWith("." + CPU);
+    }
+
+    public static String formatCpu(long millis) {
+        return BigDecimal.valueOf(millis, 3).stripTrailingZeros().toPlainString();
+    }
+
+    public static String formatMemory(long bytes) {
+        return String.format("%dMi", bytes / (1024 * 1024));
+    }
+}
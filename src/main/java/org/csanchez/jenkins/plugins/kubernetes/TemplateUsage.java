@@ -0,0 +1,146 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+/**
+ * Recent usage of the agents of a pod template: how often builds that can run on them arrive, how long they take
+ * to start and how often a build reuses an agent instead of getting a new one.
+ *
+ * @since 0.13
+ */
+public class TemplateUsage {
+
+    /** Window to compute the arrival rate over */
+    private static final long WINDOW = TimeUnit.MINUTES.toMillis(30);
+
+    /** Startup time assumed until one is measured */
+    private static final long DEFAULT_STARTUP = TimeUnit.MINUTES.toMillis(1);
+
+    /** Weight of the last startup in the moving average */
+    private static final double ALPHA = 0.2;
+
+    /** Usage by cloud name and template name */
+    private static final ConcurrentMap<String, TemplateUsage> USAGES = new ConcurrentHashMap<>();
+
+    private final Deque<Long> arrivals = new ArrayDeque<>();
+    private double startup = -1;
+    private long tasks;
+    private long reusedTasks;
+
+    @Nonnull
+    static TemplateUsage get(@Nonnull String cloudName, @Nonnull String templateName) {
+        return USAGES.computeIfAbsent(cloudName + "/" + templateName, k -> new TemplateUsage());
+    }
+
+    synchronized void recordArrival(long time) {
+        arrivals.addLast(time);
+        prune(time);
+    }
+
+    /**
+     * @return builds arriving per minute over the last {@link #WINDOW}
+     */
+    synchronized double getArrivalRate(long now) {
+        prune(now);
+        return arrivals.size() / (double) TimeUnit.MILLISECONDS.toMinutes(WINDOW);
+    }
+
+    private void prune(long now) {
+        while (!arrivals.isEmpty() && arrivals.peekFirst() < now - WINDOW) {
+            arrivals.removeFirst();
+        }
+    }
+
+    synchronized void recordStartup(long millis) {
+        startup = startup < 0 ? millis : ALPHA * millis + (1 - ALPHA) * startup;
+    }
+
+    /**
+     * @return moving average of the time from provisioning to the agent being online, in minutes
+     */
+    synchronized double getStartupMinutes() {
+        return (startup < 0 ? DEFAULT_STARTUP : startup) / TimeUnit.MINUTES.toMillis(1);
+    }
+
+    synchronized void recordTask(boolean reused) {
+        tasks++;
+        if (reused) {
+            reusedTasks++;
+        }
+    }
+
+    /**
+     * Whether keeping an idle agent one more minute is worth it: the latency a build arriving in that minute would
+     * save, weighted by the probability of one arriving, against the cost of a minute of idle agent.
+     *
+     * @param idleCostFactor cost of a minute of idle agent relative to a minute of build latency
+     */
+    boolean isWorthKeeping(double idleCostFactor, long now) {
+        double arrivalProbability = 1 - Math.exp(-getArrivalRate(now));
+        return arrivalProbability * getStartupMinutes() >= idleCostFactor;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d%% of %d builds reused an agent, %.1f builds per minute, %.1f minutes to start",
+                tasks == 0 ? 0 : reusedTasks * 100 / tasks, tasks, getArrivalRate(System.currentTimeMillis()),
+                getStartupMinutes());
+    }
+
+    /**
+     * @return the usage of the templates of a cloud that had builds, as text by template name
+     */
+    @Nonnull
+    static Map<String, String> getUsages(@Nonnull String cloudName) {
+        Map<String, String> usages = new TreeMap<>();
+        String prefix = cloudName + "/";
+        for (Map.Entry<String, TemplateUsage> entry : USAGES.entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getValue().tasks > 0) {
+                usages.put(entry.getKey().substring(prefix.length()), entry.getValue().toString());
+            }
+        }
+        return usages;
+    }
+
+    /**
+     * Records the arrival of builds for the templates of the clouds using {@link DemandAwareRetentionStrategy}.
+     */
+    @Extension
+    public static class ArrivalListener extends QueueListener {
+        @Override
+        public void onEnterBuildable(Queue.BuildableItem item) {
+            if (item.getAssignedLabel() == null) {
+                return;
+            }
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Cloud cloud : jenkins.clouds) {
+                if (!(cloud instanceof KubernetesCloud) || !((KubernetesCloud) cloud).isDemandAwareRetention()) {
+                    continue;
+                }
+                for (PodTemplate template : ((KubernetesCloud) cloud).getTemplates()) {
+                    if (item.getAssignedLabel().matches(template.getLabelSet())) {
+                        get(cloud.name, template.getName()).recordArrival(now);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import java.io.Serializable;
+import java.util.Set;
+
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.google.common.collect.ImmutableSet;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+
+/**
+ * Copies a directory between the workspace and a container of the current pod, as a tar archive streamed through a
+ * single exec session.
+ *
+ * @since 0.13
+ */
+public class ContainerCopyStep extends Step implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final String containerPath;
+    private String workspacePath = "";
+    private boolean toContainer = false;
+    private boolean compress = false;
+
+    @DataBoundConstructor
+    public ContainerCopyStep(String name, String containerPath) {
+        this.name = name;
+        this.containerPath = containerPath;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContainerPath() {
+        return containerPath;
+    }
+
+    public String getWorkspacePath() {
+        return workspacePath;
+    }
+
+    @DataBoundSetter
+    public void setWorkspacePath(String workspacePath) {
+        this.workspacePath = workspacePath;
+    }
+
+    public boolean isToContainer() {
+        return toContainer;
+    }
+
+    @DataBoundSetter
+    public void setToContainer(boolean toContainer) {
+        this.toContainer = toContainer;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    @DataBoundSetter
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new ContainerCopyStepExecution(this, context);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "containerCopy";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Copy files between the workspace and a container in Kubernetes";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return false;
+        }
+
+        @Override
+        public boolean isAdvanced() {
+            return false;
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return ImmutableSet.of(Node.class, FilePath.class, TaskListener.class);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import static org.csanchez.jenkins.plugins.kubernetes.pipeline.Resources.closeQuietly;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.util.DirScanner;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+public class ContainerCopyStepExecution extends SynchronousNonBlockingStepExecution<Void> {
+    private static final long serialVersionUID = 1L;
+    private static final transient Logger LOGGER = Logger.getLogger(ContainerCopyStepExecution.class.getName());
+
+    private static final String EXIT_STATUS_TXT = "JENKINS_COPY_EXIT";
+    /** Prints the exit status of tar to the error output, the only way to get it from an exec without a terminal */
+    private static final String PRINT_EXIT_STATUS = "printf \"\\n%s %d\\n\" " + EXIT_STATUS_TXT + " $? >&2";
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final ContainerCopyStep step;
+    private transient KubernetesClient client;
+
+    ContainerCopyStepExecution(ContainerCopyStep step, StepContext context) {
+        super(context);
+        this.step = step;
+    }
+
+    @Override
+    protected Void run() throws Exception {
+        TaskListener listener = getContext().get(TaskListener.class);
+        PrintStream logger = listener.getLogger();
+        FilePath workspace = getContext().get(FilePath.class);
+        FilePath local = Util.fixEmpty(step.getWorkspacePath()) == null ? workspace
+                : workspace.child(step.getWorkspacePath());
+        String containerName = step.getName();
+        String containerPath = step.getContainerPath();
+        boolean compress = step.isCompress();
+        if (step.isToContainer() && compress) {
+            logger.println("Compression is not supported when copying to a container, copying uncompressed");
+            compress = false;
+        }
+
+        try {
+            LOGGER.log(Level.FINE, "Starting containerCopy step.");
+
+            KubernetesNodeContext nodeContext = new KubernetesNodeContext(getContext());
+            client = nodeContext.connectToCloud();
+            ContainerExecDecorator decorator = new ContainerExecDecorator(client, nodeContext.getPodName(),
+                    containerName, nodeContext.getNamespace());
+
+            CopyProgress progress = new CopyProgress(logger);
+            ExitStatusOutputStream err = new ExitStatusOutputStream(logger);
+            String[] command = getCommand(step.isToContainer(), compress, containerPath);
+            IOException failure = null;
+            if (step.isToContainer()) {
+                if (!local.isDirectory()) {
+                    throw new AbortException("Directory " + local.getRemote() + " does not exist");
+                }
+                logger.println("Copying " + local.getRemote() + " to " + containerPath + " in container ["
+                        + containerName + "]");
+                try {
+                    decorator.exec(in -> {
+                        local.tar(progress.wrap(in), new DirScanner.Full());
+                        // the archive is written asynchronously from the agent
+                        if (local.getChannel() instanceof Channel) {
+                            ((Channel) local.getChannel()).syncIO();
+                        }
+                    }, new NullOutputStream(), err, null, command);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            } else {
+                logger.println("Copying " + containerPath + " in container [" + containerName + "] to "
+                        + local.getRemote());
+                local.mkdirs();
+                PipedInputStream archive = new PipedInputStream(PIPE_SIZE);
+                PipedOutputStream archiveOut = new PipedOutputStream(archive);
+                FilePath.TarCompression compression = compress ? FilePath.TarCompression.GZIP
+                        : FilePath.TarCompression.NONE;
+                AtomicBoolean extractionFailed = new AtomicBoolean();
+                Future<?> extraction = Computer.threadPoolForRemoting.submit(() -> {
+                    try {
+                        local.untarFrom(progress.wrap(archive), compression);
+                    } catch (IOException | InterruptedException | RuntimeException e) {
+                        extractionFailed.set(true);
+                        throw e;
+                    } finally {
+                        // so tar is not left writing to a full pipe
+                        archive.close();
+                    }
+                    return null;
+                });
+                try {
+                    decorator.exec(null, archiveOut, err, extractionFailed::get, command);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (InterruptedException e) {
+                    extraction.cancel(true);
+                    throw e;
+                } finally {
+                    archiveOut.close();
+                }
+                try {
+                    extraction.get();
+                } catch (ExecutionException e) {
+                    // the cause of an aborted exec session
+                    failure = new IOException("Failed to extract the archive to " + local.getRemote(), e.getCause());
+                }
+            }
+            err.close();
+
+            Integer exitStatus = err.getExitStatus();
+            if (exitStatus != null && exitStatus != 0) {
+                throw new AbortException("Failed to copy files in container [" + containerName
+                        + "], tar exited with code " + exitStatus);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (exitStatus == null) {
+                throw new AbortException("Failed to copy files in container [" + containerName
+                        + "], the exec session closed before tar finished");
+            }
+            progress.finished();
+            return null;
+        } finally {
+            closeQuietly(getContext(), client);
+        }
+    }
+
+    @Override
+    public void stop(Throwable cause) throws Exception {
+        LOGGER.log(Level.FINE, "Stopping container copy step.");
+        try {
+            super.stop(cause);
+        } finally {
+            closeQuietly(getContext(), client);
+        }
+    }
+
+    /**
+     * @return the command running tar in the container, and printing its exit status
+     */
+    @Nonnull
+    static String[] getCommand(boolean toContainer, boolean compress, @Nonnull String containerPath) {
+        String script;
+        if (toContainer) {
+            // tar stops reading at the end of the archive, there is no end of input through an exec session
+            script = "mkdir -p \"$1\" && tar -xf - -C \"$1\"; " + PRINT_EXIT_STATUS;
+        } else {
+            script = "cd \"$1\" && tar -c" + (compress ? "z" : "") + "f - .; " + PRINT_EXIT_STATUS;
+        }
+        return new String[] { "sh", "-c", script, "sh", containerPath };
+    }
+
+    /**
+     * Copies the error output of tar to the build log, except for its exit status.
+     */
+    static class ExitStatusOutputStream extends OutputStream {
+        private static final Pattern EXIT_STATUS_LINE = Pattern.compile(EXIT_STATUS_TXT + " (\\d+)\\s*");
+
+        private final PrintStream logger;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private volatile Integer exitStatus;
+
+        ExitStatusOutputStream(PrintStream logger) {
+            this.logger = logger;
+        }
+
+        /**
+         * @return the exit status of tar, or null if it was not printed
+         */
+        @CheckForNull
+        Integer getExitStatus() {
+            return exitStatus;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                endLine();
+            } else {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            endLine();
+        }
+
+        private void endLine() {
+            String s = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            line.reset();
+            Matcher m = EXIT_STATUS_LINE.matcher(s);
+            if (m.matches()) {
+                exitStatus = Integer.parseInt(m.group(1));
+            } else if (!s.trim().isEmpty()) {
+                logger.println(s);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes of the archive, and prints them to the build log now and then.
+     */
+    static class CopyProgress {
+        private static final long INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+        private final PrintStream logger;
+        private final long start = System.currentTimeMillis();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile long lastReport = start;
+
+        CopyProgress(PrintStream logger) {
+            this.logger = logger;
+        }
+
+        InputStream wrap(InputStream in) {
+            return new ProxyInputStream(in) {
+                @Override
+                protected void afterRead(int n) {
+                    if (n > 0) {
+                        add(n);
+                    }
+                }
+            };
+        }
+
+        OutputStream wrap(OutputStream out) {
+            return new ProxyOutputStream(out) {
+                @Override
+                protected void beforeWrite(int n) {
+                    add(n);
+                }
+            };
+        }
+
+        long getBytes() {
+            return bytes.get();
+        }
+
+        private void add(long n) {
+            long total = bytes.addAndGet(n);
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= INTERVAL) {
+                lastReport = now;
+                logger.println("Copied " + Functions.humanReadableByteSize(total) + " so far");
+            }
+        }
+
+        void finished() {
+            logger.println("Copied " + Functions.humanReadableByteSize(bytes.get()) + " in "
+                    + Util.getTimeSpanString(System.currentTimeMillis() - start));
+        }
+    }
+}
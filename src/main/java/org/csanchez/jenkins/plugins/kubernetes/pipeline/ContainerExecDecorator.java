@@ -18,7 +18,9 @@ package org.csanchez.jenkins.plugins.kubernetes.pipeline;
 
 import static org.csanchez.jenkins.plugins.kubernetes.pipeline.Constants.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
@@ -31,11 +33,22 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 
 import hudson.EnvVars;
 import hudson.FilePath;
@@ -71,16 +84,41 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
     private static final String CONTAINER_READY_TIMEOUT_SYSTEM_PROPERTY = ContainerExecDecorator.class.getName() + ".containerReadyTimeout";
     private static final long CONTAINER_READY_TIMEOUT = containerReadyTimeout();
     private static final String COOKIE_VAR = "JENKINS_SERVER_COOKIE";
+    private static final Pattern VARIABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    /**
+     * Variable with the name of the container, set in every container of the pods sharing a process namespace
+     */
+    public static final String CONTAINER_NAME_VAR = "JENKINS_CONTAINER_NAME";
     private static final Logger LOGGER = Logger.getLogger(ContainerExecDecorator.class.getName());
 
     private final transient KubernetesClient client;
 
     @SuppressFBWarnings(value = "SE_TRANSIENT_FIELD_NOT_RESTORED", justification = "not needed on deserialization")
-    private final transient List<Closeable> closables = new ArrayList<>();
+    private final transient Set<ContainerExecProc> procs = ConcurrentHashMap.newKeySet();
+    /** Commands run detached, whose control directory is deleted on close if they were not joined */
+    @SuppressFBWarnings(value = "SE_TRANSIENT_FIELD_NOT_RESTORED", justification = "not needed on deserialization")
+    private final transient Set<FileExecProc> detachedProcs = ConcurrentHashMap.newKeySet();
+    /**
+     * Process group ids of the commands launched with each cookie, to kill them without looking for the cookie, until
+     * they are killed or the decorator is closed
+     */
+    @SuppressFBWarnings(value = "SE_TRANSIENT_FIELD_NOT_RESTORED", justification = "not needed on deserialization")
+    private final transient ConcurrentMap<String, Set<Integer>> processGroups = new ConcurrentHashMap<>();
     private final String podName;
     private final String namespace;
     private final String containerName;
     private final EnvironmentExpander environmentExpander;
+    /** Whether the containers of the pod share a process namespace with the agent */
+    private boolean processNamespaceShared;
+
+    /** Whether commands run detached, with their output kept in files, instead of attached to an exec session */
+    private boolean detached;
+
+    /** Process the agent enters to run commands in the container, once found */
+    private transient volatile ProcessNamespaceExec.Target target;
+    /** Whether the agent could not enter the container, so commands go through the API server */
+    private transient volatile boolean apiExecOnly;
 
     public ContainerExecDecorator(KubernetesClient client, String podName, String containerName, String namespace, EnvironmentExpander environmentExpander) {
         this.client = client;
@@ -109,6 +147,22 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
         this(client, podName, containerName, null, null);
     }
 
+    /**
+     * Runs the commands from the agent through the shared process namespace of the pod when possible, instead of
+     * through the API server.
+     */
+    public void setProcessNamespaceShared(boolean processNamespaceShared) {
+        this.processNamespaceShared = processNamespaceShared;
+    }
+
+    /**
+     * Runs the commands detached in the container, with their output and exit status written to files next to the
+     * workspace, so they do not depend on a websocket staying open while they run.
+     */
+    public void setDetached(boolean detached) {
+        this.detached = detached;
+    }
+
     @Override
     public Launcher decorate(final Launcher launcher, final Node node) {
         return new Launcher.DecoratedLauncher(launcher) {
@@ -118,15 +172,153 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
                 FilePath pwd = starter.pwd();
                 String[] commands = getCommands(starter);
 
-                return doLaunch(quiet, pwd, commands);
+                ProcessNamespaceExec.Target target = getTarget();
+                if (target != null) {
+                    return doLocalLaunch(target, starter, commands);
+                }
+                if (detached && pwd != null) {
+                    return doDetachedLaunch(starter, pwd);
+                }
+                return doLaunch(quiet, pwd, getCookie(starter), commands);
+            }
+
+            /**
+             * Starts the commands detached with a short exec session, their output is then read from the workspace
+             * volume through the agent.
+             */
+            private Proc doDetachedLaunch(ProcStarter starter, FilePath pwd) throws IOException {
+                OutputStream out = starter.stdout();
+                if (out == null) {
+                    out = starter.quiet() ? new NullOutputStream() : launcher.getListener().getLogger();
+                }
+                if (!starter.quiet()) {
+                    launcher.getListener().getLogger().println("Executing shell script detached inside container ["
+                            + containerName + "] of pod [" + podName + "]");
+                }
+                EnvVars envVars = new EnvVars();
+                try {
+                    if (environmentExpander != null) {
+                        environmentExpander.expand(envVars);
+                    }
+                    FileExecProc proc = FileExecProc.start(command -> doLaunch(true, null, null, command).join(), pwd,
+                            envVars, starter.cmds(), starter.stdin(), out);
+                    detachedProcs.removeIf(FileExecProc::isCleanedUp);
+                    detachedProcs.add(proc);
+                    return proc;
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(e.getMessage());
+                }
+            }
+
+            /**
+             * @return the process to enter to run commands in the container, or null to use the API server
+             */
+            private ProcessNamespaceExec.Target getTarget() {
+                if (!processNamespaceShared || apiExecOnly) {
+                    return null;
+                }
+                ProcessNamespaceExec.Target found = target;
+                if (found != null) {
+                    if (isRunning(found)) {
+                        return found;
+                    }
+                    LOGGER.log(Level.INFO,
+                            "Process {0} of container [{1}] of pod [{2}] is gone, the container restarted, running commands through the API server",
+                            new Object[] { found.pid, containerName, podName });
+                    target = null;
+                    apiExecOnly = true;
+                    return null;
+                }
+                try {
+                    found = launcher.getChannel() == null ? null
+                            : launcher.getChannel().call(new ProcessNamespaceExec.Probe(containerName));
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to find the processes of container " + containerName, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (found == null) {
+                    LOGGER.log(Level.INFO,
+                            "The agent can not enter container [{0}] of pod [{1}], running commands through the API server",
+                            new Object[] { containerName, podName });
+                    apiExecOnly = true;
+                } else {
+                    target = found;
+                }
+                return found;
+            }
+
+            /**
+             * @return whether the process found earlier still runs, so its pid was not reused by another process
+             */
+            private boolean isRunning(ProcessNamespaceExec.Target found) {
+                try {
+                    return launcher.getChannel() != null
+                            && launcher.getChannel().call(new ProcessNamespaceExec.Check(found));
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to check process " + found.pid + " of container " + containerName, e);
+                    return false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            /**
+             * Runs the commands in the container with the agent, streaming the output over the agent channel.
+             */
+            private Proc doLocalLaunch(ProcessNamespaceExec.Target target, ProcStarter starter, String... commands)
+                    throws IOException {
+                FilePath pwd = starter.pwd();
+                if (!starter.quiet()) {
+                    launcher.getListener().getLogger().println("Executing shell script inside container ["
+                            + containerName + "] of pod [" + podName
+                            + "] through the shared process namespace, as the agent user");
+                }
+                // the environment of the container, plus the one of the step like the API server exec
+                EnvVars envVars = new EnvVars(target.env);
+                if (environmentExpander != null) {
+                    EnvVars expanded = new EnvVars();
+                    try {
+                        environmentExpander.expand(expanded);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                    envVars.overrideAll(expanded);
+                }
+                String cookie = getCookie(starter);
+                if (cookie != null) {
+                    // so kill finds the processes
+                    envVars.put(COOKIE_VAR, cookie);
+                }
+                ProcStarter local = launcher.launch()
+                        .cmds(ProcessNamespaceExec.getCommand(target.pid, pwd == null ? null : pwd.getRemote(),
+                                starter.cmds().toArray(new String[0])))
+                        .envs(envVars)
+                        .quiet(starter.quiet())
+                        .stdout(starter.stdout() == null ? launcher.getListener().getLogger() : starter.stdout())
+                        .stdin(starter.stdin());
+                if (starter.stderr() != null) {
+                    local.stderr(starter.stderr());
+                }
+                if (pwd != null) {
+                    local.pwd(pwd);
+                }
+                LOGGER.log(Level.FINEST, "Executing command through process {0}: {1}",
+                        new Object[] { target.pid, Arrays.toString(commands) });
+                return local.start();
             }
 
-            private Proc doLaunch(boolean quiet, FilePath pwd, String... commands) throws IOException {
+            /**
+             * @param cookie cookie of the commands, to record their process group so kill finds them, or null
+             */
+            private Proc doLaunch(boolean quiet, FilePath pwd, String cookie, String... commands) throws IOException {
                 waitUntilContainerIsReady();
 
                 final CountDownLatch started = new CountDownLatch(1);
                 final CountDownLatch finished = new CountDownLatch(1);
                 final AtomicBoolean alive = new AtomicBoolean(false);
+                final AtomicReference<ContainerExecProc> launched = new AtomicReference<>();
 
                 PrintStream printStream = launcher.getListener().getLogger();
                 OutputStream stream = printStream;
@@ -141,11 +333,27 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
                 ExitCodeOutputStream exitCodeOutputStream = new ExitCodeOutputStream();
                 // send container output both to the job output and our buffer
                 stream = new TeeOutputStream(exitCodeOutputStream, stream);
+                if (cookie != null) {
+                    // keeps the process group line out of the build log
+                    stream = new ProcessGroupOutputStream(pgid -> addProcessGroup(cookie, pgid), stream);
+                }
 
                 String msg = "Executing shell script inside container [" + containerName + "] of pod [" + podName + "]";
                 LOGGER.log(Level.FINEST, msg);
                 printStream.println(msg);
 
+                if (ExecSessions.isFull(podName, containerName) && ExecSessions.canWait()) {
+                    printStream.println("Waiting for one of the " + ExecSessions.getMaxSessions()
+                            + " exec sessions of the container to finish, for up to "
+                            + ExecSessions.getWaitSeconds() + " seconds");
+                }
+                final ExecSessions.Session session;
+                try {
+                    session = ExecSessions.open(podName, containerName);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted while waiting for an exec session");
+                }
+
                 Execable<String, ExecWatch> execable = client.pods().inNamespace(namespace).withName(podName).inContainer(containerName)
                         .redirectingInput().writingOutput(stream).writingError(stream).withTTY()
                         .usingListener(new ExecListener() {
@@ -158,6 +366,7 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
                             @Override
                             public void onFailure(Throwable t, Response response) {
                                 alive.set(false);
+                                finish(session, launched);
                                 t.printStackTrace(launcher.getListener().getLogger());
                                 started.countDown();
                                 LOGGER.log(Level.FINEST, "onFailure : {0}", finished);
@@ -171,6 +380,7 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
                             @Override
                             public void onClose(int i, String s) {
                                 alive.set(false);
+                                finish(session, launched);
                                 started.countDown();
                                 LOGGER.log(Level.FINEST, "onClose : {0}", finished);
                                 if (finished.getCount() == 0) {
@@ -185,6 +395,7 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
                 try {
                     watch = execable.exec();
                 } catch (KubernetesClientException e) {
+                    session.close();
                     if (e.getCause() instanceof InterruptedException) {
                         throw new IOException("JENKINS-40825: interrupted while starting websocket connection", e);
                     } else {
@@ -196,53 +407,90 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
                     started.await();
                 } catch (InterruptedException e) {
                     closeWatch(watch);
+                    session.close();
                     throw new IOException("JENKINS-40825: interrupted while waiting for websocket connection", e);
                 }
 
                 try {
-                    if (pwd != null) {
-                        // We need to get into the project workspace.
-                        // The workspace is not known in advance, so we have to execute a cd command.
-                        watch.getInput().write(
-                                String.format("cd \"%s\"%s", pwd, NEWLINE).getBytes(StandardCharsets.UTF_8));
-                    }
-
+                    EnvVars envVars = new EnvVars();
                     if (environmentExpander != null) {
-                        EnvVars envVars = new EnvVars();
                         environmentExpander.expand(envVars);
-                        for (Map.Entry<String, String> entry : envVars.entrySet()) {
-                            watch.getInput().write(
-                                    String.format("export %s=\"%s\"%s", entry.getKey(), entry.getValue(), NEWLINE).getBytes(StandardCharsets.UTF_8));
-                        }
                     }
 
-                    doExec(watch, printStream, commands);
+                    doExec(watch, printStream, pwd == null ? null : pwd.getRemote(), envVars, cookie != null, commands);
 
                     ContainerExecProc proc = new ContainerExecProc(watch, alive, finished, exitCodeOutputStream::getExitCode);
-                    closables.add(proc);
+                    launched.set(proc);
+                    procs.add(proc);
+                    if (finished.getCount() == 0) {
+                        // closed before being registered
+                        procs.remove(proc);
+                    }
                     return proc;
                 }  catch (InterruptedException ie) {
                     throw new InterruptedIOException(ie.getMessage());
                 } catch (Exception e) {
                     closeWatch(watch);
+                    session.close();
                     throw e;
                 }
             }
 
+            /**
+             * Frees the session and forgets the process of an exec once it is closed.
+             */
+            private void finish(ExecSessions.Session session, AtomicReference<ContainerExecProc> launched) {
+                session.close();
+                ContainerExecProc proc = launched.get();
+                if (proc != null) {
+                    procs.remove(proc);
+                }
+            }
+
             @Override
             public void kill(Map<String, String> modelEnvVars) throws IOException, InterruptedException {
+                if (target != null) {
+                    // the agent sees the processes of the container and their cookie
+                    launcher.kill(modelEnvVars);
+                    return;
+                }
                 getListener().getLogger().println("Killing processes");
 
                 String cookie = modelEnvVars.get(COOKIE_VAR);
 
+                Set<Integer> groups = cookie == null ? null : processGroups.remove(cookie);
+                if (groups != null && !groups.isEmpty()) {
+                    killProcessGroups(groups);
+                    return;
+                }
+
+                // launched before this decorator, look for the cookie in the environment of every process
                 int exitCode = doLaunch(
-                        true, null,
+                        true, null, null,
                         "sh", "-c", "kill \\`grep -l '" + COOKIE_VAR + "=" + cookie  +"' /proc/*/environ | cut -d / -f 3 \\`"
                 ).join();
 
                 getListener().getLogger().println("kill finished with exit code " + exitCode);
             }
 
+            /**
+             * Signals the process groups with a single exec.
+             */
+            private void killProcessGroups(Set<Integer> groups) throws IOException, InterruptedException {
+                List<String> command = new ArrayList<>(Arrays.asList("kill", "-TERM", "--"));
+                for (int pgid : groups) {
+                    command.add("-" + pgid);
+                }
+                int exitCode = doLaunch(true, null, null, command.toArray(new String[command.size()])).join();
+                getListener().getLogger().println("kill finished with exit code " + exitCode);
+            }
+
+            private void addProcessGroup(String cookie, int pgid) {
+                LOGGER.log(Level.FINEST, "Commands with cookie {0} run in process group {1}",
+                        new Object[] { cookie, pgid });
+                processGroups.computeIfAbsent(cookie, k -> ConcurrentHashMap.newKeySet()).add(pgid);
+            }
+
 
             private boolean isContainerReady(Pod pod, String container) {
                 if (pod == null || pod.getStatus() == null || pod.getStatus().getContainerStatuses() == null) {
@@ -270,37 +518,118 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
         };
     }
 
+    /**
+     * Writes the input of a command.
+     */
+    interface InputWriter {
+        void write(OutputStream in) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Runs a command in the container without a terminal, so that its input and output are copied unaltered, and
+     * waits for its exec session to close. The session counts towards the cap of the container.
+     *
+     * @param input writes the input of the command, closed afterwards, or null for none
+     * @param out where to copy the output of the command
+     * @param err where to copy the error output of the command
+     * @param aborted checked every second while the command runs, to close the session early, as when the reader of
+     *            its output failed, or null to always wait for the command
+     */
+    void exec(@CheckForNull InputWriter input, @Nonnull OutputStream out, @Nonnull OutputStream err,
+            @CheckForNull BooleanSupplier aborted, @Nonnull String... command)
+            throws IOException, InterruptedException {
+        ExecSessions.Session session = ExecSessions.open(podName, containerName);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecWatch watch;
+        try {
+            watch = client.pods().inNamespace(namespace).withName(podName).inContainer(containerName)
+                    .redirectingInput().writingOutput(out).writingError(err).usingListener(new ExecListener() {
+                        @Override
+                        public void onOpen(Response response) {
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t, Response response) {
+                            failure.set(t);
+                            finished.countDown();
+                        }
+
+                        @Override
+                        public void onClose(int i, String s) {
+                            finished.countDown();
+                        }
+                    }).exec(command);
+        } catch (KubernetesClientException e) {
+            session.close();
+            throw new IOException("Failed to open an exec session in container [" + containerName + "] of pod ["
+                    + podName + "]", e);
+        }
+        try {
+            if (input != null) {
+                try (OutputStream in = watch.getInput()) {
+                    input.write(in);
+                }
+            }
+            while (!finished.await(1, TimeUnit.SECONDS)) {
+                if (aborted != null && aborted.getAsBoolean()) {
+                    throw new IOException("Aborted the exec session in container [" + containerName + "] of pod ["
+                            + podName + "]");
+                }
+            }
+        } finally {
+            closeWatch(watch);
+            session.close();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Exec session in container [" + containerName + "] of pod [" + podName
+                    + "] failed", failure.get());
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        for (Closeable closable : closables) {
+        processGroups.clear();
+        for (ContainerExecProc proc : procs) {
+            procs.remove(proc);
             try {
-                closable.close();
+                proc.close();
             } catch (Exception e) {
                 LOGGER.log(Level.FINE, "failed to close {0}");
             }
         }
+        for (FileExecProc proc : detachedProcs) {
+            detachedProcs.remove(proc);
+            try {
+                proc.cleanup();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
     }
 
-    private static void doExec(ExecWatch watch, PrintStream out, String... statements) {
+    /**
+     * Sends the whole script of a command to the exec session in a single write.
+     *
+     * @param pwd directory to run the command in, the workspace is not known in advance so it needs a cd
+     * @param env variables of the step to export
+     * @param recordProcessGroup whether to print the process group of the command before running it, so it can be
+     *            killed later without an exec session
+     */
+    private static void doExec(ExecWatch watch, PrintStream out, String pwd, Map<String, String> env,
+            boolean recordProcessGroup, String... statements) {
         try {
+            String commandLine = getCommandLine(statements);
             out.print("Executing command: ");
-            StringBuilder sb = new StringBuilder();
-            for (String stmt : statements) {
-                String s = String.format("\"%s\" ", stmt);
-                sb.append(s);
-                out.print(s);
-                watch.getInput().write(s.getBytes(StandardCharsets.UTF_8));
-            }
-            sb.append(NEWLINE);
+            out.print(commandLine);
             out.println();
-            watch.getInput().write(NEWLINE.getBytes(StandardCharsets.UTF_8));
-
-            // get the command exit code and print it padded so it is easier to parse in ContainerExecProc
-            // We need to exit so that we know when the command has finished.
-            sb.append(ExitCodeOutputStream.EXIT_COMMAND);
             out.print(ExitCodeOutputStream.EXIT_COMMAND);
-            LOGGER.log(Level.FINEST, "Executing command: {0}", sb);
-            watch.getInput().write(ExitCodeOutputStream.EXIT_COMMAND.getBytes(StandardCharsets.UTF_8));
+
+            String script = getScript(pwd, env,
+                    recordProcessGroup ? ProcessGroupOutputStream.PRINT_COMMAND + commandLine : commandLine);
+            LOGGER.log(Level.FINEST, "Executing command: {0}", script);
+            watch.getInput().write(script.getBytes(StandardCharsets.UTF_8));
 
             out.flush();
             watch.getInput().flush();
@@ -310,6 +639,64 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
         }
     }
 
+    /**
+     * @return the statements quoted for the shell of the exec session
+     */
+    static String getCommandLine(String... statements) {
+        StringBuilder commandLine = new StringBuilder();
+        for (String stmt : statements) {
+            commandLine.append('"').append(stmt).append("\" ");
+        }
+        return commandLine.toString();
+    }
+
+    /**
+     * Renders the directory change, the exports and the command, followed by the exit code command, into one buffer.
+     */
+    static String getScript(String pwd, Map<String, String> env, String commandLine) {
+        int size = commandLine.length() + NEWLINE.length() + ExitCodeOutputStream.EXIT_COMMAND.length();
+        if (pwd != null) {
+            size += pwd.length() + 8;
+        }
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            size += entry.getKey().length() + entry.getValue().length() + 12;
+        }
+        StringBuilder script = new StringBuilder(size);
+        if (pwd != null) {
+            script.append("cd ").append(FileExecProc.quote(pwd)).append(NEWLINE);
+        }
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            if (!VARIABLE_NAME.matcher(entry.getKey()).matches()) {
+                // such as PATH+XYZ, which the shell can not export
+                LOGGER.log(Level.FINE, "Not exporting {0}, not a valid variable name", entry.getKey());
+                continue;
+            }
+            script.append("export ").append(entry.getKey()).append('=').append(FileExecProc.quote(entry.getValue()))
+                    .append(NEWLINE);
+        }
+        script.append(commandLine).append(NEWLINE);
+        // get the command exit code and print it padded so it is easier to parse in ContainerExecProc
+        // We need to exit so that we know when the command has finished.
+        script.append(ExitCodeOutputStream.EXIT_COMMAND);
+        return script.toString();
+    }
+
+    /**
+     * @return the cookie the commands are launched with, if any
+     */
+    static String getCookie(Launcher.ProcStarter starter) {
+        String[] envs = starter.envs();
+        if (envs == null) {
+            return null;
+        }
+        for (String env : envs) {
+            if (env.startsWith(COOKIE_VAR + "=")) {
+                return env.substring(COOKIE_VAR.length() + 1);
+            }
+        }
+        return null;
+    }
+
     static String[] getCommands(Launcher.ProcStarter starter) {
         List<String> allCommands = new ArrayList<String>();
 
@@ -337,6 +724,87 @@ public class ContainerExecDecorator extends LauncherDecorator implements Seriali
         }
     }
 
+    /**
+     * Looks for the process group printed before the command in the output stream, and removes its line from the
+     * output. The output is held back by line until then.
+     */
+    static class ProcessGroupOutputStream extends FilterOutputStream {
+
+        static final String PGID_TXT = "JENKINS_PGID";
+        /** Runs the command through a shell printing its own pid, which is the id of the process group, then exec */
+        static final String PRINT_COMMAND = "sh -c 'printf \"\\n%s %d\\n\" " + PGID_TXT + " $$; exec \"$0\" \"$@\"' ";
+
+        private static final Pattern PGID_LINE = Pattern.compile(".*" + PGID_TXT + " (\\d+)\\s*");
+        private static final int MAX_LINE = 256;
+
+        private final IntConsumer consumer;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private boolean found;
+        /** Whether the line of the process group ended with a carriage return, so the next line feed is dropped too */
+        private boolean skipLineFeed;
+
+        ProcessGroupOutputStream(IntConsumer consumer, OutputStream out) {
+            super(out);
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (found) {
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (b == '\n') {
+                        return;
+                    }
+                }
+                out.write(b);
+                return;
+            }
+            if (b == '\n' || b == '\r') {
+                Matcher matcher = PGID_LINE.matcher(line.toString(StandardCharsets.ISO_8859_1.name()));
+                if (matcher.matches()) {
+                    found = true;
+                    skipLineFeed = b == '\r';
+                    line.reset();
+                    try {
+                        consumer.accept(Integer.parseInt(matcher.group(1)));
+                    } catch (NumberFormatException e) {
+                        LOGGER.log(Level.FINE, "Unable to parse process group: {0}", matcher.group(1));
+                    }
+                    return;
+                }
+                line.writeTo(out);
+                line.reset();
+                out.write(b);
+            } else if (line.size() < MAX_LINE) {
+                line.write(b);
+            } else {
+                // too long to be the line of the process group
+                line.writeTo(out);
+                line.reset();
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (found && !skipLineFeed) {
+                out.write(b, off, len);
+                return;
+            }
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            line.writeTo(out);
+            line.reset();
+            super.close();
+        }
+    }
+
     /**
      * Keeps the last bytes of the output stream to parse the exit code
      */
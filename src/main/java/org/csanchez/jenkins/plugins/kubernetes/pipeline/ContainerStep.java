@@ -8,6 +8,7 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -21,6 +22,7 @@ public class ContainerStep extends Step implements Serializable {
     private static final long serialVersionUID = 5588861066775717487L;
 
     private final String name;
+    private boolean detached;
 
     @DataBoundConstructor
     public ContainerStep(String name) {
@@ -31,6 +33,15 @@ public class ContainerStep extends Step implements Serializable {
         return name;
     }
 
+    public boolean isDetached() {
+        return detached;
+    }
+
+    @DataBoundSetter
+    public void setDetached(boolean detached) {
+        this.detached = detached;
+    }
+
     @Override
     public StepExecution start(StepContext context) throws Exception {
         return new ContainerStepExecution(this, context);
@@ -4,6 +4,7 @@ import java.io.Closeable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.csanchez.jenkins.plugins.kubernetes.KubernetesSlave;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
 import org.jenkinsci.plugins.workflow.steps.BodyInvoker;
@@ -12,6 +13,7 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
 
 import hudson.EnvVars;
 import hudson.LauncherDecorator;
+import hudson.model.Node;
 import io.fabric8.kubernetes.client.KubernetesClient;
 
 import javax.annotation.Nonnull;
@@ -44,6 +46,9 @@ public class ContainerStepExecution extends AbstractStepExecutionImpl {
 
         EnvironmentExpander env = getContext().get(EnvironmentExpander.class);
         decorator = new ContainerExecDecorator(client, nodeContext.getPodName(), containerName, nodeContext.getNamespace(), env);
+        Node node = getContext().get(Node.class);
+        decorator.setProcessNamespaceShared(node instanceof KubernetesSlave && ((KubernetesSlave) node).isShareProcessNamespace());
+        decorator.setDetached(step.isDetached());
         getContext().newBodyInvoker()
                 .withContext(BodyInvoker
                         .mergeLauncherDecorators(getContext().get(LauncherDecorator.class), decorator))
@@ -0,0 +1,201 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.jenkinsci.plugins.workflow.cps.CpsThread;
+
+import hudson.AbortException;
+
+/**
+ * Counts the exec sessions open in each container through the API server, and caps how many are open at the same
+ * time, so parallel branches running in the same container queue instead of overloading the API server and the
+ * kubelet.
+ * <p>
+ * The cap is set with the <code>org.csanchez.jenkins.plugins.kubernetes.pipeline.ExecSessions.maxSessions</code>
+ * system property, 0 or less for no cap. Opening a session waits for up to
+ * <code>org.csanchez.jenkins.plugins.kubernetes.pipeline.ExecSessions.waitSeconds</code> seconds, 60 by default, for
+ * another one to close, except on the CPS VM thread, which runs every step of a pipeline and would stop all its
+ * branches, so the step fails right away there instead.
+ *
+ * @since 0.13
+ */
+public class ExecSessions {
+
+    private static final String MAX_SESSIONS_SYSTEM_PROPERTY = ExecSessions.class.getName() + ".maxSessions";
+    private static final String WAIT_SECONDS_SYSTEM_PROPERTY = ExecSessions.class.getName() + ".waitSeconds";
+
+    /** Sessions by pod, named after their agent, then by container */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Sessions>> PODS = new ConcurrentHashMap<>();
+
+    private ExecSessions() {
+    }
+
+    /**
+     * @return the maximum number of sessions open at the same time in a container, 0 for no cap
+     */
+    static int getMaxSessions() {
+        return Math.max(0, Integer.getInteger(MAX_SESSIONS_SYSTEM_PROPERTY, 0));
+    }
+
+    /**
+     * @return the time to wait for a session to close in a container at its cap, in seconds
+     */
+    static long getWaitSeconds() {
+        return Math.max(0, Long.getLong(WAIT_SECONDS_SYSTEM_PROPERTY, 60));
+    }
+
+    /**
+     * Opens a session in a container, waiting for a limited time for one of the others to close if the cap is
+     * reached, unless called from the CPS VM thread.
+     *
+     * @return the session, to close once its exec is closed
+     * @throws AbortException if no session closed in time
+     */
+    @Nonnull
+    static Session open(@Nonnull String podName, @Nonnull String containerName)
+            throws InterruptedException, AbortException {
+        return open(podName, containerName, canWait() ? getWaitSeconds() : 0);
+    }
+
+    /**
+     * Opens a session in a container, waiting for up to the given time for one of the others to close if the cap is
+     * reached.
+     */
+    @Nonnull
+    static Session open(@Nonnull String podName, @Nonnull String containerName, long wait)
+            throws InterruptedException, AbortException {
+        Sessions sessions = PODS.computeIfAbsent(podName, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(containerName, k -> new Sessions(getMaxSessions()));
+        if (!sessions.acquire(wait)) {
+            String reason = wait > 0 ? "Timed out after " + wait + " seconds waiting for one of the "
+                    : "Cannot wait on the pipeline thread for one of the ";
+            throw new AbortException(reason + getMaxSessions() + " exec sessions of container [" + containerName
+                    + "] of pod [" + podName + "] to close. Raise the " + MAX_SESSIONS_SYSTEM_PROPERTY + " or "
+                    + WAIT_SECONDS_SYSTEM_PROPERTY
+                    + " system property, or run fewer parallel branches in the container.");
+        }
+        return new Session(sessions);
+    }
+
+    /**
+     * @return whether the current thread may wait for a session, which the CPS VM thread must not
+     */
+    static boolean canWait() {
+        return CpsThread.current() == null;
+    }
+
+    /**
+     * @return whether opening a session in the container would wait for another one to close
+     */
+    static boolean isFull(@Nonnull String podName, @Nonnull String containerName) {
+        Map<String, Sessions> containers = PODS.get(podName);
+        Sessions sessions = containers == null ? null : containers.get(containerName);
+        return sessions != null && sessions.permits != null && sessions.permits.availablePermits() == 0;
+    }
+
+    /**
+     * @return the sessions of each container of a pod, as active, peak and total counts
+     */
+    @Nonnull
+    public static Map<String, String> getSessions(@Nonnull String podName) {
+        Map<String, Sessions> containers = PODS.get(podName);
+        if (containers == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> sessions = new TreeMap<>();
+        for (Map.Entry<String, Sessions> entry : containers.entrySet()) {
+            Sessions s = entry.getValue();
+            sessions.put(entry.getKey(), String.format("%d active, %d at most, %d in total, %d waited, %d timed out",
+                    s.active.get(), s.peak.get(), s.total.get(), s.waited.get(), s.timedOut.get()));
+        }
+        return sessions;
+    }
+
+    /**
+     * @return the number of sessions open in a container
+     */
+    public static int getActiveSessions(@Nonnull String podName, @Nonnull String containerName) {
+        Map<String, Sessions> containers = PODS.get(podName);
+        Sessions sessions = containers == null ? null : containers.get(containerName);
+        return sessions == null ? 0 : sessions.active.get();
+    }
+
+    /**
+     * Forgets the sessions of a pod once it is deleted.
+     */
+    public static void forget(@Nonnull String podName) {
+        PODS.remove(podName);
+    }
+
+    private static class Sessions {
+        /** Null for no cap */
+        @CheckForNull
+        final Semaphore permits;
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong waited = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+
+        Sessions(int maxSessions) {
+            this.permits = maxSessions > 0 ? new Semaphore(maxSessions, true) : null;
+        }
+
+        /**
+         * @return whether a session was acquired before the timeout
+         */
+        boolean acquire(long timeoutSeconds) throws InterruptedException {
+            if (permits != null && !permits.tryAcquire()) {
+                waited.incrementAndGet();
+                if (timeoutSeconds <= 0 || !permits.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+                    timedOut.incrementAndGet();
+                    return false;
+                }
+            }
+            total.incrementAndGet();
+            int current = active.incrementAndGet();
+            peak.accumulateAndGet(current, Math::max);
+            return true;
+        }
+
+        void release() {
+            active.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * An exec session open in a container.
+     */
+    static class Session {
+        private final Sessions sessions;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Session(Sessions sessions) {
+            this.sessions = sessions;
+        }
+
+        /**
+         * Closes the session, once its exec is closed or failed to open. Closing it again does nothing.
+         */
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                sessions.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.IOUtils;
+
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.Util;
+import hudson.slaves.WorkspaceList;
+
+/**
+ * Runs a command detached in a container, with its output and exit status kept in files of a temporary directory
+ * next to the workspace, that the pods share. The exec session only lasts while the command is started and when it
+ * is killed, the output is then read from the files through the agent, from the offset read so far.
+ * <p>
+ * The command does not depend on a websocket staying open for its whole duration, and no thread waits on one. The
+ * directory is deleted once the command is joined, or by {@link #cleanup()} when nothing joins it, as for the
+ * wrapper of a durable task.
+ *
+ * @since 0.13
+ */
+class FileExecProc extends Proc {
+
+    private static final Logger LOGGER = Logger.getLogger(FileExecProc.class.getName());
+
+    private static final long MIN_POLL_INTERVAL = 100;
+    private static final long MAX_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+
+    /** Exit code of a command killed before writing its status, as for SIGTERM */
+    private static final int KILLED_EXIT_CODE = 143;
+
+    /**
+     * Runs a command in the container with a short exec session.
+     */
+    interface Exec {
+        int exec(String... command) throws IOException, InterruptedException;
+    }
+
+    private final Exec exec;
+    private final FilePath controlDir;
+    private final OutputStream out;
+    private long offset;
+    private volatile boolean killed;
+    private volatile boolean cleanedUp;
+
+    private FileExecProc(Exec exec, FilePath controlDir, OutputStream out) {
+        this.exec = exec;
+        this.controlDir = controlDir;
+        this.out = out;
+    }
+
+    /**
+     * Starts a command detached in the container.
+     *
+     * @param pwd directory of the command, in a volume shared with the agent container
+     * @param env variables exported to the command
+     * @param stdin input of the command, copied to a file before it starts, or null for none
+     * @param out where to copy the output of the command
+     */
+    @Nonnull
+    static FileExecProc start(@Nonnull Exec exec, @Nonnull FilePath pwd, @Nonnull Map<String, String> env,
+            @Nonnull List<String> commands, @CheckForNull InputStream stdin, @Nonnull OutputStream out)
+            throws IOException, InterruptedException {
+        FilePath tmp = WorkspaceList.tempDir(pwd);
+        FilePath controlDir = tmp.child("exec-" + UUID.randomUUID().toString().substring(0, 8));
+        controlDir.mkdirs();
+        if (stdin != null) {
+            controlDir.child("input").copyFrom(stdin);
+        }
+        FilePath script = controlDir.child("launch.sh");
+        script.write(getScript(pwd.getRemote(), controlDir.getRemote(), env, commands, stdin != null),
+                StandardCharsets.UTF_8.name());
+        int exitCode = exec.exec("sh", script.getRemote());
+        if (exitCode != 0) {
+            controlDir.deleteRecursive();
+            throw new IOException("Failed to start the command in the container, exit code " + exitCode);
+        }
+        return new FileExecProc(exec, controlDir, out);
+    }
+
+    /**
+     * @param input whether the commands read their input from the control directory
+     * @return a script starting the commands in the background in their own process group, writing their output
+     *         and then their exit status in the control directory
+     */
+    @Nonnull
+    static String getScript(@Nonnull String pwd, @Nonnull String controlDir, @Nonnull Map<String, String> env,
+            @Nonnull List<String> commands, boolean input) {
+        String output = quote(controlDir + "/output");
+        String status = quote(controlDir + "/exit-status");
+        String tmpStatus = quote(controlDir + "/exit-status.tmp");
+        StringBuilder script = new StringBuilder();
+        script.append("set -m\n");
+        script.append("cd ").append(quote(pwd)).append(" || exit 1\n");
+        script.append("(\n");
+        // not stopped when the exec session closes its terminal
+        script.append("trap '' HUP\n");
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            if (entry.getKey().matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                script.append("export ").append(entry.getKey()).append('=').append(quote(entry.getValue()))
+                        .append('\n');
+            }
+        }
+        for (String command : commands) {
+            // the launchers expand $$ to $
+            script.append(quote(Util.replaceMacro(command, Collections.<String, String> emptyMap()))).append(' ');
+        }
+        if (input) {
+            script.append("< ").append(quote(controlDir + "/input")).append(' ');
+        }
+        script.append("> ").append(output).append(" 2>&1\n");
+        script.append("echo $? > ").append(tmpStatus).append(" && mv ").append(tmpStatus).append(' ')
+                .append(status).append('\n');
+        script.append(") < /dev/null > /dev/null 2>&1 &\n");
+        script.append("echo $! > ").append(quote(controlDir + "/pid")).append('\n');
+        return script.toString();
+    }
+
+    /**
+     * Quotes a value for a POSIX shell.
+     */
+    @Nonnull
+    static String quote(@Nonnull String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    @Override
+    public boolean isAlive() throws IOException, InterruptedException {
+        return !killed && !controlDir.child("exit-status").exists();
+    }
+
+    @Override
+    public void kill() throws IOException, InterruptedException {
+        killed = true;
+        FilePath pid = controlDir.child("pid");
+        if (pid.exists()) {
+            // the commands run in a process group led by the background subshell
+            int exitCode = exec.exec("kill", "-TERM", "-" + pid.readToString().trim());
+            LOGGER.log(Level.FINE, "Killed commands of {0} with exit code {1}", new Object[] { controlDir, exitCode });
+        }
+    }
+
+    @Override
+    public int join() throws IOException, InterruptedException {
+        FilePath status = controlDir.child("exit-status");
+        long interval = MIN_POLL_INTERVAL;
+        try {
+            while (true) {
+                boolean finished = status.exists();
+                boolean read = copyOutput();
+                if (finished) {
+                    copyOutput();
+                    try {
+                        return Integer.parseInt(status.readToString().trim());
+                    } catch (NumberFormatException e) {
+                        LOGGER.log(Level.WARNING, "Unable to parse exit code of {0}", controlDir);
+                        return -1;
+                    }
+                }
+                if (killed) {
+                    return KILLED_EXIT_CODE;
+                }
+                interval = read ? MIN_POLL_INTERVAL : Math.min(MAX_POLL_INTERVAL, interval * 2);
+                Thread.sleep(interval);
+            }
+        } finally {
+            out.flush();
+            cleanup();
+        }
+    }
+
+    /**
+     * Deletes the control directory, once the output of the command is no longer read.
+     */
+    void cleanup() throws InterruptedException {
+        if (cleanedUp) {
+            return;
+        }
+        cleanedUp = true;
+        try {
+            controlDir.deleteRecursive();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to delete " + controlDir, e);
+        }
+    }
+
+    boolean isCleanedUp() {
+        return cleanedUp;
+    }
+
+    /**
+     * Copies the output written since the last call.
+     *
+     * @return whether there was new output
+     */
+    private boolean copyOutput() throws IOException, InterruptedException {
+        FilePath output = controlDir.child("output");
+        if (!output.exists() || output.length() <= offset) {
+            return false;
+        }
+        try (InputStream in = output.readFromOffset(offset)) {
+            offset += IOUtils.copyLarge(in, out);
+        }
+        return true;
+    }
+
+    @Override
+    public InputStream getStdout() {
+        return null;
+    }
+
+    @Override
+    public InputStream getStderr() {
+        return null;
+    }
+
+    @Override
+    public OutputStream getStdin() {
+        return null;
+    }
+}
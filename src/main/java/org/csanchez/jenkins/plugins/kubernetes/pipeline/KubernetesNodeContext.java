@@ -16,12 +16,20 @@
 
 package org.csanchez.jenkins.plugins.kubernetes.pipeline;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.CheckForNull;
+
 import hudson.AbortException;
 import hudson.FilePath;
+import hudson.model.Computer;
 import hudson.model.Node;
 import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import org.csanchez.jenkins.plugins.kubernetes.KubernetesCloud;
+import org.csanchez.jenkins.plugins.kubernetes.KubernetesComputer;
 import org.csanchez.jenkins.plugins.kubernetes.KubernetesSlave;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 
@@ -30,20 +38,47 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
  */
 class KubernetesNodeContext {
     private static final transient String HOSTNAME_FILE = "/etc/hostname";
+
+    /** Pod names and namespaces read from the files of agents not known as Kubernetes agents, by computer */
+    private static final Map<Computer, String> POD_NAMES = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Map<Computer, String> NAMESPACES = Collections.synchronizedMap(new WeakHashMap<>());
+
     private StepContext context;
     private FilePath workspace;
+    private KubernetesClient client;
 
     KubernetesNodeContext(StepContext context) throws Exception {
         this.context = context;
         workspace = context.get(FilePath.class);
     }
 
+    /**
+     * @return the name of the pod, which is the name of its agent
+     */
     String getPodName() throws Exception {
-        return workspace.child(HOSTNAME_FILE).readToString().trim();
+        KubernetesSlave slave = getSlave();
+        if (slave != null) {
+            return slave.getNodeName();
+        }
+        Computer computer = context.get(Computer.class);
+        if (computer instanceof KubernetesComputer) {
+            return computer.getName();
+        }
+        return getCached(POD_NAMES, HOSTNAME_FILE);
     }
 
     public String getNamespace() throws Exception {
-        return workspace.child(Config.KUBERNETES_NAMESPACE_PATH).readToString().trim();
+        KubernetesSlave slave = getSlave();
+        if (slave != null) {
+            if (slave.getNamespace() != null) {
+                return slave.getNamespace();
+            }
+            if (client != null) {
+                // pods of templates without a namespace are created in the one of the cloud
+                return client.getNamespace();
+            }
+        }
+        return getCached(NAMESPACES, Config.KUBERNETES_NAMESPACE_PATH);
     }
 
     KubernetesClient connectToCloud() throws Exception {
@@ -56,6 +91,32 @@ class KubernetesNodeContext {
         if (cloud == null) {
             throw new AbortException(String.format("Cloud does not exist: %s", slave.getCloudName()));
         }
-        return cloud.connect();
+        client = cloud.connect();
+        return client;
+    }
+
+    @CheckForNull
+    private KubernetesSlave getSlave() throws Exception {
+        Node node = context.get(Node.class);
+        if (node instanceof KubernetesSlave) {
+            return (KubernetesSlave) node;
+        }
+        Computer computer = context.get(Computer.class);
+        return computer instanceof KubernetesComputer ? ((KubernetesComputer) computer).getNode() : null;
+    }
+
+    /**
+     * Reads a file of the agent once per computer.
+     */
+    private String getCached(Map<Computer, String> cache, String file) throws Exception {
+        Computer computer = context.get(Computer.class);
+        String value = computer == null ? null : cache.get(computer);
+        if (value == null) {
+            value = workspace.child(file).readToString().trim();
+            if (computer != null) {
+                cache.put(computer, value);
+            }
+        }
+        return value;
     }
 }
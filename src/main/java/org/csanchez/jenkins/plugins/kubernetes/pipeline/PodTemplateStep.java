@@ -47,6 +47,9 @@ public class PodTemplateStep extends Step implements Serializable {
 
     private int instanceCap;
     private int idleMinutes;
+    private boolean reuse;
+    private boolean shareProcessNamespace;
+    private boolean archiveContainerLogs;
 
     private String serviceAccount;
     private String nodeSelector;
@@ -151,6 +154,33 @@ public class PodTemplateStep extends Step implements Serializable {
         this.idleMinutes = idleMinutes;
     }
 
+    public boolean isReuse() {
+        return reuse;
+    }
+
+    @DataBoundSetter
+    public void setReuse(boolean reuse) {
+        this.reuse = reuse;
+    }
+
+    public boolean isShareProcessNamespace() {
+        return shareProcessNamespace;
+    }
+
+    @DataBoundSetter
+    public void setShareProcessNamespace(boolean shareProcessNamespace) {
+        this.shareProcessNamespace = shareProcessNamespace;
+    }
+
+    public boolean isArchiveContainerLogs() {
+        return archiveContainerLogs;
+    }
+
+    @DataBoundSetter
+    public void setArchiveContainerLogs(boolean archiveContainerLogs) {
+        this.archiveContainerLogs = archiveContainerLogs;
+    }
+
     public String getServiceAccount() {
         return serviceAccount;
     }
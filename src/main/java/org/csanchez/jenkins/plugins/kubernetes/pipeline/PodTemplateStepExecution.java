@@ -9,6 +9,9 @@ import org.apache.commons.lang.RandomStringUtils;
 import org.csanchez.jenkins.plugins.kubernetes.KubernetesCloud;
 import org.csanchez.jenkins.plugins.kubernetes.PodImagePullSecret;
 import org.csanchez.jenkins.plugins.kubernetes.PodTemplate;
+import org.csanchez.jenkins.plugins.kubernetes.PodTemplateUtils;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.workspace.JobPersistentVolumeClaimWorkspaceVolume;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.workspace.WorkspaceVolume;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
@@ -29,6 +32,8 @@ public class PodTemplateStepExecution extends AbstractStepExecutionImpl {
 
     private static final transient String NAME_FORMAT = "%s-%s";
 
+    private static final int HASH_LENGTH = 10;
+
     private final PodTemplateStep step;
 
     PodTemplateStepExecution(PodTemplateStep step, StepContext context) {
@@ -52,14 +57,9 @@ public class PodTemplateStepExecution extends AbstractStepExecutionImpl {
         PodTemplateAction podTemplateAction = new PodTemplateAction(getContext().get(Run.class));
         NamespaceAction namespaceAction = new NamespaceAction(getContext().get(Run.class));
 
-        //Let's generate a random name based on the user specified to make sure that we don't have
-        //issues with concurrent builds, or messing with pre-existing configuration
-        String randString = RandomStringUtils.random(5, "bcdfghjklmnpqrstvwxz0123456789");
-        String name = String.format(NAME_FORMAT, step.getName(), randString);
         String namespace = checkNamespace(kubernetesCloud, namespaceAction);
 
         PodTemplate newTemplate = new PodTemplate();
-        newTemplate.setName(name);
         newTemplate.setNamespace(namespace);
         newTemplate.setInheritFrom(!Strings.isNullOrEmpty( podTemplateAction.getParentTemplates()) ? podTemplateAction.getParentTemplates() : step.getInheritFrom());
         newTemplate.setInstanceCap(step.getInstanceCap());
@@ -68,16 +68,39 @@ public class PodTemplateStepExecution extends AbstractStepExecutionImpl {
         newTemplate.setEnvVars(step.getEnvVars());
         newTemplate.setVolumes(step.getVolumes());
         newTemplate.setCustomWorkspaceVolumeEnabled(step.getWorkspaceVolume() != null);
-        newTemplate.setWorkspaceVolume(step.getWorkspaceVolume());
+        WorkspaceVolume workspaceVolume = step.getWorkspaceVolume();
+        if (workspaceVolume instanceof JobPersistentVolumeClaimWorkspaceVolume) {
+            // bound to the job so its next builds get the same workspace back
+            workspaceVolume = ((JobPersistentVolumeClaimWorkspaceVolume) workspaceVolume)
+                    .forJob(getContext().get(Run.class).getParent().getFullName());
+        }
+        newTemplate.setWorkspaceVolume(workspaceVolume);
         newTemplate.setContainers(step.getContainers());
         newTemplate.setNodeSelector(step.getNodeSelector());
         newTemplate.setNodeUsageMode(step.getNodeUsageMode());
         newTemplate.setServiceAccount(step.getServiceAccount());
         newTemplate.setAnnotations(step.getAnnotations());
+        newTemplate.setShareProcessNamespace(step.isShareProcessNamespace());
+        newTemplate.setArchiveContainerLogs(step.isArchiveContainerLogs());
         newTemplate.setImagePullSecrets(
                 step.getImagePullSecrets().stream().map(x -> new PodImagePullSecret(x)).collect(toList()));
 
-        kubernetesCloud.addTemplate(newTemplate);
+        String name;
+        if (step.isReuse()) {
+            // identical templates get the same name, so they share the registered template and its idle agents
+            name = String.format(NAME_FORMAT, step.getName(), PodTemplateUtils.getTemplateHash(PodTemplateUtils
+                    .unwrap(newTemplate, kubernetesCloud.getDefaultsProviderTemplate(), kubernetesCloud.getTemplates()))
+                    .substring(0, HASH_LENGTH));
+            newTemplate.setName(name);
+            SharedPodTemplates.acquire(kubernetesCloud, newTemplate);
+        } else {
+            //Let's generate a random name based on the user specified to make sure that we don't have
+            //issues with concurrent builds, or messing with pre-existing configuration
+            String randString = RandomStringUtils.random(5, "bcdfghjklmnpqrstvwxz0123456789");
+            name = String.format(NAME_FORMAT, step.getName(), randString);
+            newTemplate.setName(name);
+            kubernetesCloud.addTemplate(newTemplate);
+        }
         getContext().newBodyInvoker().withContext(step).withCallback(new PodTemplateCallback(newTemplate)).start();
 
         podTemplateAction.push(name);
@@ -128,6 +151,11 @@ public class PodTemplateStepExecution extends AbstractStepExecutionImpl {
                 LOGGER.log(Level.INFO, "Removing pod template and deleting pod {1} from cloud {0}",
                         new Object[] { cloud.name, podTemplate.getName() });
                 KubernetesCloud kubernetesCloud = (KubernetesCloud) cloud;
+                if (step.isReuse()) {
+                    // the agents stay around for other runs using the same template
+                    SharedPodTemplates.release(kubernetesCloud, podTemplate);
+                    return;
+                }
                 kubernetesCloud.removeTemplate(podTemplate);
                 KubernetesClient client = kubernetesCloud.connect();
                 Boolean deleted = client.pods().withName(podTemplate.getName()).delete();
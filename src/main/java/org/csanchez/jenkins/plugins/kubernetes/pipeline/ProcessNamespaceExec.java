@@ -0,0 +1,212 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import jenkins.security.MasterToSlaveCallable;
+
+/**
+ * Runs commands in the other containers of a pod from the agent, when the containers share a process namespace, by
+ * entering the mount namespace of one of their processes with <code>nsenter</code>. The processes of each container
+ * are recognized by the {@link ContainerExecDecorator#CONTAINER_NAME_VAR} variable set in their environment.
+ * <p>
+ * Only the mount namespace is entered: the commands keep the user and the cgroup of the agent, so they run with its
+ * permissions and within the resource limits of the jnlp container.
+ *
+ * @since 0.13
+ */
+class ProcessNamespaceExec {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessNamespaceExec.class.getName());
+
+    private static final String NSENTER = "nsenter";
+
+    private ProcessNamespaceExec() {
+    }
+
+    /**
+     * @return the command running the given one in the container of a process
+     */
+    @Nonnull
+    static List<String> getCommand(int pid, @CheckForNull String pwd, @Nonnull String... commands) {
+        List<String> command = new ArrayList<>();
+        command.add(NSENTER);
+        command.add("--target");
+        command.add(String.valueOf(pid));
+        command.add("--mount");
+        if (pwd != null) {
+            command.add("--wd=" + pwd);
+        }
+        command.add("--");
+        command.addAll(Arrays.asList(commands));
+        return command;
+    }
+
+    /**
+     * Parses the contents of a <code>/proc/&lt;pid&gt;/environ</code> file.
+     */
+    @Nonnull
+    static Map<String, String> parseEnviron(@Nonnull String environ) {
+        Map<String, String> env = new HashMap<>();
+        for (String entry : StringUtils.split(environ, '\0')) {
+            int i = entry.indexOf('=');
+            if (i > 0) {
+                env.put(entry.substring(0, i), entry.substring(i + 1));
+            }
+        }
+        return env;
+    }
+
+    /**
+     * Parses the start time of a process from the contents of its <code>/proc/&lt;pid&gt;/stat</code> file.
+     *
+     * @return the start time in clock ticks since boot, or -1 if it can not be parsed
+     */
+    static long parseStartTime(@Nonnull String stat) {
+        // the command name may contain spaces and parentheses, the fields after it start with the state, field 3
+        String[] fields = StringUtils.split(stat.substring(stat.lastIndexOf(')') + 1));
+        try {
+            return fields.length > 19 ? Long.parseLong(fields[19]) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long readStartTime(int pid) throws IOException {
+        return parseStartTime(new String(Files.readAllBytes(new File("/proc/" + pid + "/stat").toPath()),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A process of a container, and its environment.
+     */
+    static class Target implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int pid;
+        /** Start time of the process, to tell it from a later process with the same pid */
+        final long startTime;
+        final Map<String, String> env;
+
+        Target(int pid, long startTime, Map<String, String> env) {
+            this.pid = pid;
+            this.startTime = startTime;
+            this.env = env;
+        }
+    }
+
+    /**
+     * Checks that the process of a container found earlier is still running, run on the agent. It is gone once the
+     * container restarts.
+     */
+    static class Check extends MasterToSlaveCallable<Boolean, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int pid;
+        private final long startTime;
+
+        Check(Target target) {
+            this.pid = target.pid;
+            this.startTime = target.startTime;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            try {
+                return readStartTime(pid) == startTime;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Finds the first process of a container that the agent can enter, run on the agent.
+     */
+    static class Probe extends MasterToSlaveCallable<Target, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+        private final String containerName;
+
+        Probe(String containerName) {
+            this.containerName = containerName;
+        }
+
+        @Override
+        public Target call() throws IOException {
+            File[] processes = new File("/proc").listFiles((dir, name) -> StringUtils.isNumeric(name));
+            if (processes == null) {
+                return null;
+            }
+            Target first = null;
+            for (File process : processes) {
+                int pid = Integer.parseInt(process.getName());
+                if (first != null && first.pid < pid) {
+                    continue;
+                }
+                Map<String, String> env;
+                long startTime;
+                try {
+                    env = parseEnviron(new String(Files.readAllBytes(new File(process, "environ").toPath()),
+                            StandardCharsets.UTF_8));
+                    startTime = readStartTime(pid);
+                } catch (IOException e) {
+                    // gone, or not ours to read
+                    continue;
+                }
+                if (containerName.equals(env.get(ContainerExecDecorator.CONTAINER_NAME_VAR))) {
+                    first = new Target(pid, startTime, env);
+                }
+            }
+            if (first == null) {
+                LOGGER.log(Level.FINE, "No process of container {0} visible from the agent", containerName);
+                return null;
+            }
+            return canEnter(first.pid) ? first : null;
+        }
+
+        private boolean canEnter(int pid) {
+            try {
+                Process process = new ProcessBuilder(getCommand(pid, null, "sh", "-c", ":")).redirectErrorStream(true)
+                        .start();
+                process.getOutputStream().close();
+                if (!process.waitFor(TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    return false;
+                }
+                if (process.exitValue() != 0) {
+                    LOGGER.log(Level.FINE, "Can not enter container {0} through process {1}: {2}",
+                            new Object[] { containerName, pid,
+                                    IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8).trim() });
+                    return false;
+                }
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Can not run " + NSENTER + " on the agent", e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
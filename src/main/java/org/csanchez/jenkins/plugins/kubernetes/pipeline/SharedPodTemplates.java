@@ -0,0 +1,140 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.csanchez.jenkins.plugins.kubernetes.KubernetesCloud;
+import org.csanchez.jenkins.plugins.kubernetes.KubernetesSlave;
+import org.csanchez.jenkins.plugins.kubernetes.PodTemplate;
+
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Pod templates shared by the <code>podTemplate</code> steps with <code>reuse</code> set, counting the steps
+ * using each of them. A template no longer used is kept for its idle minutes so its idle agents can still be
+ * picked up, then removed from the cloud once it has no agents left.
+ * <p>
+ * The counts are only kept in memory, so after a restart the steps resumed may release a template without having
+ * acquired it. The agents of a template are what tells it is still in use then.
+ *
+ * @since 0.13
+ */
+class SharedPodTemplates {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedPodTemplates.class.getName());
+
+    /** Number of steps using each template, by cloud name and template name */
+    private static final Map<String, Integer> USERS = new HashMap<>();
+
+    /** Incremented on every acquisition and release of a template, so a removal scheduled before is dropped */
+    private static final Map<String, Long> GENERATIONS = new HashMap<>();
+
+    private SharedPodTemplates() {
+    }
+
+    /**
+     * Registers the template in the cloud, unless an identical one with the same name already is.
+     */
+    static synchronized void acquire(@Nonnull KubernetesCloud cloud, @Nonnull PodTemplate template) {
+        if (getTemplate(cloud, template.getName()) == null) {
+            LOGGER.log(Level.FINE, "Adding shared pod template {0} to cloud {1}",
+                    new Object[] { template.getName(), cloud.name });
+            cloud.addTemplate(template);
+        } else {
+            LOGGER.log(Level.FINE, "Reusing shared pod template {0} of cloud {1}",
+                    new Object[] { template.getName(), cloud.name });
+        }
+        String key = getKey(cloud, template);
+        USERS.merge(key, 1, Integer::sum);
+        GENERATIONS.merge(key, 1L, Long::sum);
+    }
+
+    /**
+     * Stops using the template, removing it from the cloud once no step uses it for its idle minutes and it has no
+     * agents left.
+     */
+    static synchronized void release(@Nonnull KubernetesCloud cloud, @Nonnull PodTemplate template) {
+        String key = getKey(cloud, template);
+        long generation = GENERATIONS.merge(key, 1L, Long::sum);
+        Integer users = USERS.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null);
+        if (users != null) {
+            return;
+        }
+        if (template.getIdleMinutes() <= 0) {
+            removeUnused(cloud.name, template.getName(), key, generation);
+            return;
+        }
+        scheduleRemoval(cloud.name, template.getName(), key, generation, template.getIdleMinutes());
+    }
+
+    private static void scheduleRemoval(String cloudName, String name, String key, long generation, int minutes) {
+        Timer.get().schedule(() -> {
+            synchronized (SharedPodTemplates.class) {
+                removeUnused(cloudName, name, key, generation);
+            }
+        }, minutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Removes the template unless it was acquired or released again since the given generation, or it still has
+     * agents, in which case it is checked again later.
+     */
+    private static void removeUnused(String cloudName, String name, String key, long generation) {
+        if (USERS.containsKey(key) || GENERATIONS.getOrDefault(key, 0L) != generation) {
+            return;
+        }
+        Cloud cloud = Jenkins.getActiveInstance().getCloud(cloudName);
+        if (!(cloud instanceof KubernetesCloud)) {
+            GENERATIONS.remove(key);
+            return;
+        }
+        PodTemplate template = getTemplate((KubernetesCloud) cloud, name);
+        if (template == null) {
+            GENERATIONS.remove(key);
+            return;
+        }
+        if (hasAgents(cloudName, name)) {
+            // used by a step resumed after a restart, or idle agents not removed yet
+            LOGGER.log(Level.FINE, "Keeping shared pod template {0} of cloud {1}, it still has agents",
+                    new Object[] { name, cloudName });
+            scheduleRemoval(cloudName, name, key, generation, Math.max(1, template.getIdleMinutes()));
+            return;
+        }
+        LOGGER.log(Level.INFO, "Removing shared pod template {0} from cloud {1}", new Object[] { name, cloudName });
+        ((KubernetesCloud) cloud).removeTemplate(template);
+        GENERATIONS.remove(key);
+    }
+
+    private static boolean hasAgents(String cloudName, String name) {
+        for (Node node : Jenkins.getActiveInstance().getNodes()) {
+            if (node instanceof KubernetesSlave && cloudName.equals(((KubernetesSlave) node).getCloudName())
+                    && name.equals(((KubernetesSlave) node).getTemplateName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @CheckForNull
+    private static PodTemplate getTemplate(KubernetesCloud cloud, String name) {
+        for (PodTemplate t : cloud.getTemplates()) {
+            if (name.equals(t.getName())) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static String getKey(KubernetesCloud cloud, PodTemplate template) {
+        return cloud.name + "/" + template.getName();
+    }
+}
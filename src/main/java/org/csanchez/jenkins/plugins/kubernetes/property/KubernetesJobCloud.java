@@ -10,24 +10,24 @@ import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.model.labels.LabelAtom;
 import hudson.security.ACL;
 import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner.PlannedNode;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
-import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import jenkins.model.Jenkins;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
+import org.csanchez.jenkins.plugins.kubernetes.InstanceCaps;
 import org.csanchez.jenkins.plugins.kubernetes.KubernetesFactoryAdapter;
 import org.csanchez.jenkins.plugins.kubernetes.PodTemplate;
 import org.csanchez.jenkins.plugins.kubernetes.TokenProducer;
@@ -48,16 +48,17 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateEncodingException;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.isNull;
-import static java.util.Objects.nonNull;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 public class KubernetesJobCloud extends Cloud {
@@ -67,6 +68,8 @@ public class KubernetesJobCloud extends Cloud {
     private static final String DEFAULT_ID = "jenkins/slave-default";
     private static final Map<String, String> DEFAULT_POD_LABELS = ImmutableMap.of("jenkins", "slave");
     private static final int DEFAULT_RETENTION_TIMEOUT_MINUTES = 5;
+    /** Clients by cloud name, shared by the copies of the cloud made each time the job is saved */
+    private static final ConcurrentMap<String, CachedClient> CLIENTS = new ConcurrentHashMap<>();
     private String defaultsProviderTemplate;
     private PodTemplate template;
     private String slaveName;
@@ -102,14 +105,16 @@ public class KubernetesJobCloud extends Cloud {
     }
 
     @Override
-    public synchronized Collection<PlannedNode> provision(@CheckForNull final Label label, final int excessWorkload) {
+    public Collection<PlannedNode> provision(@CheckForNull final Label label, final int excessWorkload) {
         try {
             LOGGER.log(Level.INFO, "Excess workload after pending Spot instances: " + excessWorkload);
             LOGGER.log(Level.INFO, "Template: " + template.getDisplayName());
-            if (!addProvisionedSlave(template, label)) {
+            InstanceCaps.Reservation reservation = reserve();
+            if (reservation.getCount() == 0) {
                 return ImmutableList.of();
             }
-            return newArrayList(new PlannedNode(template.getDisplayName(), Computer.threadPoolForRemoting.submit(new KubernetesProvisioningCallback(this, template, slaveName)), 1));
+            String name = slaveName != null ? slaveName : SlaveNameUtils.getSlaveName(template.getName());
+            return newArrayList(new PlannedNode(template.getDisplayName(), Computer.threadPoolForRemoting.submit(new KubernetesProvisioningCallback(this, template, name, reservation)), 1));
         } catch (KubernetesClientException e) {
             Throwable cause = e.getCause();
             if (cause instanceof SocketTimeoutException || cause instanceof ConnectException || cause instanceof UnknownHostException) {
@@ -127,36 +132,65 @@ public class KubernetesJobCloud extends Cloud {
         return Collections.emptyList();
     }
 
-    private boolean addProvisionedSlave(@Nonnull PodTemplate template, @CheckForNull Label label) throws Exception {
-        if (containerCap == 0) {
-            return true;
-        }
+    /**
+     * Checks the caps and creates the pod of an agent in the background, so that scheduling a build does not wait for
+     * the API server.
+     *
+     * @param slaveName name of the agent, that the build is already assigned to
+     * @return the agent, or null if a cap was reached or the pod could not be created
+     */
+    public Future<Node> provisionAsync(@Nonnull final String slaveName) {
+        return Computer.threadPoolForRemoting.submit(() -> {
+            try {
+                InstanceCaps.Reservation reservation = reserve();
+                if (reservation.getCount() == 0) {
+                    return null;
+                }
+                return new KubernetesProvisioningCallback(this, template, slaveName, reservation).call();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to provision agent " + slaveName + " on Kubernetes at " + serverUrl, e);
+                return null;
+            }
+        });
+    }
 
+    /**
+     * Reserves room for one pod within the container cap and the template instance cap, without holding a lock while
+     * listing the pods.
+     */
+    private InstanceCaps.Reservation reserve() throws Exception {
         KubernetesClient client = connect();
         String templateNamespace = isNotBlank(template.getNamespace()) ? template.getNamespace() : client.getNamespace();
-        List<Pod> slaveListItems = client.pods().inNamespace(templateNamespace).withLabels(DEFAULT_POD_LABELS).list().getItems();
-
-        Map<String, String> labelsMap = getLabelsMap(template.getLabelSet());
-        List<Pod> namedListItems = client.pods().inNamespace(templateNamespace).withLabels(labelsMap).list().getItems();
-        if (nonNull(slaveListItems) && containerCap <= slaveListItems.size()) {
-            LOGGER.log(Level.INFO, "Total container cap of {0} reached, not provisioning: {1} running or errored in namespace {2}", new Object[]{containerCap, slaveListItems.size(), client.getNamespace()});
-            return false;
-        }
-
-        if (nonNull(namedListItems) && nonNull(slaveListItems) && template.getInstanceCap() <= namedListItems.size()) {
-            LOGGER.log(Level.INFO, "Template instance cap of {0} reached for template {1}, not provisioning: {2} running or errored in namespace {3} with label {4}", new Object[]{template.getInstanceCap(), template.getName(), slaveListItems.size(), client.getNamespace(), label == null ? "" : label.toString()});
-            return false;
-        }
-        return true;
+        return InstanceCaps.get(name).reserve(client, templateNamespace, template, getLabelsMap(template.getLabelSet()), containerCap, 1);
     }
 
-    @SuppressFBWarnings("all")
+    /**
+     * Connects to Kubernetes, reusing the client of the cloud as long as its settings and credentials do not change.
+     * The replaced client is closed, which lets the requests in flight complete.
+     */
     public KubernetesClient connect() throws UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException,
             IOException, CertificateEncodingException {
-        LOGGER.log(Level.FINE, "Building connection to Kubernetes {0} URL {1}", new String[]{getDisplayName(), serverUrl});
-        final KubernetesClient kubernetesClient = new KubernetesFactoryAdapter(serverUrl, namespace, serverCertificate, credentialsId, skipTlsVerify, connectTimeout, readTimeout, maxRequestsPerHost).createClient();
-        LOGGER.log(Level.FINE, "Connected to Kubernetes {0} URL {1}", new String[]{getDisplayName(), serverUrl});
-        return kubernetesClient;
+        KubernetesFactoryAdapter adapter = new KubernetesFactoryAdapter(serverUrl, namespace, serverCertificate, credentialsId, skipTlsVerify, connectTimeout, readTimeout, maxRequestsPerHost);
+        String key = adapter.getClientKey();
+        String cloudName = Util.fixNull(name);
+        CachedClient cached = CLIENTS.get(cloudName);
+        if (cached != null && cached.key.equals(key)) {
+            return cached.client;
+        }
+        synchronized (CLIENTS) {
+            cached = CLIENTS.get(cloudName);
+            if (cached != null && cached.key.equals(key)) {
+                return cached.client;
+            }
+            LOGGER.log(Level.FINE, "Building connection to Kubernetes {0} URL {1}", new String[]{getDisplayName(), serverUrl});
+            KubernetesClient client = adapter.createClient();
+            CLIENTS.put(cloudName, new CachedClient(key, client));
+            if (cached != null) {
+                cached.client.close();
+            }
+            LOGGER.log(Level.FINE, "Connected to Kubernetes {0} URL {1}", new String[]{getDisplayName(), serverUrl});
+            return client;
+        }
     }
 
     private String getIdForLabel(Label label) {
@@ -246,6 +280,19 @@ public class KubernetesJobCloud extends Cloud {
         }
     }
 
+    /**
+     * A client and the digest of the settings it was built with.
+     */
+    private static class CachedClient {
+        final String key;
+        final KubernetesClient client;
+
+        CachedClient(String key, KubernetesClient client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("KubernetesJobCloud name: %s serverUrl: %s", name, serverUrl);
@@ -53,6 +53,7 @@ import jenkins.model.JenkinsLocationConfiguration;
 import org.apache.commons.lang.StringUtils;
 import org.csanchez.jenkins.plugins.kubernetes.ContainerLivenessProbe;
 import org.csanchez.jenkins.plugins.kubernetes.ContainerTemplate;
+import org.csanchez.jenkins.plugins.kubernetes.InstanceCaps;
 import org.csanchez.jenkins.plugins.kubernetes.PodAnnotation;
 import org.csanchez.jenkins.plugins.kubernetes.PodImagePullSecret;
 import org.csanchez.jenkins.plugins.kubernetes.PodTemplate;
@@ -64,6 +65,7 @@ import org.jenkinsci.plugins.durabletask.executors.OnceRetentionStrategy;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -107,11 +109,19 @@ class KubernetesProvisioningCallback implements Callable<Node> {
     @Nonnull
     private final PodTemplate template;
     private String slaveName;
+    @CheckForNull
+    private final InstanceCaps.Reservation reservation;
+    private boolean released;
 
     public KubernetesProvisioningCallback(@Nonnull KubernetesJobCloud cloud, @Nonnull PodTemplate template, final String slaveName) {
+        this(cloud, template, slaveName, null);
+    }
+
+    public KubernetesProvisioningCallback(@Nonnull KubernetesJobCloud cloud, @Nonnull PodTemplate template, final String slaveName, @CheckForNull InstanceCaps.Reservation reservation) {
         this.cloud = cloud;
         this.template = template;
         this.slaveName = slaveName;
+        this.reservation = reservation;
     }
 
     public Node call() throws Exception {
@@ -131,6 +141,7 @@ class KubernetesProvisioningCallback implements Callable<Node> {
             LOGGER.log(Level.FINE, "Creating Pod: {0} in namespace {1}", new Object[]{podId, namespace});
             pod = client.pods().inNamespace(namespace).create(pod);
             LOGGER.log(Level.INFO, "Created Pod: {0} in namespace {1}", new Object[]{podId, namespace});
+            releaseReservation(true);
 
             ImmutableList<String> validStates = ImmutableList.of("Running");
 
@@ -204,6 +215,7 @@ class KubernetesProvisioningCallback implements Callable<Node> {
 
             return slave;
         } catch (Throwable ex) {
+            releaseReservation(false);
             LOGGER.log(Level.SEVERE, "Error in provisioning; slave={0}, template={1}: {2}",
                     new Object[]{slave, template, ex.getMessage()});
             if (slave != null) {
@@ -214,6 +226,20 @@ class KubernetesProvisioningCallback implements Callable<Node> {
         }
     }
 
+    /**
+     * Releases the room reserved for the pod, either to count it as created or because it was never created.
+     */
+    private void releaseReservation(boolean created) {
+        if (reservation != null && !released) {
+            released = true;
+            if (created) {
+                reservation.created();
+            } else {
+                reservation.release();
+            }
+        }
+    }
+
     /**
      * Log the last lines of containers logs
      */
@@ -0,0 +1,126 @@
+package org.csanchez.jenkins.plugins.kubernetes.volumes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Descriptor;
+import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.api.model.VolumeBuilder;
+
+/**
+ * A read-only, node-local bare git repository with the objects of a list of repositories, that checkouts can use as
+ * <code>--reference</code> so they only fetch what changed since the last refresh. The mirror is kept on a host path
+ * of each node and fetched periodically by a <code>DaemonSet</code> managed by the cloud.
+ * <p>
+ * The path of the mirror is exported to the containers of the pod as {@value #ENV_VAR}.
+ *
+ * @since 0.13
+ */
+public class GitReferenceMirrorVolume extends PodVolume {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Environment variable with the path of the mirror inside the pod */
+    public static final String ENV_VAR = "GIT_REFERENCE_MIRROR";
+
+    private static final int DEFAULT_FETCH_INTERVAL = 10;
+    private static final String DEFAULT_IMAGE = "alpine/git";
+    private static final String HOST_PATH_PREFIX = "/var/lib/jenkins-git-mirror/";
+
+    private String mountPath;
+    private String repositories;
+    private int fetchInterval = DEFAULT_FETCH_INTERVAL;
+    private String image = DEFAULT_IMAGE;
+
+    @DataBoundConstructor
+    public GitReferenceMirrorVolume(String mountPath, String repositories, int fetchInterval) {
+        this.mountPath = mountPath;
+        this.repositories = repositories;
+        this.fetchInterval = fetchInterval;
+    }
+
+    @Override
+    public String getMountPath() {
+        return mountPath;
+    }
+
+    public String getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * @return the minutes between fetches of the mirror
+     */
+    public int getFetchInterval() {
+        return fetchInterval;
+    }
+
+    public String getImage() {
+        return image == null ? DEFAULT_IMAGE : image;
+    }
+
+    @DataBoundSetter
+    public void setImage(String image) {
+        this.image = Util.fixEmptyAndTrim(image);
+    }
+
+    /**
+     * @return the urls of the mirrored repositories, sorted and without duplicates
+     */
+    @Nonnull
+    public List<String> getRepositoryList() {
+        if (repositories == null) {
+            return Collections.emptyList();
+        }
+        TreeSet<String> urls = new TreeSet<>();
+        for (String url : StringUtils.split(repositories, " \t\r\n,")) {
+            urls.add(url);
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /**
+     * @return the directory of the mirror on the nodes, shared by the volumes mirroring the same repositories
+     */
+    @Nonnull
+    public String getHostPath() {
+        return HOST_PATH_PREFIX + Util.getDigestOf(getRepositoryList().toString()).substring(0, 16);
+    }
+
+    /**
+     * @return the environment variables exported to the containers of the pod
+     */
+    @Nonnull
+    public List<EnvVar> getEnvVars(@Nonnull String mountPath) {
+        return Collections.singletonList(new EnvVar(ENV_VAR, mountPath, null));
+    }
+
+    @Override
+    public Volume buildVolume(String volumeName) {
+        return new VolumeBuilder()
+                .withName(volumeName)
+                .withNewHostPath(getHostPath())
+                .build();
+    }
+
+    @Extension
+    @Symbol("gitReferenceMirrorVolume")
+    public static class DescriptorImpl extends Descriptor<PodVolume> {
+        @Override
+        public String getDisplayName() {
+            return "Git Reference Mirror Volume";
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.csanchez.jenkins.plugins.kubernetes.volumes;
+
+import javax.annotation.CheckForNull;
+
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Descriptor;
+import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.api.model.VolumeBuilder;
+
+/**
+ * A cache, such as a local Maven repository, kept on a pool of ReadWriteOnce persistent volume claims shared by the
+ * templates mounting the same storage at the same path. Each agent pod leases one of the claims for its lifetime, so
+ * the cache is warm without needing ReadWriteMany storage. Claims are created as needed up to the pool size, and the
+ * ones idle the longest are deleted when the pool is shrunk or when they were not leased for a long time.
+ *
+ * @since 0.13
+ */
+public class PooledPersistentVolumeClaim extends PodVolume {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_POOL_SIZE = 5;
+
+    private String mountPath;
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private String storageSize;
+    @CheckForNull
+    private String storageClassName;
+
+    @DataBoundConstructor
+    public PooledPersistentVolumeClaim(String mountPath, int poolSize, String storageSize) {
+        this.mountPath = mountPath;
+        this.poolSize = poolSize;
+        this.storageSize = storageSize;
+    }
+
+    @Override
+    public String getMountPath() {
+        return mountPath;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public String getStorageSize() {
+        return storageSize;
+    }
+
+    @CheckForNull
+    public String getStorageClassName() {
+        return storageClassName;
+    }
+
+    @DataBoundSetter
+    public void setStorageClassName(String storageClassName) {
+        this.storageClassName = Util.fixEmpty(storageClassName);
+    }
+
+    /**
+     * Builds an empty volume, for pods that could not lease a claim of the pool.
+     */
+    @Override
+    public Volume buildVolume(String volumeName) {
+        return new VolumeBuilder().withName(volumeName).withNewEmptyDir("").build();
+    }
+
+    /**
+     * Builds the volume of a claim leased from the pool.
+     */
+    public Volume buildVolume(String volumeName, String claimName) {
+        return new VolumeBuilder()
+                .withName(volumeName)
+                .withNewPersistentVolumeClaim()
+                    .withClaimName(claimName)
+                    .withReadOnly(false)
+                .and()
+                .build();
+    }
+
+    @Extension
+    @Symbol("pooledPersistentVolumeClaim")
+    public static class DescriptorImpl extends Descriptor<PodVolume> {
+        @Override
+        public String getDisplayName() {
+            return "Pooled Persistent Volume Claim Cache";
+        }
+    }
+}
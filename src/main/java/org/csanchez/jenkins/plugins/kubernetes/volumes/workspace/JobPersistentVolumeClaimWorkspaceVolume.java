@@ -0,0 +1,190 @@
+package org.csanchez.jenkins.plugins.kubernetes.volumes.workspace;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.csanchez.jenkins.plugins.kubernetes.ResourceQuantities;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.api.model.VolumeBuilder;
+
+/**
+ * A workspace kept on a persistent volume claim per job, that the next build of the job gets back if it is not used
+ * by another build, so checkouts are incremental. The claims of the jobs built the least recently are deleted to stay
+ * within a number of claims and a storage budget.
+ * <p>
+ * Only pod templates defined by a pipeline know their job, other pods get an empty workspace.
+ *
+ * @since 0.13
+ */
+public class JobPersistentVolumeClaimWorkspaceVolume extends WorkspaceVolume {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_MAX_CLAIMS = 20;
+
+    private String storageSize;
+    private int maxClaims = DEFAULT_MAX_CLAIMS;
+    @CheckForNull
+    private String storageBudget;
+    @CheckForNull
+    private String storageClassName;
+    /** Full name of the job using this workspace, set for the templates of a pipeline */
+    @CheckForNull
+    private String jobName;
+
+    @DataBoundConstructor
+    public JobPersistentVolumeClaimWorkspaceVolume(String storageSize, int maxClaims) {
+        this.storageSize = storageSize;
+        this.maxClaims = maxClaims;
+    }
+
+    public String getStorageSize() {
+        return storageSize;
+    }
+
+    public int getMaxClaims() {
+        return maxClaims;
+    }
+
+    @CheckForNull
+    public String getStorageBudget() {
+        return storageBudget;
+    }
+
+    @DataBoundSetter
+    public void setStorageBudget(String storageBudget) {
+        this.storageBudget = Util.fixEmptyAndTrim(storageBudget);
+    }
+
+    @CheckForNull
+    public String getStorageClassName() {
+        return storageClassName;
+    }
+
+    @DataBoundSetter
+    public void setStorageClassName(String storageClassName) {
+        this.storageClassName = Util.fixEmptyAndTrim(storageClassName);
+    }
+
+    @CheckForNull
+    public String getJobName() {
+        return jobName;
+    }
+
+    /**
+     * @return why the claims can not be managed with these settings, as a pipeline skips the form validation, or null
+     */
+    @CheckForNull
+    public String getProblem() {
+        if (maxClaims < 1) {
+            return "The maximum number of claims must be at least 1, not " + maxClaims;
+        }
+        String problem = checkQuantity("storage size", storageSize);
+        if (problem == null && storageBudget != null) {
+            problem = checkQuantity("storage budget", storageBudget);
+        }
+        if (problem == null && storageBudget != null
+                && ResourceQuantities.parseMemory(storageBudget) < ResourceQuantities.parseMemory(storageSize)) {
+            problem = "The storage budget " + storageBudget + " is smaller than the storage size " + storageSize;
+        }
+        return problem;
+    }
+
+    @CheckForNull
+    private static String checkQuantity(String what, @CheckForNull String value) {
+        try {
+            if (ResourceQuantities.parseMemory(value) <= 0) {
+                return "The " + what + " is required";
+            }
+            return null;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return "Invalid " + what + ": " + value;
+        }
+    }
+
+    /**
+     * @return a copy of this volume for the workspace of a job
+     */
+    @Nonnull
+    public JobPersistentVolumeClaimWorkspaceVolume forJob(@Nonnull String jobName) {
+        JobPersistentVolumeClaimWorkspaceVolume volume = new JobPersistentVolumeClaimWorkspaceVolume(storageSize,
+                maxClaims);
+        volume.storageBudget = storageBudget;
+        volume.storageClassName = storageClassName;
+        volume.jobName = jobName;
+        return volume;
+    }
+
+    /**
+     * Builds an empty volume, for pods whose job is unknown or could not get a claim.
+     */
+    @Override
+    public Volume buildVolume(String volumeName) {
+        return new VolumeBuilder().withName(volumeName).withNewEmptyDir("").build();
+    }
+
+    /**
+     * Builds the volume of the claim of the job.
+     */
+    public Volume buildVolume(String volumeName, String claimName) {
+        return new VolumeBuilder()
+                .withName(volumeName)
+                .withNewPersistentVolumeClaim()
+                    .withClaimName(claimName)
+                    .withReadOnly(false)
+                .and()
+                .build();
+    }
+
+    @Extension
+    @Symbol("jobPersistentVolumeClaimWorkspaceVolume")
+    public static class DescriptorImpl extends Descriptor<WorkspaceVolume> {
+        @Override
+        public String getDisplayName() {
+            return "Persistent Volume Claim per Job Workspace Volume";
+        }
+
+        public FormValidation doCheckMaxClaims(@QueryParameter String value) {
+            try {
+                if (Integer.parseInt(value.trim()) < 1) {
+                    return FormValidation.error("At least one claim is required");
+                }
+                return FormValidation.ok();
+            } catch (NumberFormatException e) {
+                return FormValidation.error("Please supply an integer");
+            }
+        }
+
+        public FormValidation doCheckStorageSize(@QueryParameter String value) {
+            String problem = checkQuantity("storage size", value);
+            return problem == null ? FormValidation.ok() : FormValidation.error(problem);
+        }
+
+        public FormValidation doCheckStorageBudget(@QueryParameter String value, @QueryParameter String storageSize) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            String problem = checkQuantity("storage budget", value);
+            if (problem != null) {
+                return FormValidation.error(problem);
+            }
+            try {
+                if (ResourceQuantities.parseMemory(value) < ResourceQuantities.parseMemory(storageSize)) {
+                    return FormValidation.error("The budget is smaller than the storage size of a single claim");
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                // reported on the storage size
+            }
+            return FormValidation.ok();
+        }
+    }
+}
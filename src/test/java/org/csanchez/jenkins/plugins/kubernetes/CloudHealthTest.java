@@ -0,0 +1,56 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import org.junit.Test;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+
+public class CloudHealthTest {
+
+    @Test
+    public void testCircuitBreaker() {
+        CloudHealth health = CloudHealth.get("health-breaker");
+        health.recordFailure();
+        health.recordFailure();
+        assertTrue(health.isHealthy());
+        health.recordFailure();
+        assertFalse(health.isHealthy());
+        assertTrue(health.toString(), health.toString().startsWith("unhealthy"));
+
+        health.recordSuccess(1000);
+        assertTrue(health.isHealthy());
+        // the count starts over after a success
+        health.recordFailure();
+        health.recordFailure();
+        assertTrue(health.isHealthy());
+    }
+
+    @Test
+    public void testErrorRate() {
+        CloudHealth health = CloudHealth.get("health-rate");
+        assertEquals(0, health.getErrorRate(), 0.001);
+        health.recordFailure();
+        assertEquals(0.2, health.getErrorRate(), 0.001);
+        health.recordSuccess(30000);
+        assertEquals(0.16, health.getErrorRate(), 0.001);
+        assertEquals(30000, health.getLatency(), 0.001);
+    }
+
+    @Test
+    public void testClusterFailures() {
+        assertTrue(CloudHealth.isClusterFailure(new KubernetesClientException("Operation failed", 503, null)));
+        assertTrue(CloudHealth.isClusterFailure(new KubernetesClientException("Too many requests", 429, null)));
+        assertTrue(CloudHealth.isClusterFailure(
+                new KubernetesClientException("Operation failed", new ConnectException("Connection refused"))));
+        assertTrue(CloudHealth.isClusterFailure(new IOException(new ConnectException("Connection refused"))));
+
+        // the pod or template is invalid, or not allowed in the namespace
+        assertFalse(CloudHealth.isClusterFailure(new KubernetesClientException("Pod is invalid", 422, null)));
+        assertFalse(CloudHealth.isClusterFailure(new KubernetesClientException("Forbidden", 403, null)));
+        assertFalse(CloudHealth.isClusterFailure(new IllegalStateException("Container jnlp exited with error 1")));
+    }
+}
@@ -0,0 +1,84 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.NodeBuilder;
+import io.fabric8.kubernetes.api.model.NodeConditionBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
+
+public class ClusterCapacityTest {
+
+    private static final PodResources ONE_CPU = PodResources.of(template("1", "1Gi"));
+
+    @Test
+    public void testAvailableSlots() {
+        ClusterCapacity capacity = ClusterCapacity.of(Arrays.asList(node("a", "4"), node("b", "2")),
+                Arrays.asList(pod("web", "a", "1", Collections.emptyMap())));
+
+        // 3 cpus left on a and 2 on b
+        assertEquals(5, capacity.getAvailableSlots(Collections.emptyMap(), ONE_CPU));
+        assertEquals(2, capacity.getAvailableSlots(ImmutableMap.of("pool", "b"), ONE_CPU));
+    }
+
+    @Test
+    public void testPendingAgentPodsTakeRoom() {
+        ClusterCapacity capacity = ClusterCapacity.of(Arrays.asList(node("a", "4")),
+                Arrays.asList(pod("agent-1", null, "1", KubernetesCloud.DEFAULT_POD_LABELS),
+                        pod("agent-2", null, "2", KubernetesCloud.DEFAULT_POD_LABELS),
+                        // not an agent, may never be scheduled
+                        pod("other", null, "1", Collections.emptyMap())));
+
+        assertEquals(1, capacity.getAvailableSlots(Collections.emptyMap(), ONE_CPU));
+    }
+
+    @Test
+    public void testCordonedNode() {
+        Node cordoned = new NodeBuilder(node("a", "4")).editSpec().withUnschedulable(true).endSpec().build();
+        ClusterCapacity capacity = ClusterCapacity.of(Arrays.asList(cordoned), Collections.emptyList());
+
+        assertEquals(0, capacity.getAvailableSlots(Collections.emptyMap(), ONE_CPU));
+    }
+
+    private static Node node(String name, String cpu) {
+        return new NodeBuilder() //
+                .withNewMetadata().withName(name).withLabels(ImmutableMap.of("pool", name)).endMetadata() //
+                .withNewSpec().endSpec() //
+                .withNewStatus() //
+                .withAllocatable(ImmutableMap.of("cpu", new Quantity(cpu), "memory", new Quantity("64Gi"), "pods",
+                        new Quantity("110"))) //
+                .withConditions(new NodeConditionBuilder().withType("Ready").withStatus("True").build()) //
+                .endStatus() //
+                .build();
+    }
+
+    private static Pod pod(String name, String nodeName, String cpu, Map<String, String> labels) {
+        return new PodBuilder() //
+                .withNewMetadata().withName(name).withNamespace("default").withLabels(labels).endMetadata() //
+                .withNewSpec().withNodeName(nodeName) //
+                .addNewContainer().withName("main").withNewResources()
+                .withRequests(ImmutableMap.of("cpu", new Quantity(cpu))).endResources().endContainer() //
+                .endSpec() //
+                .withNewStatus().withPhase("Pending").endStatus() //
+                .build();
+    }
+
+    private static PodTemplate template(String cpu, String memory) {
+        ContainerTemplate maven = new ContainerTemplate("maven", "maven:1");
+        maven.setResourceRequestCpu(cpu);
+        maven.setResourceRequestMemory(memory);
+        PodTemplate template = new PodTemplate();
+        template.setContainers(Arrays.asList(maven));
+        return template;
+    }
+}
@@ -0,0 +1,41 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ContainerLogArchiverTest {
+
+    @Test
+    public void testLogUrl() throws Exception {
+        assertEquals("https://kubernetes.default.svc/api/v1/namespaces/jenkins/pods/maven-abcde/log"
+                + "?container=mongo&limitBytes=101",
+                ContainerLogArchiver.getLogUrl(new URL("https://kubernetes.default.svc/"), "jenkins", "maven-abcde",
+                        "mongo", 101).toString());
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5, ContainerLogArchiver.copy(stream("hello"), out, 10));
+        assertEquals("hello", out.toString("UTF-8"));
+
+        out.reset();
+        assertEquals(10, ContainerLogArchiver.copy(stream("0123456789"), out, 10));
+        assertEquals("0123456789", out.toString("UTF-8"));
+
+        out.reset();
+        assertEquals(10, ContainerLogArchiver.copy(stream("0123456789a"), out, 10));
+        assertTrue(out.toString("UTF-8").startsWith("0123456789"));
+        assertTrue(out.toString("UTF-8").contains("[log truncated after 10 bytes]"));
+    }
+
+    private static ByteArrayInputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
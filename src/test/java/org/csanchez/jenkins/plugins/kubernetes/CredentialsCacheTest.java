@@ -0,0 +1,59 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+
+public class CredentialsCacheTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void testExpiry() throws Exception {
+        SystemCredentialsProvider provider = SystemCredentialsProvider.getInstance();
+        // changed without saving, as other providers do without telling
+        provider.getCredentials().add(credentials("cache-ttl", "first"));
+        long now = System.currentTimeMillis();
+        assertEquals("first", CredentialsCache.getCredentials("cache-ttl", now).getDescription());
+
+        provider.getCredentials().clear();
+        provider.getCredentials().add(credentials("cache-ttl", "second"));
+        assertEquals("first", CredentialsCache.getCredentials("cache-ttl", now + 1000).getDescription());
+        assertEquals("second",
+                CredentialsCache.getCredentials("cache-ttl", now + CredentialsCache.TTL + 1).getDescription());
+    }
+
+    @Test
+    public void testInvalidatedOnSave() throws Exception {
+        SystemCredentialsProvider provider = SystemCredentialsProvider.getInstance();
+        provider.getCredentials().add(credentials("cache-save", "first"));
+        provider.save();
+        StandardCredentials first = CredentialsCache.getCredentials("cache-save");
+        assertEquals("first", first.getDescription());
+        assertSame(first, CredentialsCache.getCredentials("cache-save"));
+
+        provider.getCredentials().clear();
+        provider.getCredentials().add(credentials("cache-save", "second"));
+        provider.save();
+        assertEquals("second", CredentialsCache.getCredentials("cache-save").getDescription());
+    }
+
+    @Test
+    public void testMissingCredentialsAreNotCached() throws Exception {
+        assertNull(CredentialsCache.getCredentials("cache-missing"));
+        SystemCredentialsProvider.getInstance().getCredentials().add(credentials("cache-missing", "added"));
+        assertEquals("added", CredentialsCache.getCredentials("cache-missing").getDescription());
+    }
+
+    private static StandardCredentials credentials(String id, String description) {
+        return new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, id, description, "user", "password");
+    }
+}
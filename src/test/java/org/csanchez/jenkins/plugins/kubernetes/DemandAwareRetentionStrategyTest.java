@@ -0,0 +1,46 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class DemandAwareRetentionStrategyTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void testTerminatesAgentsNotConnectedInTime() throws Exception {
+        PodTemplate template = new PodTemplate();
+        template.setName("maven");
+        DemandAwareRetentionStrategy strategy = new DemandAwareRetentionStrategy("kubernetes", "maven", 100);
+        KubernetesSlave slave = new KubernetesSlave(template, "maven", "kubernetes", "maven", strategy);
+        r.jenkins.addNode(slave);
+        KubernetesComputer computer = (KubernetesComputer) slave.toComputer();
+        assertNotNull(computer);
+        // the pod of a JNLP agent is still starting until it connects
+        assertTrue(computer.isOffline());
+
+        // within the connect timeout
+        strategy.check(computer, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10));
+        assertNotNull(r.jenkins.getNode(slave.getNodeName()));
+
+        // past the connect timeout, the pod died or never connected
+        strategy.check(computer, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(200));
+        assertNull(r.jenkins.getNode(slave.getNodeName()));
+    }
+
+    @Test
+    public void testIdleTimeSinceConnected() {
+        long now = System.currentTimeMillis();
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        // connected after the computer was created, and no task ran since
+        assertEquals(minute, DemandAwareRetentionStrategy.getIdleTime(now - minute, now - 10 * minute, now));
+        // a task ended after the agent connected
+        assertEquals(2 * minute, DemandAwareRetentionStrategy.getIdleTime(now - 5 * minute, now - 2 * minute, now));
+    }
+}
@@ -0,0 +1,39 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+
+public class DemandHistoryTest {
+
+    @Test
+    public void testBucket() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
+        calendar.set(Calendar.HOUR_OF_DAY, 9);
+        assertEquals(24 + 9, DemandHistory.bucket(calendar.getTimeInMillis()));
+    }
+
+    @Test
+    public void testForecast() {
+        DemandHistory.LabelDemand demand = new DemandHistory.LabelDemand();
+        assertEquals(0, demand.forecast(9), 0);
+
+        // first week, peak of 10 at 9
+        assertFalse(demand.record(9, 4));
+        demand.record(9, 10);
+        demand.record(9, 2);
+        assertTrue(demand.record(10, 0));
+        assertEquals(10, demand.forecast(9), 0);
+        assertEquals("not enough history yet", demand.getAccuracy());
+
+        // second week, peak of 20 at 9
+        demand.record(9, 20);
+        demand.record(10, 0);
+        assertEquals(0.3 * 20 + 0.7 * 10, demand.forecast(9), 0.001);
+        assertEquals("mean absolute error of 10.0 agents over 1 hours",
+                demand.getAccuracy().replace(',', '.'));
+    }
+}
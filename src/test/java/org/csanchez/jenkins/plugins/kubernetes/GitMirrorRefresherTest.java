@@ -0,0 +1,120 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.csanchez.jenkins.plugins.kubernetes.volumes.GitReferenceMirrorVolume;
+import org.csanchez.jenkins.plugins.kubernetes.volumes.PodVolume;
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Affinity;
+import io.fabric8.kubernetes.api.model.NodeSelectorTerm;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSet;
+
+public class GitMirrorRefresherTest {
+
+    @Test
+    public void testDesiredDaemonSets() {
+        PodTemplate maven = new PodTemplate();
+        maven.setName("maven");
+        maven.setVolumes(Arrays.<PodVolume> asList(
+                new GitReferenceMirrorVolume("/mirror", "https://example.com/a.git\nhttps://example.com/b.git", 10)));
+        PodTemplate gradle = new PodTemplate();
+        gradle.setName("gradle");
+        gradle.setVolumes(Arrays.<PodVolume> asList(
+                new GitReferenceMirrorVolume("/git", "https://example.com/b.git https://example.com/a.git", 5)));
+        PodTemplate other = new PodTemplate();
+        other.setName("other");
+
+        KubernetesCloud cloud = new KubernetesCloud("kubernetes");
+        cloud.setTemplates(Arrays.asList(maven, gradle, other));
+
+        Map<String, DaemonSet> daemonSets = new GitMirrorRefresher().getDesiredDaemonSets(cloud);
+        assertEquals(1, daemonSets.size());
+        DaemonSet daemonSet = daemonSets.values().iterator().next();
+        String script = daemonSet.getSpec().getTemplate().getSpec().getContainers().get(0).getCommand().get(2);
+        assertTrue(script.contains("sleep 300\n"));
+        assertTrue(script.contains("'https://example.com/a.git'"));
+        assertTrue(script.contains("'https://example.com/b.git'"));
+
+        cloud.setTemplates(Arrays.asList(other));
+        assertTrue(new GitMirrorRefresher().getDesiredDaemonSets(cloud).isEmpty());
+    }
+
+    @Test
+    public void testOneDaemonSetPerHostPath() {
+        PodTemplate linux = new PodTemplate();
+        linux.setName("linux");
+        linux.setNodeSelector("os=linux");
+        linux.setVolumes(Arrays.<PodVolume> asList(
+                new GitReferenceMirrorVolume("/mirror", "https://example.com/a.git", 10)));
+        PodTemplate ssd = new PodTemplate();
+        ssd.setName("ssd");
+        ssd.setNodeSelector("disk=ssd");
+        ssd.setVolumes(Arrays.<PodVolume> asList(
+                new GitReferenceMirrorVolume("/mirror", "https://example.com/a.git", 10)));
+
+        KubernetesCloud cloud = new KubernetesCloud("kubernetes");
+        cloud.setTemplates(Arrays.asList(linux, ssd));
+
+        // both templates share the host path, so a single daemon set runs on the nodes of either
+        Map<String, DaemonSet> daemonSets = new GitMirrorRefresher().getDesiredDaemonSets(cloud);
+        assertEquals(1, daemonSets.size());
+        Affinity affinity = daemonSets.values().iterator().next().getSpec().getTemplate().getSpec().getAffinity();
+        List<NodeSelectorTerm> terms = affinity.getNodeAffinity().getRequiredDuringSchedulingIgnoredDuringExecution()
+                .getNodeSelectorTerms();
+        assertEquals(2, terms.size());
+        assertEquals("os", terms.get(0).getMatchExpressions().get(0).getKey());
+        assertEquals("disk", terms.get(1).getMatchExpressions().get(0).getKey());
+
+        PodTemplate any = new PodTemplate();
+        any.setName("any");
+        any.setVolumes(Arrays.<PodVolume> asList(
+                new GitReferenceMirrorVolume("/mirror", "https://example.com/a.git", 10)));
+        cloud.setTemplates(Arrays.asList(linux, ssd, any));
+        daemonSets = new GitMirrorRefresher().getDesiredDaemonSets(cloud);
+        assertEquals(1, daemonSets.size());
+        assertNull(daemonSets.values().iterator().next().getSpec().getTemplate().getSpec().getAffinity());
+    }
+
+    @Test
+    public void testFetchScriptQuotesUrls() {
+        String script = GitMirrorRefresher.getFetchScript(Collections.singletonList("https://example.com/it's.git"),
+                1);
+        assertTrue(script.contains("'https://example.com/it'\\''s.git'"));
+    }
+
+    @Test
+    public void testFetchScriptKeepsObjects() {
+        String script = GitMirrorRefresher.getFetchScript(Collections.singletonList("https://example.com/a.git"), 1);
+        assertTrue(script.contains("git config gc.auto 0"));
+    }
+
+    @Test
+    public void testDescribe() {
+        long now = TimeUnit.HOURS.toMillis(10);
+        String since = Instant.ofEpochMilli(now - TimeUnit.MINUTES.toMillis(30)).toString();
+        assertEquals("not fetched yet", GitMirrorRefresher.describe(pod(null, null), 10, now));
+        assertTrue(GitMirrorRefresher.describe(pod("True", since), 10, now).startsWith("fetched in the last "));
+        String stale = GitMirrorRefresher.describe(pod("False", since), 10, now);
+        assertTrue(stale, stale.startsWith("stale, not fetched for at least 30 min"));
+    }
+
+    private static Pod pod(String ready, String since) {
+        PodBuilder pod = new PodBuilder().withNewMetadata().withName("jenkins-git-mirror-abc").endMetadata();
+        if (ready != null) {
+            pod.withNewStatus() //
+                    .addNewCondition().withType("Ready").withStatus(ready).withLastTransitionTime(since).endCondition() //
+                    .endStatus();
+        }
+        return pod.build();
+    }
+}
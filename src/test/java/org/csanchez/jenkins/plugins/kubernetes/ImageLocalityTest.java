@@ -0,0 +1,32 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.ImageLocality.*;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ImageLocalityTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("docker.io/library/maven:latest", normalize("maven"));
+        assertEquals("docker.io/library/maven:3.5", normalize("maven:3.5"));
+        assertEquals("docker.io/jenkinsci/jnlp-slave:alpine", normalize("jenkinsci/jnlp-slave:alpine"));
+        assertEquals("docker.io/jenkinsci/jnlp-slave:alpine", normalize("docker.io/jenkinsci/jnlp-slave:alpine"));
+        assertEquals("gcr.io/project/image:latest", normalize("gcr.io/project/image"));
+        assertEquals("localhost:5000/image:1", normalize("localhost:5000/image:1"));
+        assertEquals("docker.io/library/maven@sha256:abc", normalize("maven@sha256:abc"));
+    }
+
+    @Test
+    public void testWeights() {
+        Map<String, Integer> weights = getWeights(ImmutableMap.of("a", 1000L, "b", 500L, "c", 0L, "d", 1L));
+        assertEquals(ImmutableMap.of("a", 100, "b", 50, "d", 1), weights);
+        assertTrue(getWeights(ImmutableMap.of("a", 0L)).isEmpty());
+        assertNull(getAffinity(ImmutableMap.of()));
+    }
+}
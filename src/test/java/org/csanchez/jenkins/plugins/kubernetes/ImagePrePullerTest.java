@@ -0,0 +1,86 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSet;
+
+public class ImagePrePullerTest {
+
+    @Test
+    public void testDesiredDaemonSets() {
+        PodTemplate maven = new PodTemplate();
+        maven.setName("maven");
+        maven.setPrePull(true);
+        maven.setContainers(Arrays.asList(new ContainerTemplate("maven", "maven:3")));
+        PodTemplate gradle = new PodTemplate();
+        gradle.setName("gradle");
+        gradle.setPrePull(true);
+        gradle.setContainers(Arrays.asList(new ContainerTemplate("gradle", "gradle:4")));
+        PodTemplate gpu = new PodTemplate();
+        gpu.setName("gpu");
+        gpu.setPrePull(true);
+        gpu.setNodeSelector("gpu=true");
+        gpu.setContainers(Arrays.asList(new ContainerTemplate("cuda", "cuda:8")));
+        PodTemplate other = new PodTemplate();
+        other.setName("other");
+        other.setContainers(Arrays.asList(new ContainerTemplate("other", "other:1")));
+
+        KubernetesCloud cloud = new KubernetesCloud("kubernetes");
+        cloud.setTemplates(Arrays.asList(maven, gradle, gpu, other));
+
+        Map<String, Map<String, DaemonSet>> namespaces = new ImagePrePuller().getDesiredDaemonSets(cloud, "jenkins");
+        assertEquals(Collections.singleton("jenkins"), namespaces.keySet());
+        Map<String, DaemonSet> daemonSets = namespaces.get("jenkins");
+        assertEquals(2, daemonSets.size());
+        for (DaemonSet daemonSet : daemonSets.values()) {
+            List<String> images = daemonSet.getSpec().getTemplate().getSpec().getContainers().stream()
+                    .map(Container::getImage).collect(Collectors.toList());
+            assertEquals(ProvisioningCallback.DEFAULT_JNLP_IMAGE, images.get(0));
+            if (daemonSet.getSpec().getTemplate().getSpec().getNodeSelector().isEmpty()) {
+                assertEquals(Arrays.asList("maven:3", "gradle:4"), images.subList(1, images.size()));
+            } else {
+                assertEquals(Arrays.asList("cuda:8"), images.subList(1, images.size()));
+            }
+        }
+
+        cloud.setTemplates(Arrays.asList(other));
+        assertTrue(new ImagePrePuller().getDesiredDaemonSets(cloud, "jenkins").isEmpty());
+    }
+
+    @Test
+    public void testDaemonSetPerNamespace() {
+        PodTemplate maven = new PodTemplate();
+        maven.setName("maven");
+        maven.setPrePull(true);
+        maven.setContainers(Arrays.asList(new ContainerTemplate("maven", "maven:3")));
+        PodTemplate team = new PodTemplate();
+        team.setName("team");
+        team.setPrePull(true);
+        team.setNamespace("team");
+        team.setImagePullSecrets(Arrays.asList(new PodImagePullSecret("team-registry")));
+        team.setContainers(Arrays.asList(new ContainerTemplate("private", "registry.example.com/private:1")));
+
+        KubernetesCloud cloud = new KubernetesCloud("kubernetes");
+        cloud.setTemplates(Arrays.asList(maven, team));
+
+        // the pull secret only exists in the namespace of its template
+        Map<String, Map<String, DaemonSet>> namespaces = new ImagePrePuller().getDesiredDaemonSets(cloud, "jenkins");
+        assertEquals(2, namespaces.size());
+        DaemonSet jenkins = namespaces.get("jenkins").values().iterator().next();
+        assertTrue(jenkins.getSpec().getTemplate().getSpec().getImagePullSecrets().isEmpty());
+        DaemonSet other = namespaces.get("team").values().iterator().next();
+        assertEquals("team-registry",
+                other.getSpec().getTemplate().getSpec().getImagePullSecrets().get(0).getName());
+        assertEquals("registry.example.com/private:1",
+                other.getSpec().getTemplate().getSpec().getContainers().get(1).getImage());
+    }
+}
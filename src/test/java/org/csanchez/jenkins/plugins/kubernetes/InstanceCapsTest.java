@@ -0,0 +1,151 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class InstanceCapsTest {
+
+    private static final int THREADS = 8;
+
+    private static final Map<String, String> LABELS = ImmutableMap.of("jenkins", "slave", "jenkins/maven", "true");
+
+    @Test
+    public void testConcurrentReservationsWithinContainerCap() throws Exception {
+        InstanceCaps caps = new InstanceCaps();
+        PodTemplate template = template(Integer.MAX_VALUE);
+        List<Map<String, String>> running = new ArrayList<>();
+        running.add(LABELS);
+        CountDownLatch start = new CountDownLatch(1);
+        // slow enough for all the threads to list the pods before any of them reserves
+        Supplier<List<Map<String, String>>> lister = () -> {
+            sleep(100);
+            return new ArrayList<>(running);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> reserved = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                reserved.add(executor.submit(() -> {
+                    start.await();
+                    return caps.reserve(lister, "default", template, LABELS, 4, 1).getCount();
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> r : reserved) {
+                total += r.get(10, TimeUnit.SECONDS);
+            }
+            // one pod is already running
+            assertEquals(3, total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPodsCreatedConcurrentlyNeverExceedCaps() throws Exception {
+        InstanceCaps caps = new InstanceCaps();
+        PodTemplate template = template(3);
+        List<Map<String, String>> cluster = new CopyOnWriteArrayList<>();
+        Supplier<List<Map<String, String>>> lister = () -> {
+            List<Map<String, String>> pods = new ArrayList<>(cluster);
+            sleep(5);
+            return pods;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 20; j++) {
+                        InstanceCaps.Reservation reservation = caps.reserve(lister, "default", template, LABELS, 5, 1);
+                        if (reservation.getCount() > 0) {
+                            // the pod is created before the reservation turns into it, as the provisioning does
+                            cluster.add(LABELS);
+                            reservation.created();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+            // the template cap is lower than the container cap
+            assertEquals(3, cluster.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReleaseFreesRoom() {
+        InstanceCaps caps = new InstanceCaps();
+        PodTemplate template = template(Integer.MAX_VALUE);
+        Supplier<List<Map<String, String>>> lister = ArrayList::new;
+
+        InstanceCaps.Reservation first = caps.reserve(lister, "default", template, LABELS, 2, 2);
+        assertEquals(2, first.getCount());
+        assertEquals(0, caps.reserve(lister, "default", template, LABELS, 2, 1).getCount());
+
+        // the pod could not be created
+        first.release();
+        assertEquals(1, first.getCount());
+        assertEquals(1, caps.reserve(lister, "default", template, LABELS, 2, 1).getCount());
+    }
+
+    @Test
+    public void testCreatedPodsCountedUntilNextListing() {
+        InstanceCaps caps = new InstanceCaps();
+        PodTemplate template = template(Integer.MAX_VALUE);
+        AtomicInteger listings = new AtomicInteger();
+        // the snapshot does not see the pods created after it
+        Supplier<List<Map<String, String>>> lister = () -> {
+            listings.incrementAndGet();
+            return new ArrayList<>();
+        };
+
+        InstanceCaps.Reservation first = caps.reserve(lister, "default", template, LABELS, 2, 1);
+        first.created();
+        InstanceCaps.Reservation second = caps.reserve(lister, "default", template, LABELS, 2, 1);
+        second.created();
+        assertEquals(0, caps.reserve(lister, "default", template, LABELS, 2, 1).getCount());
+        // the creations did not drop the snapshot
+        assertEquals(1, listings.get());
+    }
+
+    private static PodTemplate template(int instanceCap) {
+        PodTemplate template = new PodTemplate();
+        template.setName("maven");
+        template.setInstanceCap(instanceCap);
+        return template;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
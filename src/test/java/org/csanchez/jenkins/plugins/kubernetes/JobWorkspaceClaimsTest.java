@@ -0,0 +1,77 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.JobWorkspaceClaims.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.csanchez.jenkins.plugins.kubernetes.volumes.workspace.JobPersistentVolumeClaimWorkspaceVolume;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
+
+public class JobWorkspaceClaimsTest {
+
+    private static final long GI = 1024L * 1024 * 1024;
+
+    private final PersistentVolumeClaim leased = claim("leased");
+    private final PersistentVolumeClaim oldest = claim("oldest");
+    private final PersistentVolumeClaim recent = claim("recent");
+    private final List<PersistentVolumeClaim> claims = Arrays.asList(leased, oldest, recent);
+    private final List<PersistentVolumeClaim> free = Arrays.asList(oldest, recent);
+
+    @Test
+    public void testRoomLeft() {
+        assertEquals(Collections.emptyList(), getEvictions(claims, free, 10 * GI, 4, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEvictsOverMaxClaims() {
+        assertEquals(Collections.singletonList(oldest), getEvictions(claims, free, 10 * GI, 3, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(oldest, recent), getEvictions(claims, free, 10 * GI, 2, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEvictsOverBudget() {
+        assertEquals(Collections.singletonList(oldest), getEvictions(claims, free, 10 * GI, 10, 30 * GI));
+    }
+
+    @Test
+    public void testNoEvictionsWithoutRoom() {
+        // the leased claim alone already takes the whole budget
+        assertNull(getEvictions(claims, free, 10 * GI, 10, 15 * GI));
+        // a zero maximum would delete every free claim for nothing
+        assertNull(getEvictions(claims, free, 10 * GI, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testVolumeProblems() {
+        assertNull(new JobPersistentVolumeClaimWorkspaceVolume("10Gi", 20).getProblem());
+        assertNotNull(new JobPersistentVolumeClaimWorkspaceVolume("10Gi", 0).getProblem());
+        assertNotNull(new JobPersistentVolumeClaimWorkspaceVolume("", 20).getProblem());
+        assertNotNull(new JobPersistentVolumeClaimWorkspaceVolume("ten gigs", 20).getProblem());
+
+        JobPersistentVolumeClaimWorkspaceVolume volume = new JobPersistentVolumeClaimWorkspaceVolume("10Gi", 20);
+        volume.setStorageBudget("100Gi");
+        assertNull(volume.getProblem());
+        volume.setStorageBudget("5Gi");
+        assertNotNull(volume.getProblem());
+        volume.setStorageBudget("lots");
+        assertNotNull(volume.getProblem());
+    }
+
+    private static PersistentVolumeClaim claim(String name) {
+        return new PersistentVolumeClaimBuilder() //
+                .withNewMetadata().withName(name).endMetadata() //
+                .withNewSpec() //
+                .withNewResources().withRequests(ImmutableMap.of("storage", new Quantity("10Gi"))).endResources() //
+                .endSpec() //
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.KubectlBuildWrapper.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KubectlBuildWrapperTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRenderConfig() {
+        String config = renderConfig("https://k8s:6443", "", "    token: \"abc\"\n");
+        assertEquals("apiVersion: v1\n" //
+                + "kind: Config\n" //
+                + "clusters:\n" //
+                + "- name: k8s\n" //
+                + "  cluster:\n" //
+                + "    server: \"https://k8s:6443\"\n" //
+                + "    insecure-skip-tls-verify: true\n" //
+                + "users:\n" //
+                + "- name: cluster-admin\n" //
+                + "  user:\n" //
+                + "    token: \"abc\"\n" //
+                + "contexts:\n" //
+                + "- name: k8s\n" //
+                + "  context:\n" //
+                + "    cluster: k8s\n" //
+                + "    user: cluster-admin\n" //
+                + "current-context: k8s\n", config);
+    }
+
+    @Test
+    public void testRenderConfigWithCa() {
+        String config = renderConfig("https://k8s:6443", "MIIC", "    token: \"abc\"\n");
+        // base64 of the certificate wrapped in PEM markers
+        assertTrue(config.contains("    certificate-authority-data: "
+                + "LS0tLS1CRUdJTiBDRVJUSUZJQ0FURS0tLS0tCk1JSUMKLS0tLS1FTkQgQ0VSVElGSUNBVEUtLS0tLQ==\n"));
+        assertFalse(config.contains("insecure-skip-tls-verify"));
+    }
+
+    @Test
+    public void testQuote() {
+        assertEquals("\"p@ss: \\\"x\\\" \\\\ y\"", quote("p@ss: \"x\" \\ y"));
+    }
+
+    @Test
+    public void testWriteConfigOwnerOnly() throws Exception {
+        File root = tmp.getRoot();
+        Assume.assumeTrue(Files.getFileStore(root.toPath()).supportsFileAttributeView("posix"));
+        File f = new File(root, ".kubeconfig");
+
+        new WriteConfig("config").invoke(f, null);
+        assertEquals("config", new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(f.toPath())));
+        // no temporary file left behind
+        assertEquals(1, root.list().length);
+    }
+}
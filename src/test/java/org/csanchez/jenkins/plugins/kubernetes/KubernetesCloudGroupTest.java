@@ -0,0 +1,49 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class KubernetesCloudGroupTest {
+
+    @Test
+    public void testAllocateBySlots() {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        slots.put("group-slots-a", 3);
+        slots.put("group-slots-b", 1);
+
+        Map<String, Integer> allocation = KubernetesCloudGroup.allocate(slots, CloudHealth::get, 4);
+        assertEquals(Integer.valueOf(3), allocation.get("group-slots-a"));
+        assertEquals(Integer.valueOf(1), allocation.get("group-slots-b"));
+    }
+
+    @Test
+    public void testAllocateAvoidsErrors() {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        slots.put("group-errors-a", 5);
+        slots.put("group-errors-b", 5);
+        CloudHealth.get("group-errors-b").recordFailure();
+        CloudHealth.get("group-errors-b").recordFailure();
+
+        // b scores 5 * (1 - 0.36) = 3.2, so a gets the first two agents
+        Map<String, Integer> allocation = KubernetesCloudGroup.allocate(slots, CloudHealth::get, 3);
+        assertEquals(Integer.valueOf(2), allocation.get("group-errors-a"));
+        assertEquals(Integer.valueOf(1), allocation.get("group-errors-b"));
+    }
+
+    @Test
+    public void testAllocateUpToSlots() {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        slots.put("group-full-a", 2);
+        slots.put("group-full-b", 0);
+
+        Map<String, Integer> allocation = KubernetesCloudGroup.allocate(slots, CloudHealth::get, 10);
+        assertEquals(Integer.valueOf(2), allocation.get("group-full-a"));
+        assertFalse(allocation.containsKey("group-full-b"));
+        // the slots of the caller are left as they were
+        assertEquals(Integer.valueOf(2), slots.get("group-full-a"));
+    }
+}
@@ -0,0 +1,135 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.LimitRange;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.ResourceQuota;
+import io.fabric8.kubernetes.api.model.ResourceQuotaBuilder;
+
+public class NamespaceQuotaTest {
+
+    @Test
+    public void testAvailableSlots() {
+        NamespaceQuota quota = quota(ImmutableMap.of("pods", new Quantity("10"), "requests.cpu", new Quantity("2")),
+                ImmutableMap.of("pods", new Quantity("4"), "requests.cpu", new Quantity("500m")));
+        PodResources resources = quota.getPodResources(template("250m", "1Gi", null, null));
+
+        // 1500m left for 250m pods, the jnlp container added by the plugin requests nothing
+        assertEquals(6, quota.getAvailableSlots(resources));
+        quota.reserve(resources, 2);
+        assertEquals(4, quota.getAvailableSlots(resources));
+    }
+
+    @Test
+    public void testMissingLimitOfSomeContainer() {
+        NamespaceQuota quota = quota(ImmutableMap.of("limits.memory", new Quantity("8Gi")), null);
+
+        // the maven container sets a memory limit but the jnlp container added by the plugin does not
+        String reason = quota.getRejectionReason(quota.getPodResources(template(null, null, null, "1Gi")));
+        assertNotNull(reason);
+        assertTrue(reason, reason.contains("memory limit"));
+    }
+
+    @Test
+    public void testMissingRequest() {
+        NamespaceQuota quota = quota(ImmutableMap.of("requests.cpu", new Quantity("4")), null);
+
+        String reason = quota.getRejectionReason(quota.getPodResources(template(null, null, null, null)));
+        assertNotNull(reason);
+        assertTrue(reason, reason.contains("cpu request"));
+    }
+
+    @Test
+    public void testOverHardLimit() {
+        NamespaceQuota quota = quota(ImmutableMap.of("requests.memory", new Quantity("1Gi")), null);
+
+        PodTemplate template = template(null, "2Gi", null, null);
+        template.getContainers().get(1).setResourceRequestMemory("64Mi");
+        String reason = quota.getRejectionReason(quota.getPodResources(template));
+        assertNotNull(reason);
+        assertTrue(reason, reason.contains("allows"));
+    }
+
+    @Test
+    public void testAdmitted() {
+        NamespaceQuota quota = quota(ImmutableMap.of("limits.cpu", new Quantity("4"), "pods", new Quantity("10")),
+                null);
+
+        PodTemplate template = template(null, null, "1", null);
+        template.getContainers().get(1).setResourceLimitCpu("500m");
+        assertNull(quota.getRejectionReason(quota.getPodResources(template)));
+    }
+
+    @Test
+    public void testNoQuotas() {
+        NamespaceQuota quota = new NamespaceQuota("kubernetes", "default");
+        quota.update(Collections.<ResourceQuota> emptyList(), Collections.<LimitRange> emptyList());
+
+        PodResources resources = quota.getPodResources(template(null, null, null, null));
+        assertNull(quota.getRejectionReason(resources));
+        assertEquals(Integer.MAX_VALUE, quota.getAvailableSlots(resources));
+    }
+
+    @Test
+    public void testScopedQuotas() {
+        Map<String, Quantity> hard = ImmutableMap.of("pods", new Quantity("0"));
+        ResourceQuota terminating = new ResourceQuotaBuilder() //
+                .withNewMetadata().withName("terminating").endMetadata() //
+                .withNewSpec().withHard(hard).withScopes("Terminating").endSpec() //
+                .build();
+        ResourceQuota bestEffort = new ResourceQuotaBuilder() //
+                .withNewMetadata().withName("best-effort").endMetadata() //
+                .withNewSpec().withHard(hard).withScopes("BestEffort").endSpec() //
+                .build();
+        NamespaceQuota quota = new NamespaceQuota("kubernetes", "default");
+        quota.update(Arrays.asList(terminating, bestEffort), Collections.<LimitRange> emptyList());
+
+        // agent pods have no active deadline, and only the pods without resources are best effort
+        assertEquals(Integer.MAX_VALUE, quota.getAvailableSlots(quota.getPodResources(template("1", null, null, null))));
+        assertEquals(0, quota.getAvailableSlots(quota.getPodResources(template(null, null, null, null))));
+    }
+
+    @Test
+    public void testInvalidResourcesNotSet() {
+        NamespaceQuota quota = quota(ImmutableMap.of("requests.cpu", new Quantity("4")), null);
+
+        PodResources resources = quota.getPodResources(template("lots", "1Gi", null, null));
+        assertEquals(2, resources.getContainers().size());
+        assertEquals(0, resources.getCpuRequest());
+        assertEquals(1024L * 1024 * 1024, resources.getMemoryRequest());
+        assertNotNull(quota.getRejectionReason(resources));
+    }
+
+    private static NamespaceQuota quota(Map<String, Quantity> hard, Map<String, Quantity> used) {
+        ResourceQuota resourceQuota = new ResourceQuotaBuilder() //
+                .withNewMetadata().withName("compute").endMetadata() //
+                .withNewSpec().withHard(hard).endSpec() //
+                .withNewStatus().withHard(hard).withUsed(used).endStatus() //
+                .build();
+        NamespaceQuota quota = new NamespaceQuota("kubernetes", "default");
+        quota.update(Arrays.asList(resourceQuota), Collections.<LimitRange> emptyList());
+        return quota;
+    }
+
+    private static PodTemplate template(String cpuRequest, String memoryRequest, String cpuLimit,
+            String memoryLimit) {
+        ContainerTemplate maven = new ContainerTemplate("maven", "maven:1");
+        maven.setResourceRequestCpu(cpuRequest);
+        maven.setResourceRequestMemory(memoryRequest);
+        maven.setResourceLimitCpu(cpuLimit);
+        maven.setResourceLimitMemory(memoryLimit);
+        ContainerTemplate jnlp = new ContainerTemplate("jnlp", "jnlp:1");
+        PodTemplate template = new PodTemplate();
+        template.setContainers(Arrays.asList(maven, jnlp));
+        return template;
+    }
+}
@@ -0,0 +1,78 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClients;
+import org.csanchez.jenkins.plugins.kubernetes.OpenShiftBearerTokenCredentialImpl.PooledHttpClient;
+import org.csanchez.jenkins.plugins.kubernetes.OpenShiftBearerTokenCredentialImpl.RefreshStats;
+import org.csanchez.jenkins.plugins.kubernetes.OpenShiftBearerTokenCredentialImpl.Token;
+import org.junit.Test;
+
+public class OpenShiftBearerTokenCredentialImplTest {
+
+    private static final String LOCATION = "https://openshift.example.com/oauth/token/implicit#";
+
+    @Test
+    public void testParseToken() throws Exception {
+        long issued = System.currentTimeMillis();
+        Token t = OpenShiftBearerTokenCredentialImpl.parseToken(
+                LOCATION + "access_token=abc&expires_in=3600&token_type=Bearer", issued);
+        assertEquals("abc", t.value);
+        assertEquals(issued + TimeUnit.HOURS.toMillis(1) - 100, t.expire);
+        // renewed at 80% of its lifetime
+        assertEquals(issued + TimeUnit.MINUTES.toMillis(48), t.refreshAt);
+        assertEquals(TimeUnit.MINUTES.toMillis(48), OpenShiftBearerTokenCredentialImpl.getRefreshDelay(t, issued));
+    }
+
+    @Test
+    public void testMissingExpiresIn() throws Exception {
+        long issued = System.currentTimeMillis();
+        Token t = OpenShiftBearerTokenCredentialImpl.parseToken(LOCATION + "access_token=abc", issued);
+        assertEquals(issued + OpenShiftBearerTokenCredentialImpl.DEFAULT_EXPIRES_IN - 100, t.expire);
+        assertTrue(t.refreshAt > issued);
+
+        t = OpenShiftBearerTokenCredentialImpl.parseToken(LOCATION + "access_token=abc&expires_in=soon", issued);
+        assertEquals(issued + OpenShiftBearerTokenCredentialImpl.DEFAULT_EXPIRES_IN - 100, t.expire);
+    }
+
+    @Test
+    public void testShortLivedTokenIsNotRenewedInALoop() throws Exception {
+        long issued = System.currentTimeMillis();
+        Token t = OpenShiftBearerTokenCredentialImpl.parseToken(LOCATION + "access_token=abc&expires_in=1", issued);
+        assertEquals(OpenShiftBearerTokenCredentialImpl.MIN_REFRESH_DELAY,
+                OpenShiftBearerTokenCredentialImpl.getRefreshDelay(t, issued + TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingAccessToken() throws Exception {
+        OpenShiftBearerTokenCredentialImpl.parseToken(LOCATION + "error=access_denied", System.currentTimeMillis());
+    }
+
+    @Test
+    public void testRefreshStats() {
+        assertNull(OpenShiftBearerTokenCredentialImpl.getRefreshStats("https://never.example.com"));
+        RefreshStats stats = new RefreshStats();
+        stats.recordSuccess(100);
+        stats.recordSuccess(300);
+        stats.recordFailure(2000);
+        assertEquals("3 token requests, 1 failed, 800 ms on average, 2000 ms the last time", stats.toString());
+    }
+
+    @Test
+    public void testIdleHttpClientClosed() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(HttpClients.createDefault());
+        long idle = OpenShiftBearerTokenCredentialImpl.HTTP_CLIENT_IDLE;
+        long later = System.currentTimeMillis() + idle + 1000;
+
+        assertTrue(client.acquire());
+        // a request is still using it
+        assertFalse(client.closeIfIdle(later, idle));
+        client.release();
+        assertFalse(client.closeIfIdle(System.currentTimeMillis(), idle));
+        assertTrue(client.closeIfIdle(later, idle));
+        assertFalse(client.acquire());
+    }
+}
@@ -0,0 +1,74 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.PersistentVolumeClaimPool.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.csanchez.jenkins.plugins.kubernetes.volumes.PooledPersistentVolumeClaim;
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimBuilder;
+
+public class PersistentVolumeClaimPoolTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long MONTH = TimeUnit.DAYS.toMillis(30);
+
+    @Test
+    public void testPoolIdOfVolume() {
+        String id = getPoolId(new PooledPersistentVolumeClaim("/root/.m2", 5, "10Gi"));
+        // the pool size may differ between templates
+        assertEquals(id, getPoolId(new PooledPersistentVolumeClaim("/root/.m2", 3, "10Gi")));
+        assertNotEquals(id, getPoolId(new PooledPersistentVolumeClaim("/root/.gradle", 5, "10Gi")));
+        assertNotEquals(id, getPoolId(new PooledPersistentVolumeClaim("/root/.m2", 5, "20Gi")));
+        PooledPersistentVolumeClaim fast = new PooledPersistentVolumeClaim("/root/.m2", 5, "10Gi");
+        fast.setStorageClassName("ssd");
+        assertNotEquals(id, getPoolId(fast));
+    }
+
+    @Test
+    public void testEvictionsOfShrunkPool() {
+        PersistentVolumeClaim recent = claim("recent", NOW - 1000);
+        PersistentVolumeClaim older = claim("older", NOW - 2000);
+        PersistentVolumeClaim oldest = claim("oldest", NOW - 3000);
+
+        // two leased claims and three free ones in a pool shrunk to three
+        assertEquals(Arrays.asList(oldest, older), getEvictions(Arrays.asList(recent, older, oldest), 5, 3, NOW));
+    }
+
+    @Test
+    public void testEvictsIdleClaimOfFullPool() {
+        PersistentVolumeClaim recent = claim("recent", NOW - 1000);
+        PersistentVolumeClaim idle = claim("idle", NOW - MONTH);
+
+        assertEquals(Collections.singletonList(idle), getEvictions(Arrays.asList(recent, idle), 3, 3, NOW));
+        // room left for a new claim
+        assertEquals(Collections.emptyList(), getEvictions(Arrays.asList(recent, idle), 2, 3, NOW));
+    }
+
+    @Test
+    public void testKeepsClaimsToLease() {
+        PersistentVolumeClaim recent = claim("recent", NOW - 1000);
+        PersistentVolumeClaim older = claim("older", NOW - 2000);
+        PersistentVolumeClaim idle = claim("idle", NOW - MONTH);
+
+        assertEquals(Collections.emptyList(), getEvictions(Arrays.asList(recent, older), 3, 3, NOW));
+        // the only free claim is leased, however long it was idle
+        assertEquals(Collections.emptyList(), getEvictions(Collections.singletonList(idle), 3, 3, NOW));
+    }
+
+    private static PersistentVolumeClaim claim(String name, long lastLease) {
+        return new PersistentVolumeClaimBuilder() //
+                .withNewMetadata() //
+                .withName(name) //
+                .addToLabels(POOL_LABEL, "pool") //
+                .addToAnnotations(LAST_LEASE_ANNOTATION, String.valueOf(lastLease)) //
+                .endMetadata() //
+                .build();
+    }
+}
@@ -0,0 +1,26 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PodEventsTest {
+
+    @After
+    public void cleanup() {
+        PodEvents.retain(Collections.<String> emptySet());
+    }
+
+    @Test
+    public void testRetain() {
+        PodEvents kept = PodEvents.get(new KubernetesCloud("kept"));
+        PodEvents.get(new KubernetesCloud("removed"));
+
+        PodEvents.retain(Collections.singleton("kept"));
+        assertSame(kept, PodEvents.peek("kept"));
+        assertNull(PodEvents.peek("removed"));
+    }
+}
@@ -369,4 +369,23 @@ public class PodTemplateUtilsTest {
         properties.put("key2", "value2");
         assertEquals("value1 or value2 or defaultValue", substitute("${key1} or ${key2} or ${key3}", properties, "defaultValue"));
     }
+
+    @Test
+    public void shouldHashIdenticalTemplatesTheSame() {
+        assertEquals(getTemplateHash(mavenTemplate("maven:3")), getTemplateHash(mavenTemplate("maven:3")));
+        assertNotEquals(getTemplateHash(mavenTemplate("maven:3")), getTemplateHash(mavenTemplate("maven:2")));
+
+        PodTemplate withSelector = mavenTemplate("maven:3");
+        withSelector.setNodeSelector("disk=ssd");
+        assertNotEquals(getTemplateHash(mavenTemplate("maven:3")), getTemplateHash(withSelector));
+    }
+
+    private static PodTemplate mavenTemplate(String image) {
+        PodTemplate template = new PodTemplate();
+        template.setLabel("maven");
+        template.setServiceAccount("jenkins");
+        template.setContainers(asList(new ContainerTemplate("maven", image)));
+        template.setEnvVars(asList(new KeyValueEnvVar("FOO", "bar")));
+        return template;
+    }
 }
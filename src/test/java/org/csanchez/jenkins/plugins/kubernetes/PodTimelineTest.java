@@ -0,0 +1,74 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+
+public class PodTimelineTest {
+
+    @Test
+    public void testDurations() {
+        PodTimeline timeline = new PodTimeline(Arrays.asList( //
+                entry(9000, PodTimeline.CONNECTED, null), //
+                entry(0, PodTimeline.SUBMITTED, null), //
+                entry(1000, "Scheduled", null), //
+                entry(2000, "Pulling", "maven"), //
+                entry(2000, "Pulled", "jnlp"), //
+                entry(5000, "Pulled", "maven"), //
+                entry(6000, "Started", "jnlp"), //
+                entry(7000, "Started", "maven")));
+
+        assertEquals(PodTimeline.SUBMITTED, timeline.getEntries().get(0).getReason());
+        Map<String, Long> phases = timeline.getPhaseDurations();
+        assertEquals(Arrays.asList("Scheduling", "Pulling images", "Starting containers", "Connecting the agent",
+                "Total"), Arrays.asList(phases.keySet().toArray()));
+        assertEquals(Long.valueOf(1000), phases.get("Scheduling"));
+        assertEquals(Long.valueOf(3000), phases.get("Pulling images"));
+        assertEquals(Long.valueOf(2000), phases.get("Starting containers"));
+        assertEquals(Long.valueOf(2000), phases.get("Connecting the agent"));
+        assertEquals(Long.valueOf(9000), phases.get("Total"));
+
+        // the jnlp image was already present
+        Map<String, Long> pulls = timeline.getImagePullDurations();
+        assertEquals(1, pulls.size());
+        assertEquals(Long.valueOf(3000), pulls.get("maven"));
+    }
+
+    @Test
+    public void testUnknownPhases() {
+        PodTimeline timeline = new PodTimeline(Arrays.asList(entry(0, PodTimeline.SUBMITTED, null),
+                entry(1000, "FailedScheduling", null)));
+        assertTrue(timeline.getPhaseDurations().isEmpty());
+        assertTrue(timeline.getImagePullDurations().isEmpty());
+    }
+
+    @Test
+    public void testToEntry() {
+        Event event = new EventBuilder() //
+                .withNewMetadata().withUid("uid").endMetadata() //
+                .withNewInvolvedObject().withKind("Pod").withName("maven-abcde")
+                .withFieldPath("spec.containers{maven}").endInvolvedObject() //
+                .withReason("BackOff").withMessage("Back-off restarting failed container")
+                .withFirstTimestamp("2017-10-01T10:00:00Z").withCount(3) //
+                .build();
+        PodTimeline.Entry entry = PodEvents.toEntry(event);
+        assertNotNull(entry);
+        assertEquals("maven", entry.getContainer());
+        assertEquals("BackOff", entry.getReason());
+        assertEquals(3, entry.getCount());
+        assertEquals(1506852000000L, entry.getTime());
+
+        event.getInvolvedObject().setKind("Node");
+        assertNull(PodEvents.toEntry(event));
+    }
+
+    private static PodTimeline.Entry entry(long time, String reason, String container) {
+        return new PodTimeline.Entry(time, reason, reason, container, 1);
+    }
+}
@@ -0,0 +1,71 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.NodeProvisioner;
+
+public class PredictiveProvisionerTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void testDoesNotProvisionTheSameForecastTwice() throws Exception {
+        PlanningCloud cloud = new PlanningCloud();
+        cloud.setMaxPredictedAgents(5);
+        PodTemplate template = new PodTemplate();
+        template.setName("maven");
+        template.setLabel("maven");
+        Label label = r.jenkins.getLabel("maven");
+        PredictiveProvisioner provisioner = new PredictiveProvisioner();
+
+        assertEquals(3, provisioner.provisionAhead(cloud, template, label, 3, 0, 0));
+        assertEquals(1, cloud.minIdleMinutes.size());
+        assertTrue("kept idle for the forecast horizon", cloud.minIdleMinutes.get(0) >= 15);
+
+        // the agents are still starting, not all of them counted yet
+        assertEquals(0, provisioner.provisionAhead(cloud, template, label, 3, 0, 1));
+
+        // the agents connected
+        for (CompletableFuture<Node> future : cloud.futures) {
+            future.complete(null);
+        }
+        assertEquals(0, provisioner.provisionAhead(cloud, template, label, 3, 0, 3));
+        assertEquals(1, cloud.minIdleMinutes.size());
+    }
+
+    /**
+     * Plans agents without creating pods.
+     */
+    private static class PlanningCloud extends KubernetesCloud {
+        final List<CompletableFuture<Node>> futures = new ArrayList<>();
+        final List<Integer> minIdleMinutes = new ArrayList<>();
+
+        PlanningCloud() {
+            super("kubernetes");
+        }
+
+        @Override
+        Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload, int minIdleMinutes) {
+            this.minIdleMinutes.add(minIdleMinutes);
+            List<NodeProvisioner.PlannedNode> nodes = new ArrayList<>();
+            for (int i = 0; i < excessWorkload; i++) {
+                CompletableFuture<Node> future = new CompletableFuture<>();
+                futures.add(future);
+                nodes.add(new NodeProvisioner.PlannedNode("maven", future, 1));
+            }
+            return nodes;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.csanchez.jenkins.plugins.kubernetes.ResourceQuantities.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.LimitRangeItem;
+import io.fabric8.kubernetes.api.model.Quantity;
+
+public class ResourceQuantitiesTest {
+
+    @Test
+    public void testParseCpu() {
+        assertEquals(0, parseCpu(null));
+        assertEquals(0, parseCpu(""));
+        assertEquals(500, parseCpu("500m"));
+        assertEquals(1000, parseCpu("1"));
+        assertEquals(500, parseCpu("0.5"));
+        assertEquals(2500, parseCpu("2.5"));
+        assertEquals(1, parseCpu("100u"));
+    }
+
+    @Test
+    public void testParseMemory() {
+        assertEquals(0, parseMemory(null));
+        assertEquals(128, parseMemory("128"));
+        assertEquals(512 * 1024 * 1024L, parseMemory("512Mi"));
+        assertEquals(2 * 1024 * 1024 * 1024L, parseMemory("2Gi"));
+        assertEquals(1000, parseMemory("1k"));
+        assertEquals(1500 * 1000 * 1000L, parseMemory("1.5G"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseInvalid() {
+        parseMemory("lots");
+    }
+
+    @Test
+    public void testPodResources() {
+        ContainerTemplate maven = new ContainerTemplate("maven", "maven:1");
+        maven.setResourceRequestCpu("500m");
+        maven.setResourceRequestMemory("1Gi");
+        ContainerTemplate jnlp = new ContainerTemplate("jnlp", "jnlp:1");
+        jnlp.setResourceRequestCpu("0.25");
+        PodTemplate template = new PodTemplate();
+        template.setContainers(Arrays.asList(maven, jnlp));
+
+        PodResources resources = PodResources.of(template);
+        assertEquals(750, resources.getCpuRequest());
+        assertEquals(1024 * 1024 * 1024L, resources.getMemoryRequest());
+    }
+
+    @Test
+    public void testPodResourcesWithLimitRangeDefaults() {
+        ContainerTemplate maven = new ContainerTemplate("maven", "maven:1");
+        maven.setResourceRequestCpu("500m");
+        maven.setResourceLimitMemory("2Gi");
+        PodTemplate template = new PodTemplate();
+        template.setContainers(Arrays.asList(maven));
+        LimitRangeItem defaults = new LimitRangeItem();
+        defaults.setType("Container");
+        defaults.setDefault(ImmutableMap.of(CPU, new Quantity("1"), MEMORY, new Quantity("512Mi")));
+        defaults.setDefaultRequest(ImmutableMap.of(MEMORY, new Quantity("256Mi")));
+
+        PodResources resources = PodResources.of(template, defaults);
+        // maven plus the jnlp container added by the plugin
+        assertEquals(2, resources.getContainers().size());
+        assertEquals(500 + 1000, resources.getCpuRequest());
+        assertEquals(2000, resources.getCpuLimit());
+        assertEquals((256 + 256) * 1024 * 1024L, resources.getMemoryRequest());
+        assertEquals((2048 + 512) * 1024 * 1024L, resources.getMemoryLimit());
+        assertTrue(resources.isCpuLimited());
+        assertFalse(PodResources.of(template).isCpuLimited());
+    }
+}
@@ -0,0 +1,41 @@
+package org.csanchez.jenkins.plugins.kubernetes;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TemplateUsageTest {
+
+    @Test
+    public void testWorthKeeping() {
+        TemplateUsage usage = new TemplateUsage();
+        long now = System.currentTimeMillis();
+        // no builds arriving, not worth keeping
+        assertFalse(usage.isWorthKeeping(1.0, now));
+
+        // a build every minute and pods taking 3 minutes to start
+        for (int i = 0; i < 30; i++) {
+            usage.recordArrival(now - TimeUnit.MINUTES.toMillis(i));
+        }
+        usage.recordStartup(TimeUnit.MINUTES.toMillis(3));
+        assertEquals(1.0, usage.getArrivalRate(now), 0.1);
+        assertEquals(3.0, usage.getStartupMinutes(), 0.001);
+        assertTrue(usage.isWorthKeeping(1.0, now));
+        assertFalse(usage.isWorthKeeping(5.0, now));
+
+        // an hour later the builds are out of the window
+        assertFalse(usage.isWorthKeeping(1.0, now + TimeUnit.HOURS.toMillis(1)));
+    }
+
+    @Test
+    public void testReuse() {
+        TemplateUsage usage = new TemplateUsage();
+        usage.recordTask(false);
+        usage.recordTask(true);
+        usage.recordTask(true);
+        usage.recordTask(false);
+        assertTrue(usage.toString().startsWith("50% of 4 builds reused an agent"));
+    }
+}
@@ -0,0 +1,32 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ContainerCopyStepExecutionTest {
+
+    @Test
+    public void exitStatusParsing() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ContainerCopyStepExecution.ExitStatusOutputStream err = new ContainerCopyStepExecution.ExitStatusOutputStream(
+                new PrintStream(log, true, "UTF-8"));
+        err.write("tar: can't open 'x': Permission denied\n\nJENKINS_COPY_EXIT 1\n".getBytes(StandardCharsets.UTF_8));
+        err.close();
+        assertEquals(Integer.valueOf(1), err.getExitStatus());
+        assertEquals("tar: can't open 'x': Permission denied", log.toString("UTF-8").trim());
+    }
+
+    @Test
+    public void command() {
+        String[] command = ContainerCopyStepExecution.getCommand(false, true, "/root/my dir");
+        assertEquals("sh", command[0]);
+        assertTrue(command[2].contains("tar -czf - ."));
+        assertEquals("/root/my dir", command[4]);
+        assertTrue(ContainerCopyStepExecution.getCommand(true, false, "/tmp")[2].contains("tar -xf - -C \"$1\""));
+    }
+}
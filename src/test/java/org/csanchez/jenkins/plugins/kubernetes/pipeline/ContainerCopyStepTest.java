@@ -0,0 +1,22 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import static org.junit.Assert.*;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Test;
+
+public class ContainerCopyStepTest extends AbstractKubernetesPipelineTest {
+
+    @Test
+    public void copyBothWays() throws Exception {
+        WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "containerCopy");
+        p.setDefinition(new CpsFlowDefinition(loadPipelineScript("containerCopy.groovy"), true));
+        WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+        assertNotNull(b);
+        r.assertBuildStatusSuccess(r.waitForCompletion(b));
+        r.assertLogContains("content of b", b);
+        r.assertLogContains("content of a", b);
+    }
+}
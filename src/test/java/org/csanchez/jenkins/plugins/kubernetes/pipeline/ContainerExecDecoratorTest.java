@@ -28,8 +28,10 @@ import static org.csanchez.jenkins.plugins.kubernetes.KubernetesTestUtil.*;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +47,7 @@ import org.junit.Test;
 import hudson.Launcher;
 import hudson.Launcher.DummyLauncher;
 import hudson.Launcher.ProcStarter;
+import hudson.Proc;
 import hudson.util.StreamTaskListener;
 import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.ContainerBuilder;
@@ -171,6 +174,52 @@ public class ContainerExecDecoratorTest {
         assertArrayEquals(new String[] { "\\$\\$", "\\$?" }, commands);
     }
 
+    @Test
+    public void scriptRendering() {
+        Map<String, String> env = new LinkedHashMap<>();
+        env.put("A", "it's $HOME");
+        env.put("PATH+EXTRA", "/opt/bin");
+        String script = ContainerExecDecorator.getScript("/work space", env,
+                ContainerExecDecorator.getCommandLine("echo", "\\$A"));
+        assertEquals("cd '/work space'\n" + "export A='it'\\''s $HOME'\n" + "\"echo\" \"\\$A\" \n"
+                + ContainerExecDecorator.ExitCodeOutputStream.EXIT_COMMAND, script);
+        assertEquals("\"ls\" \n" + ContainerExecDecorator.ExitCodeOutputStream.EXIT_COMMAND,
+                ContainerExecDecorator.getScript(null, Collections.<String, String> emptyMap(),
+                        ContainerExecDecorator.getCommandLine("ls")));
+    }
+
+    @Test
+    public void processGroupParsing() throws Exception {
+        List<Integer> pgids = new ArrayList<>();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ContainerExecDecorator.ProcessGroupOutputStream out = new ContainerExecDecorator.ProcessGroupOutputStream(
+                pgids::add, log);
+        // the terminal echoes the command before its output
+        String echo = ContainerExecDecorator.ProcessGroupOutputStream.PRINT_COMMAND + "\"sleep\" \"60\"\r\n";
+        out.write(echo.getBytes(StandardCharsets.UTF_8));
+        out.write("\r\nJENKINS_PGID 42\r\nJENKINS_PGID 43\r\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonList(42), pgids);
+        // only the first process group line is removed from the output
+        assertEquals(echo + "\r\nJENKINS_PGID 43\r\n", log.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test(timeout = 20000)
+    public void testKillByProcessGroup() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Launcher launcher = decorator
+                .decorate(new DummyLauncher(new StreamTaskListener(new TeeOutputStream(out, System.out))), null);
+        Proc proc = launcher.launch(launcher.new ProcStarter().pwd("/tmp")
+                .cmds("sh", "-c", "echo started; sleep 60").envs("JENKINS_SERVER_COOKIE=kill-test"));
+        // the process group is printed before the command runs
+        while (!out.toString().matches("(?ms).*^started\\r?$.*")) {
+            Thread.sleep(100);
+        }
+        launcher.kill(Collections.singletonMap("JENKINS_SERVER_COOKIE", "kill-test"));
+        assertNotEquals(0, proc.join());
+        assertFalse("Should not print the process group: " + out, out.toString().matches("(?s).*JENKINS_PGID \\d+.*"));
+        assertFalse("Should not look for the cookie of every process: " + out, out.toString().contains("/environ"));
+    }
+
     @Test
     public void testCommandExecutionWithEscaping() throws Exception {
         ProcReturn r = execCommand(false, "sh", "-c", "cd /tmp; false; echo result is $$? > test; cat /tmp/test");
@@ -0,0 +1,101 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import hudson.AbortException;
+
+public class ExecSessionsTest {
+
+    private static final String PROPERTY = ExecSessions.class.getName() + ".maxSessions";
+    private static final String WAIT_PROPERTY = ExecSessions.class.getName() + ".waitSeconds";
+
+    @After
+    public void cleanup() {
+        System.clearProperty(PROPERTY);
+        System.clearProperty(WAIT_PROPERTY);
+        ExecSessions.forget("pod");
+    }
+
+    @Test
+    public void testCap() throws Exception {
+        System.setProperty(PROPERTY, "2");
+        ExecSessions.Session first = ExecSessions.open("pod", "maven");
+        ExecSessions.Session second = ExecSessions.open("pod", "maven");
+        assertTrue(ExecSessions.isFull("pod", "maven"));
+        assertFalse(ExecSessions.isFull("pod", "golang"));
+        assertEquals(2, ExecSessions.getActiveSessions("pod", "maven"));
+
+        CompletableFuture<ExecSessions.Session> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ExecSessions.open("pod", "maven");
+            } catch (InterruptedException | AbortException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            third.get(200, TimeUnit.MILLISECONDS);
+            fail("should wait for a session to close");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        first.close();
+        // closing twice does not free another session
+        first.close();
+        third.get(5, TimeUnit.SECONDS).close();
+        second.close();
+        assertEquals(0, ExecSessions.getActiveSessions("pod", "maven"));
+        assertEquals("0 active, 2 at most, 3 in total, 1 waited, 0 timed out",
+                ExecSessions.getSessions("pod").get("maven"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        System.setProperty(PROPERTY, "1");
+        System.setProperty(WAIT_PROPERTY, "1");
+        ExecSessions.Session first = ExecSessions.open("pod", "maven");
+        try {
+            ExecSessions.open("pod", "maven");
+            fail("should time out waiting for a session to close");
+        } catch (AbortException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("container [maven] of pod [pod]"));
+        }
+        first.close();
+        ExecSessions.open("pod", "maven").close();
+        assertEquals("0 active, 1 at most, 2 in total, 1 waited, 1 timed out",
+                ExecSessions.getSessions("pod").get("maven"));
+    }
+
+    @Test
+    public void testNoWait() throws Exception {
+        System.setProperty(PROPERTY, "1");
+        ExecSessions.Session first = ExecSessions.open("pod", "maven", 0);
+        long start = System.currentTimeMillis();
+        try {
+            // as on the CPS VM thread, which must not block
+            ExecSessions.open("pod", "maven", 0);
+            fail("should fail right away while the container is at its cap");
+        } catch (AbortException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Cannot wait"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        first.close();
+        ExecSessions.open("pod", "maven", 0).close();
+    }
+
+    @Test
+    public void testNoCap() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            ExecSessions.open("pod", "maven");
+        }
+        assertFalse(ExecSessions.isFull("pod", "maven"));
+        assertEquals(100, ExecSessions.getActiveSessions("pod", "maven"));
+    }
+}
@@ -0,0 +1,47 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FileExecProcTest {
+
+    @Test
+    public void testQuote() {
+        assertEquals("'plain'", FileExecProc.quote("plain"));
+        assertEquals("'$HOME \"x\"'", FileExecProc.quote("$HOME \"x\""));
+        assertEquals("'it'\\''s'", FileExecProc.quote("it's"));
+    }
+
+    @Test
+    public void testScript() {
+        Map<String, String> env = new LinkedHashMap<>();
+        env.put("FOO", "a'b");
+        env.put("PATH+MAVEN", "/opt/maven/bin");
+        String script = FileExecProc.getScript("/home/jenkins/workspace/job", "/home/jenkins/workspace/job@tmp/exec-1",
+                env, Arrays.asList("sh", "-c", "echo $$HOME"), false);
+        assertEquals("set -m\n"
+                + "cd '/home/jenkins/workspace/job' || exit 1\n"
+                + "(\n"
+                + "trap '' HUP\n"
+                + "export FOO='a'\\''b'\n"
+                + "'sh' '-c' 'echo $HOME' > '/home/jenkins/workspace/job@tmp/exec-1/output' 2>&1\n"
+                + "echo $? > '/home/jenkins/workspace/job@tmp/exec-1/exit-status.tmp'"
+                + " && mv '/home/jenkins/workspace/job@tmp/exec-1/exit-status.tmp'"
+                + " '/home/jenkins/workspace/job@tmp/exec-1/exit-status'\n"
+                + ") < /dev/null > /dev/null 2>&1 &\n"
+                + "echo $! > '/home/jenkins/workspace/job@tmp/exec-1/pid'\n", script);
+    }
+
+    @Test
+    public void testScriptWithInput() {
+        String script = FileExecProc.getScript("/home/jenkins/workspace/job", "/home/jenkins/workspace/job@tmp/exec-1",
+                new LinkedHashMap<>(), Arrays.asList("cat"), true);
+        assertTrue(script, script.contains("'cat' < '/home/jenkins/workspace/job@tmp/exec-1/input'"
+                + " > '/home/jenkins/workspace/job@tmp/exec-1/output' 2>&1\n"));
+    }
+}
@@ -0,0 +1,40 @@
+package org.csanchez.jenkins.plugins.kubernetes.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ProcessNamespaceExecTest {
+
+    @Test
+    public void testGetCommand() {
+        assertEquals(Arrays.asList("nsenter", "--target", "42", "--mount", "--wd=/home/jenkins/workspace", "--", "sh",
+                "-c", "echo $HOME"), ProcessNamespaceExec.getCommand(42, "/home/jenkins/workspace", "sh", "-c",
+                        "echo $HOME"));
+        assertEquals(Arrays.asList("nsenter", "--target", "1", "--mount", "--", "true"),
+                ProcessNamespaceExec.getCommand(1, null, "true"));
+    }
+
+    @Test
+    public void testParseEnviron() {
+        Map<String, String> env = ProcessNamespaceExec
+                .parseEnviron("PATH=/usr/bin:/bin\0JENKINS_CONTAINER_NAME=maven\0EMPTY=\0OPTS=-Da=b\0");
+        assertEquals("/usr/bin:/bin", env.get("PATH"));
+        assertEquals("maven", env.get(ContainerExecDecorator.CONTAINER_NAME_VAR));
+        assertEquals("", env.get("EMPTY"));
+        assertEquals("-Da=b", env.get("OPTS"));
+        assertEquals(4, env.size());
+    }
+
+    @Test
+    public void testParseStartTime() {
+        assertEquals(8842, ProcessNamespaceExec.parseStartTime("42 (java) S 1 42 42 0 -1 4194560 2203 0 0 0 12 3 0 0 "
+                + "20 0 25 0 8842 3747221504 24981 18446744073709551615 1 1 0 0 0 0 0 4096 16384 0 0 0 17 0 0 0 0 0 0"));
+        // command names may contain spaces and parentheses
+        assertEquals(17, ProcessNamespaceExec.parseStartTime("7 (sh (x) y) R 1 7 7 0 -1 0 0 0 0 0 0 0 0 0 20 0 1 0 17 0"));
+        assertEquals(-1, ProcessNamespaceExec.parseStartTime("7 (sh) R 1"));
+    }
+}
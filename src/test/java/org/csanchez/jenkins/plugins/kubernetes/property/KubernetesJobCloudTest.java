@@ -0,0 +1,43 @@
+package org.csanchez.jenkins.plugins.kubernetes.property;
+
+import static org.junit.Assert.*;
+
+import org.csanchez.jenkins.plugins.kubernetes.PodTemplate;
+import org.junit.Test;
+
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+public class KubernetesJobCloudTest {
+
+    @Test
+    public void testClientReused() throws Exception {
+        KubernetesClient client = cloud("job-cloud-reused").connect();
+        assertSame(client, cloud("job-cloud-reused").connect());
+        assertNotSame(client, cloud("job-cloud-other").connect());
+        assertFalse(isClosed(client));
+    }
+
+    @Test
+    public void testClientReplacedOnConfigChange() throws Exception {
+        KubernetesJobCloud cloud = cloud("job-cloud-changed");
+        KubernetesClient client = cloud.connect();
+
+        cloud.setReadTimeout(30);
+        KubernetesClient changed = cloud.connect();
+        assertNotSame(client, changed);
+        assertTrue(isClosed(client));
+        assertSame(changed, cloud.connect());
+    }
+
+    private static KubernetesJobCloud cloud(String name) {
+        KubernetesJobCloud cloud = new KubernetesJobCloud(name, new PodTemplate(), null, "http://localhost:8080",
+                "default", null, 10, 5, 15, 5);
+        cloud.setMaxRequestsPerHost(KubernetesJobCloud.DEFAULT_MAX_REQUESTS_PER_HOST);
+        return cloud;
+    }
+
+    private static boolean isClosed(KubernetesClient client) {
+        return ((HttpClientAware) client).getHttpClient().dispatcher().executorService().isShutdown();
+    }
+}
@@ -0,0 +1,17 @@
+//noinspection GrPackage
+podTemplate(cloud: 'kubernetes-plugin-test', label: 'mypod', containers: [
+        containerTemplate(name: 'busybox', image: 'busybox', ttyEnabled: true, command: '/bin/cat'),
+]) {
+    node ('mypod') {
+        stage('container copy') {
+            writeFile file: 'in/a.txt', text: 'content of a'
+            writeFile file: 'in/sub/b.txt', text: 'content of b'
+            containerCopy name: 'busybox', containerPath: '/tmp/copy', workspacePath: 'in', toContainer: true
+            container('busybox') {
+                sh 'cat /tmp/copy/sub/b.txt'
+            }
+            containerCopy name: 'busybox', containerPath: '/tmp/copy', workspacePath: 'out', compress: true
+            echo readFile('out/a.txt')
+        }
+    }
+}